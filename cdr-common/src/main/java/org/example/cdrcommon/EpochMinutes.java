@@ -0,0 +1,49 @@
+package org.example.cdrcommon;
+
+// startDateTime is "yyyy-MM-dd HH:mm" (see the loader's StartDateTimeGenerator) and is rated by the minute
+public final class EpochMinutes {
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private EpochMinutes() {
+    }
+
+    // Allocation-free parse of "yyyy-MM-dd HH:mm" into minutes since 1970-01-01 00:00 (the wall-clock
+    // value, no zone shift), for the per-record paths. Returns INVALID for anything else.
+    public static long parse(CharSequence value) {
+        if (value == null || value.length() < 16
+                || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(13) != ':') {
+            return INVALID;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return INVALID;
+        }
+        return (daysFromCivil(year, month, day) * 24 + hour) * 60 + minute;
+    }
+
+    private static int digits(CharSequence value, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    // Howard Hinnant's days_from_civil for the proleptic Gregorian calendar
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.cdrcommon;
+
+// The three service types the loader generates (see its ServiceTypeGenerator), indexed for array-backed
+// stats and tariff tables on both sides of the topic
+public final class ServiceTypes {
+    public static final String[] names = {"CALL", "SMS", "DATA"};
+    public static final int CALL = 0;
+    public static final int SMS = 1;
+    public static final int DATA = 2;
+    public static final int UNKNOWN = -1;
+
+    private ServiceTypes() {
+    }
+
+    public static int indexOf(String serviceType) {
+        if (serviceType == null) {
+            return UNKNOWN;
+        }
+        if (serviceType.equalsIgnoreCase("CALL")) return CALL;
+        if (serviceType.equalsIgnoreCase("SMS")) return SMS;
+        if (serviceType.equalsIgnoreCase("DATA")) return DATA;
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,197 @@
+package org.example.cdrcommon.rating;
+
+import org.example.cdrcommon.EpochMinutes;
+import org.example.cdrcommon.ServiceTypes;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+// A tariff plan compiled into lookup tables: the unit rate (per call minute, SMS or data MB) of every
+// service for each of the 168 hours of the week, and the data tier bands. Rating a record is then an
+// array read plus, for tiered data, a walk over a few bands.
+//
+// Plans are written as one line, e.g.
+//   peak=MON-FRI 08-20, SAT 10-14; call=0.50/0.30; sms=0.25/0.10; data=0.50/0.25; data-tiers=100:1,500:0.6,*:0.2
+// Rates are peak/off-peak (one value means the same at all hours). Hour ranges are [from, to) and may wrap
+// past midnight. Data tiers scale the MB rate within a single record (session): here the first 100 MB at
+// the full rate, MB 100-500 at 0.6 of it, the rest at 0.2.
+// Shared by the loader's revenue menu and the backend's revenue and billing, so both price alike.
+public final class TariffPlan {
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+    // 1970-01-01, epoch hour 0, was a Thursday: shifting by three days makes hour 0 Monday 00:00
+    private static final long EPOCH_HOUR_OF_WEEK = 3 * 24;
+    private static final String[] KEYS = {"call", "sms", "data"};
+
+    private final String name;
+    private final String spec;
+    private final double[] unitRates = new double[ServiceTypes.names.length * HOURS_PER_WEEK];
+    private final double[] tierUpTo;
+    private final double[] tierFactors;
+
+    private TariffPlan(String name, String spec, double[] tierUpTo, double[] tierFactors) {
+        this.name = name;
+        this.spec = spec;
+        this.tierUpTo = tierUpTo;
+        this.tierFactors = tierFactors;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSpec() {
+        return spec;
+    }
+
+    public boolean isTiered() {
+        return tierFactors.length > 1 || tierFactors[0] != 1;
+    }
+
+    // Monday 00:00 is 0, Sunday 23:00 is 167
+    public static int hourOfWeek(long epochMinute) {
+        return (int) Math.floorMod(Math.floorDiv(epochMinute, 60L) + EPOCH_HOUR_OF_WEEK, (long) HOURS_PER_WEEK);
+    }
+
+    public double unitRate(int service, int hourOfWeek) {
+        return unitRates[service * HOURS_PER_WEEK + hourOfWeek];
+    }
+
+    // Charge of one record; 0 for unknown services or unreadable times
+    public double charge(int service, long epochMinute, double usage) {
+        if (service == ServiceTypes.UNKNOWN || epochMinute == EpochMinutes.INVALID) {
+            return 0;
+        }
+        double rate = unitRates[service * HOURS_PER_WEEK + hourOfWeek(epochMinute)];
+        switch (service) {
+            case ServiceTypes.SMS:
+                return rate;
+            case ServiceTypes.DATA:
+                return rate * tieredUnits(usage);
+            default:
+                return rate * usage;
+        }
+    }
+
+    // MB of one record weighted by the tier bands they fall in
+    public double tieredUnits(double mb) {
+        double units = 0;
+        double from = 0;
+        for (int i = 0; i < tierUpTo.length && mb > from; i++) {
+            units += (Math.min(mb, tierUpTo[i]) - from) * tierFactors[i];
+            from = tierUpTo[i];
+        }
+        return units;
+    }
+
+    public static TariffPlan parse(String name, String spec) {
+        Map<String, String> fields = new HashMap<>();
+        for (String part : spec.split(";")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            int eq = part.indexOf('=');
+            if (eq < 0) {
+                throw invalid(name, "expected key=value, got '" + part.trim() + "'");
+            }
+            fields.put(part.substring(0, eq).trim().toLowerCase(), part.substring(eq + 1).trim());
+        }
+
+        boolean[] peak = new boolean[HOURS_PER_WEEK];
+        String windows = fields.remove("peak");
+        if (windows != null && !windows.isEmpty()) {
+            for (String window : windows.split(",")) {
+                markPeak(name, window.trim(), peak);
+            }
+        }
+
+        double[] upTo = {Double.POSITIVE_INFINITY};
+        double[] factors = {1};
+        String tiers = fields.remove("data-tiers");
+        if (tiers != null && !tiers.isEmpty()) {
+            String[] bands = tiers.split(",");
+            upTo = new double[bands.length];
+            factors = new double[bands.length];
+            for (int i = 0; i < bands.length; i++) {
+                String[] band = bands[i].trim().split(":");
+                if (band.length != 2) {
+                    throw invalid(name, "data tier '" + bands[i].trim() + "' should be <MB>:<factor>");
+                }
+                upTo[i] = band[0].trim().equals("*") ? Double.POSITIVE_INFINITY : number(name, band[0]);
+                factors[i] = number(name, band[1]);
+                if (i > 0 && upTo[i] <= upTo[i - 1]) {
+                    throw invalid(name, "data tiers must be in ascending order");
+                }
+            }
+            if (upTo[upTo.length - 1] != Double.POSITIVE_INFINITY) {
+                throw invalid(name, "the last data tier must be *");
+            }
+        }
+
+        TariffPlan plan = new TariffPlan(name, spec, upTo, factors);
+        for (int service = 0; service < KEYS.length; service++) {
+            String rates = fields.remove(KEYS[service]);
+            if (rates == null) {
+                throw invalid(name, "missing " + KEYS[service] + " rate");
+            }
+            String[] peakAndOffPeak = rates.split("/");
+            double peakRate = number(name, peakAndOffPeak[0]);
+            double offPeakRate = peakAndOffPeak.length > 1 ? number(name, peakAndOffPeak[1]) : peakRate;
+            for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+                plan.unitRates[service * HOURS_PER_WEEK + hour] = peak[hour] ? peakRate : offPeakRate;
+            }
+        }
+        if (!fields.isEmpty()) {
+            throw invalid(name, "unknown keys " + fields.keySet());
+        }
+        return plan;
+    }
+
+    // "MON-FRI 08-20", "SAT 10-14" or "SUN 22-06"; day ranges may wrap too (FRI-MON)
+    private static void markPeak(String name, String window, boolean[] peak) {
+        String[] parts = window.split("\\s+");
+        if (parts.length != 2) {
+            throw invalid(name, "peak window '" + window + "' should be <days> <from>-<to>");
+        }
+        String[] days = parts[0].split("-");
+        String[] hours = parts[1].split("-");
+        if (days.length > 2 || hours.length != 2) {
+            throw invalid(name, "peak window '" + window + "' should be <days> <from>-<to>");
+        }
+        int firstDay = day(name, days[0]);
+        int dayCount = Math.floorMod(day(name, days[days.length - 1]) - firstDay, 7) + 1;
+        int from = (int) number(name, hours[0]);
+        int to = (int) number(name, hours[1]);
+        if (from < 0 || from > 23 || to < 0 || to > 24) {
+            throw invalid(name, "peak hours in '" + window + "' must be within 0-24");
+        }
+        int length = Math.floorMod(to - from, 24);
+        for (int d = 0; d < dayCount; d++) {
+            int start = ((firstDay + d) % 7) * 24 + from;
+            for (int h = 0; h < (length == 0 ? 24 : length); h++) {
+                peak[(start + h) % HOURS_PER_WEEK] = true;
+            }
+        }
+    }
+
+    private static int day(String name, String day) {
+        for (DayOfWeek value : DayOfWeek.values()) {
+            if (value.name().startsWith(day.trim().toUpperCase()) && day.trim().length() >= 3) {
+                return value.ordinal();
+            }
+        }
+        throw invalid(name, "unknown day '" + day + "'");
+    }
+
+    private static double number(String name, String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw invalid(name, "'" + value.trim() + "' is not a number");
+        }
+    }
+
+    private static IllegalArgumentException invalid(String name, String reason) {
+        return new IllegalArgumentException("❌ Tariff plan " + name + ": " + reason);
+    }
+}
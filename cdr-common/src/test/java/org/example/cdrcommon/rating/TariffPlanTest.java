@@ -0,0 +1,107 @@
+package org.example.cdrcommon.rating;
+
+import org.example.cdrcommon.EpochMinutes;
+import org.example.cdrcommon.ServiceTypes;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffPlanTest {
+
+	private static final String STANDARD = "peak=MON-FRI 08-20; call=0.50/0.30; sms=0.25/0.10; data=0.50/0.25; data-tiers=100:1,500:0.6,*:0.2";
+
+	// 2024-01-01 was a Monday
+	private static long minute(String startDateTime) {
+		return EpochMinutes.parse(startDateTime);
+	}
+
+	@Test
+	void epochMinutesMatchJavaTimeAndRejectMalformedValues() {
+		LocalDateTime time = LocalDateTime.of(2024, 2, 29, 13, 45);
+		assertEquals(time.toEpochSecond(ZoneOffset.UTC) / 60, EpochMinutes.parse("2024-02-29 13:45"));
+		assertEquals(0, EpochMinutes.parse("1970-01-01 00:00"));
+		assertEquals(-1, EpochMinutes.parse("1969-12-31 23:59"));
+
+		assertEquals(EpochMinutes.INVALID, EpochMinutes.parse(null));
+		assertEquals(EpochMinutes.INVALID, EpochMinutes.parse("2024-01-01"));
+		assertEquals(EpochMinutes.INVALID, EpochMinutes.parse("2024-13-01 00:00"));
+		assertEquals(EpochMinutes.INVALID, EpochMinutes.parse("2024-01-01 24:00"));
+		assertEquals(EpochMinutes.INVALID, EpochMinutes.parse("2024/01/01 08:00"));
+		assertEquals(EpochMinutes.INVALID, EpochMinutes.parse("2024-01-01 0a:00"));
+	}
+
+	@Test
+	void hourOfWeekStartsOnMondayMidnight() {
+		assertEquals(0, TariffPlan.hourOfWeek(minute("2024-01-01 00:00")));
+		assertEquals(8, TariffPlan.hourOfWeek(minute("2024-01-01 08:59")));
+		assertEquals(167, TariffPlan.hourOfWeek(minute("2024-01-07 23:59")));
+		assertEquals(0, TariffPlan.hourOfWeek(minute("2024-01-08 00:00")));
+		assertEquals(3 * 24, TariffPlan.hourOfWeek(0)); // 1970-01-01 was a Thursday
+	}
+
+	@Test
+	void chargesPeakAndOffPeakRates() {
+		TariffPlan plan = TariffPlan.parse("standard", STANDARD);
+
+		assertEquals(5.0, plan.charge(ServiceTypes.CALL, minute("2024-01-01 08:00"), 10), 1e-9);
+		assertEquals(3.0, plan.charge(ServiceTypes.CALL, minute("2024-01-01 07:59"), 10), 1e-9);
+		assertEquals(3.0, plan.charge(ServiceTypes.CALL, minute("2024-01-05 20:00"), 10), 1e-9);
+		assertEquals(3.0, plan.charge(ServiceTypes.CALL, minute("2024-01-06 12:00"), 10), 1e-9); // Saturday
+
+		// an SMS is one unit, whatever its usage
+		assertEquals(0.25, plan.charge(ServiceTypes.SMS, minute("2024-01-03 12:00"), 7), 1e-9);
+		assertEquals(0.10, plan.charge(ServiceTypes.SMS, minute("2024-01-07 12:00"), 7), 1e-9);
+
+		assertEquals(0, plan.charge(ServiceTypes.UNKNOWN, minute("2024-01-01 08:00"), 10));
+		assertEquals(0, plan.charge(ServiceTypes.CALL, EpochMinutes.INVALID, 10));
+	}
+
+	@Test
+	void peakWindowsWrapPastMidnightAndAcrossTheWeek() {
+		TariffPlan plan = TariffPlan.parse("night", "peak=SUN 22-06; call=1/0; sms=1; data=1");
+
+		assertEquals(0, plan.unitRate(ServiceTypes.CALL, 6 * 24 + 21));
+		assertEquals(1, plan.unitRate(ServiceTypes.CALL, 6 * 24 + 22));
+		assertEquals(1, plan.unitRate(ServiceTypes.CALL, 167));
+		assertEquals(1, plan.unitRate(ServiceTypes.CALL, 0));   // Monday 00:00
+		assertEquals(1, plan.unitRate(ServiceTypes.CALL, 5));
+		assertEquals(0, plan.unitRate(ServiceTypes.CALL, 6));
+
+		TariffPlan weekend = TariffPlan.parse("weekend", "peak=FRI-MON 00-24; call=1/0; sms=1; data=1");
+		assertEquals(1, weekend.unitRate(ServiceTypes.CALL, 4 * 24));
+		assertEquals(1, weekend.unitRate(ServiceTypes.CALL, 23));
+		assertEquals(0, weekend.unitRate(ServiceTypes.CALL, 24)); // Tuesday
+	}
+
+	@Test
+	void dataTiersWeightEachRecordsMegabytes() {
+		TariffPlan plan = TariffPlan.parse("standard", STANDARD);
+		assertTrue(plan.isTiered());
+
+		assertEquals(50, plan.tieredUnits(50), 1e-9);
+		assertEquals(100 + 200 * 0.6, plan.tieredUnits(300), 1e-9);
+		assertEquals(100 + 400 * 0.6 + 500 * 0.2, plan.tieredUnits(1000), 1e-9);
+		assertEquals(0.50 * (100 + 200 * 0.6), plan.charge(ServiceTypes.DATA, minute("2024-01-02 09:00"), 300), 1e-9);
+
+		TariffPlan flat = TariffPlan.parse("flat", "call=0.50; sms=0.25; data=0.50");
+		assertFalse(flat.isTiered());
+		assertEquals(1000, flat.tieredUnits(1000), 1e-9);
+		assertEquals(0.50, flat.unitRate(ServiceTypes.CALL, 10));
+		assertEquals(0.50, flat.unitRate(ServiceTypes.CALL, 150));
+	}
+
+	@Test
+	void rejectsMalformedSpecs() {
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "call=1; sms=1"));
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "call=1; sms=1; data=1; voip=1"));
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "call=x; sms=1; data=1"));
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "call=1; sms=1; data=1; data-tiers=100:1,500:0.5"));
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "call=1; sms=1; data=1; data-tiers=500:1,100:0.5,*:0.2"));
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "peak=MO 08-20; call=1; sms=1; data=1"));
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "peak=MON 08-25; call=1; sms=1; data=1"));
+		assertThrows(IllegalArgumentException.class, () -> TariffPlan.parse("p", "peak=MON-FRI; call=1; sms=1; data=1"));
+	}
+}
@@ -0,0 +1,58 @@
+package org.example.msbackend.anomaly;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.utils.StartDateTimes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Per-record cost of the anomaly stage on the ingest path. One invocation replays a day of loader-like
+// CDRs from 200k subscribers (more than the table holds, so evictions are included) into a cleared
+// detector. Normal traffic raises no alerts, so the gc profiler's gc.alloc.rate.norm should be ~0.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CDRAnomalyDetectorBenchmark {
+
+    private static final int RECORDS = 1 << 20;
+    private static final int SUBSCRIBERS = 200_000;
+    private static final String[] SERVICES = {"CALL", "SMS", "DATA"};
+
+    private CDR[] cdrs;
+    private CDRAnomalyDetector detector;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        String[] anums = new String[SUBSCRIBERS];
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            anums[i] = "2010" + (1_000_000 + i);
+        }
+        long start = StartDateTimes.epochMinute(LocalDateTime.of(2025, 1, 1, 0, 0));
+        cdrs = new CDR[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            String service = SERVICES[random.nextInt(SERVICES.length)];
+            String anum = anums[random.nextInt(SUBSCRIBERS)];
+            double usage = service.equals("CALL") ? random.nextInt(60) : service.equals("DATA") ? random.nextInt(1000) : 1;
+            cdrs[i] = new CDR(anum, service.equals("DATA") ? null : anums[random.nextInt(SUBSCRIBERS)], service, usage,
+                    StartDateTimes.formatEpochMinute(start + i / 730));
+        }
+        detector = new CDRAnomalyDetector(131072, 0.1, 4, 5, 10, 2000);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        detector.clear();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void observe(Blackhole blackhole) {
+        for (CDR cdr : cdrs) {
+            blackhole.consume(detector.observe(cdr));
+        }
+    }
+}
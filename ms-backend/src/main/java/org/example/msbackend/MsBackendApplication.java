@@ -3,10 +3,14 @@ package org.example.msbackend;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @SpringBootApplication(scanBasePackages = "org.example.msbackend")
 @EnableKafka
+@EnableAsync
+@EnableScheduling
 public class MsBackendApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(MsBackendApplication.class, args);
@@ -0,0 +1,6 @@
+package org.example.msbackend.anomaly;
+
+// One subscriber minute that ran far above the subscriber's baseline; published to the cdr-alerts topic
+public record CDRAlert(String anum, String serviceType, String kind, String minute,
+                       double observed, double baseline, double stdDev) {
+}
@@ -0,0 +1,35 @@
+package org.example.msbackend.anomaly;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class CDRAlertPublisher {
+
+    public static final String TOPIC = "cdr-alerts";
+    private static final Logger logger = LoggerFactory.getLogger(CDRAlertPublisher.class);
+
+    private final KafkaTemplate<String, CDRAlert> alertKafkaTemplate;
+
+    public CDRAlertPublisher(KafkaTemplate<String, CDRAlert> alertKafkaTemplate) {
+        this.alertKafkaTemplate = alertKafkaTemplate;
+    }
+
+    // Keyed by anum so one subscriber's alerts stay ordered; sends are async and a failure is only logged
+    public void publish(List<CDRAlert> alerts) {
+        for (CDRAlert alert : alerts) {
+            alertKafkaTemplate.send(TOPIC, alert.anum(), alert).whenComplete((result, error) -> {
+                if (error != null) {
+                    logger.warn("Could not publish alert for {}: {}", alert.anum(), error.getMessage());
+                }
+            });
+        }
+        if (!alerts.isEmpty()) {
+            logger.info("🚨 Published {} CDR alerts", alerts.size());
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.example.msbackend.anomaly;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Flags subscribers whose per-minute activity (calls, SMS, data MB) jumps far above their own EWMA
+// baseline. Runs on the consumer thread once a batch has committed, so a rolled-back or redelivered batch
+// is never rated twice, and the per-record path touches only primitive arrays: anums are hashed to 64 bits
+// and live in an open-addressing table of fixed capacity, where a full probe run evicts the subscriber seen
+// least recently. Only a raised alert allocates.
+@Component
+public class CDRAnomalyDetector {
+
+    private static final int SERVICES = ServiceTypes.names.length;
+    private static final int MAX_PROBE = 8;
+    private static final long EMPTY = 0;
+    private static final long NONE = Long.MIN_VALUE;
+    private static final String[] KINDS = {"CALL_RATE", "SMS_BURST", "DATA_SPIKE"};
+
+    // A subscriber's state is one 128-byte stride of `state`: the newest minute it was seen, then per
+    // service the open minute, its running total, the EWMA mean and variance of closed minutes, and the
+    // minute an alert was last raised for. Doubles are stored as raw long bits.
+    private static final int LAST_SEEN = 0;
+    private static final int MINUTE = 1;
+    private static final int TOTAL = 2;
+    private static final int MEAN = 3;
+    private static final int VARIANCE = 4;
+    private static final int ALERTED = 5;
+    private static final int FIELDS = 5;
+    private static final int STRIDE = 1 + SERVICES * FIELDS;
+
+    private final int mask;
+    private final double alpha;
+    private final double threshold;
+    private final double[] minimum;
+
+    // probed on their own so a lookup stays within one or two cache lines
+    private final long[] keys;
+    private final long[] state;
+    private long evictions;
+    private final CDRAlertPublisher alertPublisher;
+
+    public CDRAnomalyDetector(CDRAlertPublisher alertPublisher,
+                              @Value("${cdr.anomaly.capacity:131072}") int capacity,
+                              @Value("${cdr.anomaly.alpha:0.1}") double alpha,
+                              @Value("${cdr.anomaly.threshold-sigmas:4}") double threshold,
+                              @Value("${cdr.anomaly.min-calls-per-minute:5}") double minCalls,
+                              @Value("${cdr.anomaly.min-sms-per-minute:10}") double minSms,
+                              @Value("${cdr.anomaly.min-data-mb-per-minute:2000}") double minDataMb) {
+        int size = Integer.highestOneBit(Math.max(MAX_PROBE, capacity - 1) << 1);
+        this.mask = size - 1;
+        this.alpha = alpha;
+        this.threshold = threshold;
+        this.minimum = new double[]{minCalls, minSms, minDataMb};
+        this.keys = new long[size];
+        this.state = new long[size * STRIDE];
+        this.alertPublisher = alertPublisher;
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        alertPublisher.publish(inspect(event.cdrs()));
+    }
+
+    // Alerts raised by the batch, in record order
+    public synchronized List<CDRAlert> inspect(List<CDR> cdrs) {
+        List<CDRAlert> alerts = null;
+        for (CDR cdr : cdrs) {
+            CDRAlert alert = observe(cdr);
+            if (alert != null) {
+                if (alerts == null) {
+                    alerts = new ArrayList<>();
+                }
+                alerts.add(alert);
+            }
+        }
+        return alerts == null ? List.of() : alerts;
+    }
+
+    // Records that are older than the subscriber's open minute are not rated. Callers other than
+    // inspect() must not run concurrently with it.
+    public CDRAlert observe(CDR cdr) {
+        int service = ServiceTypes.indexOf(cdr.getServiceType());
+        long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+        String anum = cdr.getAnum();
+        if (service == ServiceTypes.UNKNOWN || minute == StartDateTimes.INVALID || anum == null) {
+            return null;
+        }
+        int base = slotOf(hash64(anum), minute) * STRIDE;
+        int i = base + service * FIELDS;
+
+        long open = state[i + MINUTE];
+        if (minute > open) {
+            if (open != NONE) {
+                close(i, minute - open);
+            }
+            state[i + MINUTE] = minute;
+            state[i + TOTAL] = Double.doubleToRawLongBits(0);
+        } else if (minute < open) {
+            return null;
+        }
+        double total = Double.longBitsToDouble(state[i + TOTAL]) + (service == ServiceTypes.DATA ? cdr.getUsage() : 1);
+        state[i + TOTAL] = Double.doubleToRawLongBits(total);
+
+        if (total < minimum[service] || state[i + ALERTED] == minute) {
+            return null;
+        }
+        double mean = Double.longBitsToDouble(state[i + MEAN]);
+        double stdDev = Math.sqrt(Double.longBitsToDouble(state[i + VARIANCE]));
+        if (total <= mean + threshold * stdDev) {
+            return null;
+        }
+        state[i + ALERTED] = minute;
+        return new CDRAlert(anum, ServiceTypes.names[service], KINDS[service],
+                StartDateTimes.formatEpochMinute(minute), total, mean, stdDev);
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    // Forgets every subscriber without reallocating the tables
+    public synchronized void clear() {
+        Arrays.fill(keys, EMPTY);
+        evictions = 0;
+    }
+
+    // Folds the finished minute into the baseline, then decays it over the idle minutes up to the new one
+    // ((1 - alpha)^idle is what `idle` EWMA steps of zero would do to the mean; the variance is decayed alike)
+    private void close(int i, long elapsed) {
+        double mean = Double.longBitsToDouble(state[i + MEAN]);
+        double variance = Double.longBitsToDouble(state[i + VARIANCE]);
+        double diff = Double.longBitsToDouble(state[i + TOTAL]) - mean;
+        double increment = alpha * diff;
+        mean += increment;
+        variance = (1 - alpha) * (variance + diff * increment);
+        if (elapsed > 1) {
+            double decay = Math.pow(1 - alpha, elapsed - 1);
+            mean *= decay;
+            variance *= decay;
+        }
+        state[i + MEAN] = Double.doubleToRawLongBits(mean);
+        state[i + VARIANCE] = Double.doubleToRawLongBits(variance);
+    }
+
+    private int slotOf(long hash, long minute) {
+        long key = hash == EMPTY ? 1 : hash;
+        int start = (int) (key & mask);
+        int victim = start;
+        for (int probe = 0; probe < MAX_PROBE; probe++) {
+            int slot = (start + probe) & mask;
+            if (keys[slot] == key) {
+                int lastSeen = slot * STRIDE + LAST_SEEN;
+                state[lastSeen] = Math.max(state[lastSeen], minute);
+                return slot;
+            }
+            if (keys[slot] == EMPTY) {
+                return claim(slot, key, minute);
+            }
+            if (state[slot * STRIDE + LAST_SEEN] < state[victim * STRIDE + LAST_SEEN]) {
+                victim = slot;
+            }
+        }
+        evictions++;
+        return claim(victim, key, minute);
+    }
+
+    // Polynomial hash of the chars finished with SplitMix64's mixer; the table's own, so it does not move
+    // when the sketches' hash (HyperLogLog.hash64, part of their stored format) does
+    static long hash64(String value) {
+        long hash = 0;
+        for (int i = 0; i < value.length(); i++) {
+            hash = hash * 0x9e3779b97f4a7c15L + value.charAt(i);
+        }
+        hash ^= hash >>> 30;
+        hash *= 0xbf58476d1ce4e5b9L;
+        hash ^= hash >>> 27;
+        hash *= 0x94d049bb133111ebL;
+        hash ^= hash >>> 31;
+        return hash;
+    }
+
+    private int claim(int slot, long key, long minute) {
+        keys[slot] = key;
+        int base = slot * STRIDE;
+        state[base + LAST_SEEN] = minute;
+        for (int i = base; i < base + SERVICES * FIELDS; i += FIELDS) {
+            state[i + MINUTE] = NONE;
+            state[i + TOTAL] = 0;
+            state[i + MEAN] = 0;
+            state[i + VARIANCE] = 0;
+            state[i + ALERTED] = NONE;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.msbackend.archive;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.utils.StartDateTimes;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// One archived cdrs partition, never changed after it is written. Rows are written in start time order in
+// blocks that are deflate-compressed one by one; the footer lists each block's position, row count and
+// start-minute range, so a range read inflates only the blocks that overlap it.
+//   file  := MAGIC VERSION block* index indexOffset:long MAGIC
+//   index := blockCount:int (offset:long length:int rows:int minMinute:long maxMinute:long)*
+//   block := deflate((id:long anum:UTF hasBnum:boolean [bnum:UTF] serviceType:UTF usage:double startDateTime:UTF)*)
+final class ArchiveFile {
+
+    static final String SUFFIX = ".cda";
+    private static final int MAGIC = 0x43445241; // "CDRA"
+    private static final int VERSION = 1;
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    final Path path;
+    final List<Block> blocks;
+    final long rows;
+    final long minMinute;
+    final long maxMinute;
+    final long bytes;
+
+    private ArchiveFile(Path path, List<Block> blocks, long bytes) {
+        this.path = path;
+        this.blocks = List.copyOf(blocks);
+        this.bytes = bytes;
+        long rowCount = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Block block : blocks) {
+            rowCount += block.rows;
+            min = Math.min(min, block.minMinute);
+            max = Math.max(max, block.maxMinute);
+        }
+        this.rows = rowCount;
+        this.minMinute = min;
+        this.maxMinute = max;
+    }
+
+    // Reads the block index only
+    static ArchiveFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = read(channel, 0, 2 * Integer.BYTES);
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || trailer.getInt() != MAGIC) {
+                throw new IOException("❌ Not a CDR archive (or written by another version): " + path);
+            }
+            ByteBuffer index = read(channel, indexOffset, (int) (size - TRAILER_BYTES - indexOffset));
+            int count = index.getInt();
+            List<Block> blocks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                blocks.add(new Block(index.getLong(), index.getInt(), index.getInt(), index.getLong(), index.getLong()));
+            }
+            return new ArchiveFile(path, blocks, size);
+        }
+    }
+
+    boolean overlaps(long fromMinute, long toMinute) {
+        return rows > 0 && minMinute < toMinute && maxMinute >= fromMinute;
+    }
+
+    // Every row starting in [fromMinute, toMinute) of the service type (null for all)
+    void scan(long fromMinute, long toMinute, String serviceType, Consumer<CDR> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (Block block : blocks) {
+                if (block.minMinute >= toMinute || block.maxMinute < fromMinute) {
+                    continue;
+                }
+                ByteBuffer compressed = read(channel, block.offset, block.length);
+                try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(compressed.array(), 0, block.length)))) {
+                    for (int row = 0; row < block.rows; row++) {
+                        CDR cdr = readRow(in);
+                        long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+                        if (minute >= fromMinute && minute < toMinute
+                                && (serviceType == null || serviceType.equalsIgnoreCase(cdr.getServiceType()))) {
+                            cdr.fillStartTime();
+                            sink.accept(cdr);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Inflates every block to its end, which also checks each block's adler32, and returns the row count
+    long verify() throws IOException {
+        long rowCount = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (Block block : blocks) {
+                ByteBuffer compressed = read(channel, block.offset, block.length);
+                try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(compressed.array(), 0, block.length)))) {
+                    for (int row = 0; row < block.rows; row++) {
+                        readRow(in);
+                        rowCount++;
+                    }
+                    if (in.read() != -1) {
+                        throw new IOException("❌ CDR archive block at " + block.offset + " holds more rows than its index says: " + path);
+                    }
+                }
+            }
+        }
+        return rowCount;
+    }
+
+    // Makes a rename or deletion in the directory durable; the files themselves are forced on close()
+    static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static CDR readRow(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        String anum = in.readUTF();
+        String bnum = in.readBoolean() ? in.readUTF() : null;
+        String serviceType = in.readUTF();
+        double usage = in.readDouble();
+        CDR cdr = new CDR(anum, bnum, serviceType, usage, in.readUTF());
+        cdr.setId(id);
+        return cdr;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("❌ Truncated CDR archive");
+            }
+        }
+        return buffer.flip();
+    }
+
+    record Block(long offset, int length, int rows, long minMinute, long maxMinute) {
+    }
+
+    // Appends rows in the order given and writes the index on close()
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final int blockRows;
+        private final List<Block> blocks = new ArrayList<>();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final DataOutputStream rowsOut = new DataOutputStream(pending);
+        private int pendingRows;
+        private long minMinute = Long.MAX_VALUE;
+        private long maxMinute = Long.MIN_VALUE;
+        private long written;
+
+        Writer(Path path, int blockRows) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.blockRows = blockRows;
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(VERSION);
+            write(header.flip());
+        }
+
+        void add(CDR cdr) throws IOException {
+            rowsOut.writeLong(cdr.getId());
+            rowsOut.writeUTF(cdr.getAnum());
+            rowsOut.writeBoolean(cdr.getBnum() != null);
+            if (cdr.getBnum() != null) {
+                rowsOut.writeUTF(cdr.getBnum());
+            }
+            rowsOut.writeUTF(cdr.getServiceType());
+            rowsOut.writeDouble(cdr.getUsage());
+            rowsOut.writeUTF(cdr.getStartDateTime());
+            long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+            if (minute != StartDateTimes.INVALID) {
+                minMinute = Math.min(minMinute, minute);
+                maxMinute = Math.max(maxMinute, minute);
+            }
+            written++;
+            if (++pendingRows == blockRows) {
+                flushBlock();
+            }
+        }
+
+        long rows() {
+            return written;
+        }
+
+        // Forces the file to disk, so it can be renamed into place before the partition is dropped
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBlock();
+                long indexOffset = channel.position();
+                ByteBuffer index = ByteBuffer.allocate(Integer.BYTES + blocks.size() * 32 + TRAILER_BYTES);
+                index.putInt(blocks.size());
+                for (Block block : blocks) {
+                    index.putLong(block.offset).putInt(block.length).putInt(block.rows)
+                            .putLong(block.minMinute).putLong(block.maxMinute);
+                }
+                index.putLong(indexOffset).putInt(MAGIC);
+                write(index.flip());
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (pendingRows == 0) {
+                return;
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(pending.size() / 4);
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+                pending.writeTo(deflater);
+            }
+            long offset = channel.position();
+            write(ByteBuffer.wrap(compressed.toByteArray()));
+            // a block of unreadable start times only ever matches an unbounded read
+            blocks.add(new Block(offset, compressed.size(), pendingRows,
+                    minMinute == Long.MAX_VALUE ? Long.MIN_VALUE : minMinute,
+                    maxMinute == Long.MIN_VALUE ? Long.MAX_VALUE : maxMinute));
+            pending.reset();
+            pendingRows = 0;
+            minMinute = Long.MAX_VALUE;
+            maxMinute = Long.MIN_VALUE;
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
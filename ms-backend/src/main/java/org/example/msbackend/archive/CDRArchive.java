@@ -0,0 +1,376 @@
+package org.example.msbackend.archive;
+
+import jakarta.annotation.PostConstruct;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.database.service.CDRRollupService;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Cold tier of cdrs: partitions past cdr.archive.after-days are written to one ArchiveFile each under
+// cdr.archive.dir (the backend's persistent volume in k8s) and then dropped from MySQL. A partition is only
+// dropped if the file holds exactly the rows the partition has under a table lock, so a late row landing
+// in it meanwhile just postpones the move to the next run. Range reads go through to the files
+// whose start-minute range overlaps. Each file's usage per A number is also added to
+// archived_subscriber_totals (V14), for SubscriberProfiles.
+@Component
+public class CDRArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(CDRArchive.class);
+    private static final int DROP_LOCK_WAIT_SECONDS = 5;
+
+    private final CopyOnWriteArrayList<ArchiveFile> files = new CopyOnWriteArrayList<>();
+    private final JdbcTemplate streamingTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // Held for writing while a partition moves from cdrs to its file and totals, so a read of both sides
+    // (see consistently()) never sees the rows in both or in neither
+    private final ReentrantReadWriteLock moveLock = new ReentrantReadWriteLock();
+
+    // 0 keeps every partition in MySQL
+    @Value("${cdr.archive.after-days:0}")
+    private int afterDays;
+
+    @Value("${cdr.archive.dir:data/archive}")
+    private Path dir;
+
+    @Value("${cdr.archive.block-rows:4096}")
+    private int blockRows;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CDRRollupService rollupService;
+
+    public CDRArchive(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        // MySQL Connector/J only streams row by row with this fetch size; otherwise it buffers the whole result
+        this.streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Clears what a crash in archivePartition() can leave: a half-written .tmp, or a file renamed into place
+    // whose partition was never dropped. Both are written again by the next run.
+    @PostConstruct
+    public void load() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        Set<String> partitions = new HashSet<>(jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'cdrs' AND PARTITION_NAME IS NOT NULL", String.class));
+        boolean removed = false;
+        try (Stream<Path> paths = Files.list(dir)) {
+            for (Path path : paths.toList()) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(ArchiveFile.SUFFIX + ".tmp")
+                        || (name.endsWith(ArchiveFile.SUFFIX) && partitions.contains(partitionOf(path)))) {
+                    logger.warn("Removing {} left by an interrupted archive run", path);
+                    Files.delete(path);
+                    removed = true;
+                } else if (name.endsWith(ArchiveFile.SUFFIX)) {
+                    files.add(ArchiveFile.open(path));
+                }
+            }
+        }
+        if (removed) {
+            ArchiveFile.syncDirectory(dir);
+        }
+        logger.info("Opened {} CDR archive files in {}", files.size(), dir);
+    }
+
+    // Files archived before archived_subscriber_totals existed, or whose totals a crash cut off after the drop
+    @EventListener(ApplicationReadyEvent.class)
+    public void countMissingTotals() throws IOException {
+        Set<String> counted = new HashSet<>(jdbcTemplate.queryForList("SELECT name FROM archived_partitions", String.class));
+        for (ArchiveFile file : files) {
+            String partition = partitionOf(file.path);
+            if (!counted.contains(partition)) {
+                moveLock.writeLock().lock();
+                try {
+                    countTotals(partition, file);
+                } finally {
+                    moveLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return afterDays > 0;
+    }
+
+    public int afterDays() {
+        return afterDays;
+    }
+
+    // Writes the partition to its archive file and drops it once the file is known to be complete.
+    // Returns false, leaving the partition in place, when rows arrived in it while it was being written, a
+    // backfill over cdrs ids (cdr_backfills) is unfinished, or a rebuild or open transaction is in the way.
+    public boolean archivePartition(String partition) throws IOException {
+        if (jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM cdr_backfills WHERE doneThroughId < throughId)", Boolean.class)) {
+            logger.info("Backfills over cdrs are still running; archiving partition {} waits for the next run", partition);
+            return false;
+        }
+        Files.createDirectories(dir);
+        Path target = dir.resolve("cdrs-" + partition + ArchiveFile.SUFFIX);
+        Path temporary = dir.resolve(target.getFileName() + ".tmp");
+        long rows;
+        try (ArchiveFile.Writer writer = new ArchiveFile.Writer(temporary, blockRows)) {
+            streamingTemplate.query("SELECT c.id, a.number, b.number, t.name, c.`usage`, c.startDateTime FROM cdrs PARTITION ("
+                    + partition + ") c JOIN subscribers a ON a.id = c.anumId LEFT JOIN subscribers b ON b.id = c.bnumId "
+                    + "JOIN service_types t ON t.id = c.serviceTypeId ORDER BY c.startTime, c.id", (RowCallbackHandler) rs -> {
+                CDR cdr = new CDR(rs.getString(2), rs.getString(3), rs.getString(4), rs.getDouble(5), rs.getString(6));
+                cdr.setId(rs.getLong(1));
+                try {
+                    writer.add(cdr);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            rows = writer.rows();
+        } catch (RuntimeException | IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        // read back what reached the disk before anything is dropped
+        try {
+            long readable = ArchiveFile.open(temporary).verify();
+            if (readable != rows) {
+                throw new IOException("❌ " + temporary + " reads back " + readable + " of " + rows + " rows");
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        boolean moved;
+        if (!lockForMove()) {
+            Files.deleteIfExists(temporary);
+            logger.info("A rollup rebuild is reading the archive; archiving partition {} waits for the next run", partition);
+            return false;
+        }
+        try {
+            // only the id is taken with ingest held off; a cheap check that nothing has landed since the write
+            long snapshotId = rollupService.snapshotCommittedId();
+            moved = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cdrs PARTITION (" + partition + ") WHERE id <= ?",
+                    Long.class, snapshotId) == rows
+                    && !jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM cdrs PARTITION (" + partition + ") WHERE id > ?)",
+                    Boolean.class, snapshotId)
+                    && moveAndDrop(partition, rows, temporary, target);
+            if (moved) {
+                countTotals(partition, files.stream().filter(file -> file.path.equals(target)).findFirst().orElseThrow());
+            }
+        } finally {
+            moveLock.writeLock().unlock();
+        }
+        if (!moved) {
+            Files.deleteIfExists(temporary);
+            logger.warn("CDRs arrived in partition {} while it was archived, or cdrs stayed locked; trying again next run", partition);
+            return false;
+        }
+        logger.info("Archived {} CDRs of partition {} to {}", rows, partition, target);
+        return true;
+    }
+
+    // The table lock waits for open ingest transactions on cdrs and keeps new ones out, so the count it
+    // checks is final until the drop; it gives up after DROP_LOCK_WAIT_SECONDS rather than stall ingest.
+    // All on one connection: a drop on another would queue behind the lock held here.
+    private boolean moveAndDrop(String partition, long rows, Path temporary, Path target) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET SESSION lock_wait_timeout = " + DROP_LOCK_WAIT_SECONDS);
+                try {
+                    statement.execute("LOCK TABLES cdrs WRITE");
+                } catch (SQLException e) {
+                    logger.debug("cdrs lock for archiving timed out", e);
+                    statement.execute("SET SESSION lock_wait_timeout = DEFAULT");
+                    return false;
+                }
+                try {
+                    try (ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM cdrs PARTITION (" + partition + ")")) {
+                        count.next();
+                        if (count.getLong(1) != rows) {
+                            return false;
+                        }
+                    }
+                    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    ArchiveFile.syncDirectory(dir);
+                    ArchiveFile file = ArchiveFile.open(target);
+                    try {
+                        statement.execute("ALTER TABLE cdrs DROP PARTITION " + partition);
+                    } catch (SQLException e) {
+                        Files.deleteIfExists(target);
+                        ArchiveFile.syncDirectory(dir);
+                        throw e;
+                    }
+                    files.removeIf(existing -> existing.path.equals(target));
+                    files.add(file);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    statement.execute("UNLOCK TABLES");
+                    statement.execute("SET SESSION lock_wait_timeout = DEFAULT");
+                }
+            }
+        });
+    }
+
+    // Waits briefly: reads queue behind a waiting move, and a rebuild can hold the read side for long
+    private boolean lockForMove() {
+        try {
+            return moveLock.writeLock().tryLock(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Runs a read over cdrs and the archive (files or archived_subscriber_totals) while no partition is moving
+    public <T> T consistently(Supplier<T> read) {
+        moveLock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            moveLock.readLock().unlock();
+        }
+    }
+
+    // Lifetime usage of the A number in archived partitions, by service type
+    public List<ArchivedTotals> archivedTotals(String anum) {
+        return jdbcTemplate.query("SELECT t.name, a.cdrCount, a.usageSum, a.lastStartDateTime FROM archived_subscriber_totals a "
+                        + "JOIN subscribers s ON s.id = a.anumId JOIN service_types t ON t.id = a.serviceTypeId WHERE s.number = ?",
+                (rs, row) -> new ArchivedTotals(rs.getString(1), rs.getLong(2), rs.getDouble(3), rs.getString(4)), anum);
+    }
+
+    // True if some archived rows may start in [from, to); null bounds are open
+    public boolean covers(LocalDateTime from, LocalDateTime to) {
+        long fromMinute = from == null ? Long.MIN_VALUE : StartDateTimes.epochMinute(from);
+        long toMinute = to == null ? Long.MAX_VALUE : StartDateTimes.epochMinute(to);
+        for (ArchiveFile file : files) {
+            if (file.overlaps(fromMinute, toMinute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Archived CDRs of the service type (null for all) starting in [from, to), in no particular order
+    public List<CDR> read(String serviceType, LocalDateTime from, LocalDateTime to) {
+        List<CDR> result = new ArrayList<>();
+        scan(serviceType, from, to, result::add);
+        return result;
+    }
+
+    // Like read(), one row at a time
+    public void scan(String serviceType, LocalDateTime from, LocalDateTime to, Consumer<CDR> sink) {
+        long fromMinute = from == null ? Long.MIN_VALUE : StartDateTimes.epochMinute(from);
+        long toMinute = to == null ? Long.MAX_VALUE : StartDateTimes.epochMinute(to);
+        for (ArchiveFile file : files) {
+            if (file.overlaps(fromMinute, toMinute)) {
+                try {
+                    file.scan(fromMinute, toMinute, serviceType, sink);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("❌ Could not read CDR archive " + file.path, e);
+                }
+            }
+        }
+    }
+
+    // Adds the file's usage per A number and service type to archived_subscriber_totals, together with the
+    // partition's archived_partitions row, unless that row says it is already in. Caller holds moveLock.
+    private void countTotals(String partition, ArchiveFile file) throws IOException {
+        Map<TotalsKey, ArchivedTotals> totals = new HashMap<>();
+        file.scan(Long.MIN_VALUE, Long.MAX_VALUE, null, cdr -> totals.merge(
+                new TotalsKey(cdr.getAnum(), cdr.getServiceType().toUpperCase()),
+                new ArchivedTotals(cdr.getServiceType(), 1, cdr.getUsage(), cdr.getStartDateTime()),
+                ArchivedTotals::plus));
+        transactionTemplate.executeWithoutResult(status -> {
+            int marked = jdbcTemplate.update("INSERT IGNORE INTO archived_partitions (name, cdrCount, countedAt) VALUES (?, ?, ?)",
+                    partition, file.rows, Timestamp.valueOf(LocalDateTime.now()));
+            if (marked == 0) {
+                return;
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO archived_subscriber_totals (anumId, serviceTypeId, cdrCount, usageSum, lastStartDateTime) " +
+                            "SELECT * FROM (" +
+                            "  SELECT s.id AS a, t.id AS st, ? AS c, ? AS u, ? AS l FROM subscribers s JOIN service_types t ON t.name = ? " +
+                            "  WHERE s.number = ?" +
+                            ") AS incoming " +
+                            "ON DUPLICATE KEY UPDATE " +
+                            "cdrCount = archived_subscriber_totals.cdrCount + incoming.c, " +
+                            "usageSum = archived_subscriber_totals.usageSum + incoming.u, " +
+                            "lastStartDateTime = NULLIF(GREATEST(COALESCE(archived_subscriber_totals.lastStartDateTime, ''), COALESCE(incoming.l, '')), '')",
+                    new ArrayList<>(totals.entrySet()), 1000, (statement, entry) -> {
+                        statement.setLong(1, entry.getValue().cdrCount());
+                        statement.setDouble(2, entry.getValue().usageSum());
+                        statement.setString(3, entry.getValue().lastStartDateTime());
+                        statement.setString(4, entry.getKey().serviceType());
+                        statement.setString(5, entry.getKey().anum());
+                    });
+        });
+    }
+
+    // "cdrs-p20250101.cda" -> "p20250101"
+    private static String partitionOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring("cdrs-".length(), name.length() - ArchiveFile.SUFFIX.length());
+    }
+
+    public Map<String, Object> stats() {
+        long rows = 0;
+        long bytes = 0;
+        long blocks = 0;
+        for (ArchiveFile file : files) {
+            rows += file.rows;
+            bytes += file.bytes;
+            blocks += file.blocks.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("afterDays", afterDays);
+        stats.put("dir", dir.toAbsolutePath().toString());
+        stats.put("files", files.size());
+        stats.put("blocks", blocks);
+        stats.put("rows", rows);
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    private record TotalsKey(String anum, String serviceType) {
+    }
+
+    // lastStartDateTime is the newest archived startDateTime
+    public record ArchivedTotals(String serviceType, long cdrCount, double usageSum, String lastStartDateTime) {
+        ArchivedTotals plus(ArchivedTotals other) {
+            String last = lastStartDateTime == null || (other.lastStartDateTime != null
+                    && other.lastStartDateTime.compareTo(lastStartDateTime) > 0) ? other.lastStartDateTime : lastStartDateTime;
+            return new ArchivedTotals(serviceType, cdrCount + other.cdrCount, usageSum + other.usageSum, last);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package org.example.msbackend.balance;
+
+// A subscriber's spend for the month crossed thresholdPercent of their credit; published to cdr-balance-events
+public record BalanceEvent(String anum, String period, int thresholdPercent,
+                           double spent, double credit, double remaining, String startDateTime) {
+}
@@ -0,0 +1,65 @@
+package org.example.msbackend.balance;
+
+import jakarta.annotation.PreDestroy;
+import org.example.msbackend.websocket.CDRPushHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Component
+public class BalanceEventPublisher {
+
+    public static final String TOPIC = "cdr-balance-events";
+    private static final Logger logger = LoggerFactory.getLogger(BalanceEventPublisher.class);
+
+    private final KafkaTemplate<String, BalanceEvent> balanceKafkaTemplate;
+    private final CDRPushHandler pushHandler;
+    // Events come from PrepaidBalances.onIngested, which runs under the ingest lock; a send can block on
+    // Kafka metadata or a full producer buffer, so it happens here instead, one batch at a time in order
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "balance-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BalanceEventPublisher(KafkaTemplate<String, BalanceEvent> balanceKafkaTemplate, CDRPushHandler pushHandler) {
+        this.balanceKafkaTemplate = balanceKafkaTemplate;
+        this.pushHandler = pushHandler;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdown();
+    }
+
+    // Same delivery as CDRAlertPublisher (keyed by anum, async, failures logged), plus a push to dashboards.
+    // Returns once the events are queued.
+    public void publish(List<BalanceEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<BalanceEvent> queued = List.copyOf(events);
+        sender.execute(() -> send(queued));
+    }
+
+    private void send(List<BalanceEvent> events) {
+        for (BalanceEvent event : events) {
+            try {
+                balanceKafkaTemplate.send(TOPIC, event.anum(), event).whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.warn("Could not publish balance event for {}: {}", event.anum(), error.getMessage());
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.warn("Could not publish balance event for {}: {}", event.anum(), e.getMessage());
+            }
+        }
+        pushHandler.pushBalanceEvents(events);
+        logger.info("💰 Published {} prepaid balance events", events.size());
+    }
+}
@@ -0,0 +1,422 @@
+package org.example.msbackend.balance;
+
+import jakarta.annotation.PreDestroy;
+import org.example.cdrcommon.rating.TariffPlan;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.database.service.CDRRollupService;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.CDRHistoryReader;
+import org.example.msbackend.ingest.WarmupWatermark;
+import org.example.msbackend.rating.RatingEngine;
+import org.example.msbackend.stats.HyperLogLog;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+
+// Online-charging style prepaid balances: every committed CDR is rated under the default tariff plan and
+// deducted from its A number's monthly credit, and crossing a usage threshold (80% and 100% by default)
+// raises a BalanceEvent once per month. Balances live in 64 lock stripes, each an open-addressing table
+// probed by the 64-bit anum hash (and the anum itself, so two numbers sharing a hash keep separate slots)
+// with the fields in parallel primitive arrays; a batch is sorted by stripe first so each stripe lock is
+// taken once per batch, and rating happens outside the locks.
+// Changed balances are written behind to prepaid_balances every few seconds, together with the CDR id
+// they include; on startup the table is loaded and the CDRs after that id are replayed.
+@Component
+public class PrepaidBalances {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrepaidBalances.class);
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final double defaultCredit;
+    private final int[] thresholds;
+    private final WarmupWatermark watermark = new WarmupWatermark();
+    private final TransactionTemplate transactionTemplate;
+    private volatile long snapshotThroughId = -1;
+
+    @Autowired
+    private RatingEngine ratingEngine;
+
+    @Autowired
+    private CDRRollupService rollupService;
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BalanceEventPublisher eventPublisher;
+
+    public PrepaidBalances(@Value("${cdr.balance.monthly-credit:50.00}") double defaultCredit,
+                           @Value("${cdr.balance.thresholds-percent:80,100}") int[] thresholds,
+                           PlatformTransactionManager transactionManager) {
+        this.defaultCredit = defaultCredit;
+        this.thresholds = thresholds.clone();
+        Arrays.sort(this.thresholds);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // Like every after-commit listener this runs before the ingest transaction's afterCompletion releases
+    // CDRRollupService's read lock, so atCommittedSnapshot() (used by snapshot()) only sees batches already
+    // applied here. It also holds off snapshots while it runs: the events are only queued for sending.
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        List<BalanceEvent> events = new ArrayList<>();
+        apply(event.cdrs(), true, events);
+        eventPublisher.publish(events);
+    }
+
+    // Deducts the records from their subscribers' balances; `live` records are filtered by the watermark
+    private void apply(List<CDR> cdrs, boolean live, List<BalanceEvent> events) {
+        int n = cdrs.size();
+        TariffPlan plan = ratingEngine.plan(null);
+        long[] hashes = new long[n];
+        int[] months = new int[n];
+        double[] charges = new double[n];
+        int[] perStripe = new int[STRIPES + 1];
+        for (int i = 0; i < n; i++) {
+            CDR cdr = cdrs.get(i);
+            long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+            int service = ServiceTypes.indexOf(cdr.getServiceType());
+            if (live && !watermark.accepts(cdr) || cdr.getAnum() == null || minute == StartDateTimes.INVALID || service == ServiceTypes.UNKNOWN) {
+                continue;
+            }
+            hashes[i] = nonZero(HyperLogLog.hash64(cdr.getAnum()));
+            months[i] = StartDateTimes.epochMonth(minute);
+            charges[i] = plan.charge(service, minute, cdr.getUsage());
+            perStripe[stripeOf(hashes[i]) + 1]++;
+        }
+        // counting sort by stripe; records of one subscriber keep their order
+        for (int s = 0; s < STRIPES; s++) {
+            perStripe[s + 1] += perStripe[s];
+        }
+        int[] order = new int[perStripe[STRIPES]];
+        int[] next = Arrays.copyOf(perStripe, STRIPES);
+        for (int i = 0; i < n; i++) {
+            if (hashes[i] != 0) {
+                order[next[stripeOf(hashes[i])]++] = i;
+            }
+        }
+
+        for (int s = 0; s < STRIPES; s++) {
+            if (perStripe[s] == perStripe[s + 1]) {
+                continue;
+            }
+            Stripe stripe = stripes[s];
+            synchronized (stripe) {
+                for (int k = perStripe[s]; k < perStripe[s + 1]; k++) {
+                    int i = order[k];
+                    CDR cdr = cdrs.get(i);
+                    deduct(stripe, hashes[i], cdr.getAnum(), months[i], charges[i], cdr.getStartDateTime(), events);
+                }
+            }
+        }
+    }
+
+    // Caller holds the stripe's monitor
+    private void deduct(Stripe stripe, long hash, String anum, int month, double charge, String at, List<BalanceEvent> events) {
+        int slot = stripe.slotOf(hash, anum, month, defaultCredit);
+        if (month < stripe.months[slot]) {
+            return; // a late record from a month that is already closed for this subscriber
+        }
+        stripe.rollTo(slot, month, defaultCredit);
+        stripe.spent[slot] += charge;
+        stripe.markDirty(slot);
+        double credit = stripe.credits[slot];
+        double spent = stripe.spent[slot];
+        while (stripe.levels[slot] < thresholds.length
+                && (credit <= 0 || spent * 100 >= credit * thresholds[stripe.levels[slot]])) {
+            events.add(new BalanceEvent(anum, StartDateTimes.formatEpochMonth(month), thresholds[stripe.levels[slot]],
+                    spent, credit, credit - spent, at));
+            stripe.levels[slot]++;
+        }
+    }
+
+    public Balance balance(String anum) {
+        long hash = nonZero(HyperLogLog.hash64(anum));
+        Stripe stripe = stripes[stripeOf(hash)];
+        synchronized (stripe) {
+            int slot = stripe.find(hash, anum);
+            return slot < 0 ? null : stripe.balance(slot, thresholds);
+        }
+    }
+
+    // Adds credit to the subscriber's current month (or opens the calendar month for an unknown one);
+    // durable with the next snapshot
+    public Balance topUp(String anum, double amount) {
+        if (!(amount > 0)) {
+            throw new IllegalArgumentException("❌ A top-up amount must be positive");
+        }
+        long hash = nonZero(HyperLogLog.hash64(anum));
+        Stripe stripe = stripes[stripeOf(hash)];
+        synchronized (stripe) {
+            YearMonth now = YearMonth.now();
+            int month = (now.getYear() - 1970) * 12 + now.getMonthValue() - 1;
+            int slot = stripe.slotOf(hash, anum, month, defaultCredit);
+            stripe.rollTo(slot, month, defaultCredit);
+            stripe.credits[slot] += amount;
+            // thresholds already raised are re-armed once the new credit brings usage back under them
+            while (stripe.levels[slot] > 0
+                    && stripe.spent[slot] * 100 < stripe.credits[slot] * thresholds[stripe.levels[slot] - 1]) {
+                stripe.levels[slot]--;
+            }
+            stripe.markDirty(slot);
+            return stripe.balance(slot, thresholds);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int subscribers = 0;
+        int dirty = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                subscribers += stripe.size;
+                dirty += stripe.dirtyCount;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers);
+        stats.put("unsaved", dirty);
+        stats.put("snapshotThroughId", snapshotThroughId);
+        return stats;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long throughId = jdbcTemplate.queryForObject("SELECT throughId FROM prepaid_balance_snapshots WHERE id = 1", Long.class);
+        int[] loaded = {0};
+        jdbcTemplate.query("SELECT anum, period, credit, spent, alertedLevel FROM prepaid_balances", (RowCallbackHandler) rs -> {
+            String anum = rs.getString("anum");
+            long hash = nonZero(HyperLogLog.hash64(anum));
+            YearMonth period = YearMonth.parse(rs.getString("period"));
+            Stripe stripe = stripes[stripeOf(hash)];
+            synchronized (stripe) {
+                int slot = stripe.slotOf(hash, anum, (period.getYear() - 1970) * 12 + period.getMonthValue() - 1, defaultCredit);
+                stripe.credits[slot] = rs.getDouble("credit");
+                stripe.spent[slot] = rs.getDouble("spent");
+                stripe.levels[slot] = rs.getByte("alertedLevel");
+            }
+            loaded[0]++;
+        });
+        snapshotThroughId = throughId;
+
+        // CDRs committed after the last snapshot: rated again like an ingest batch, a chunk at a time
+        List<CDR> chunk = new ArrayList<>();
+        long snapshotId = historyReader.read("id > ?", new Object[]{throughId}, watermark, cdr -> {
+            chunk.add(cdr);
+            if (chunk.size() == 1000) {
+                replay(chunk);
+            }
+        });
+        replay(chunk);
+        watermark.warmedThrough(snapshotId);
+        logger.info("Prepaid balances loaded for {} subscribers, replayed CDRs {} to {}", loaded[0], throughId, snapshotId);
+    }
+
+    // Threshold events of replayed records were raised before the restart (or lost with it); they are
+    // not sent again, but the alerted levels are restored so they are not raised twice either
+    private void replay(List<CDR> chunk) {
+        apply(chunk, false, new ArrayList<>());
+        chunk.clear();
+    }
+
+    // Write-behind: copies the changed balances at a committed snapshot id and stores both in one transaction
+    @Scheduled(fixedDelayString = "${cdr.balance.snapshot-ms:5000}", initialDelayString = "${cdr.balance.snapshot-ms:5000}")
+    @PreDestroy
+    public void snapshot() {
+        if (!watermark.isWarm()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        long throughId = rollupService.atCommittedSnapshot(id -> {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.drainDirty(rows);
+                }
+            }
+            return id;
+        });
+        if (rows.isEmpty() && throughId == snapshotThroughId) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate("INSERT INTO prepaid_balances (anum, period, credit, spent, alertedLevel, updatedAt) " +
+                        "VALUES (?, ?, ?, ?, ?, ?) AS incoming ON DUPLICATE KEY UPDATE period = incoming.period, " +
+                        "credit = incoming.credit, spent = incoming.spent, alertedLevel = incoming.alertedLevel, " +
+                        "updatedAt = incoming.updatedAt", rows.stream().map(row -> {
+                    Object[] values = Arrays.copyOf(row, 6);
+                    values[5] = now;
+                    return values;
+                }).toList());
+                jdbcTemplate.update("UPDATE prepaid_balance_snapshots SET throughId = ?, takenAt = ? WHERE id = 1", throughId, now);
+            });
+            snapshotThroughId = throughId;
+        } catch (RuntimeException e) {
+            // nothing was stored: mark the rows dirty again so the next snapshot retries them
+            for (Object[] row : rows) {
+                String anum = (String) row[0];
+                long hash = nonZero(HyperLogLog.hash64(anum));
+                Stripe stripe = stripes[stripeOf(hash)];
+                synchronized (stripe) {
+                    int slot = stripe.find(hash, anum);
+                    if (slot >= 0) {
+                        stripe.markDirty(slot);
+                    }
+                }
+            }
+            logger.warn("Could not snapshot {} prepaid balances: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    private static int stripeOf(long hash) {
+        return (int) (hash >>> 58);
+    }
+
+    private static long nonZero(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+
+    // One stripe's table. Not thread-safe: callers hold the stripe's monitor.
+    static final class Stripe {
+        long[] keys = new long[64];
+        String[] anums = new String[64];
+        int[] months = new int[64];
+        double[] credits = new double[64];
+        double[] spent = new double[64];
+        byte[] levels = new byte[64];
+        boolean[] dirty = new boolean[64];
+        int size;
+        int dirtyCount;
+
+        int find(long hash, String anum) {
+            int mask = keys.length - 1;
+            for (int slot = (int) hash & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == hash && anum.equals(anums[slot])) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        // The subscriber's slot, opened for `month` with the default credit if new
+        int slotOf(long hash, String anum, int month, double credit) {
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == hash && anum.equals(anums[slot])) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if ((size + 1) * 10 > keys.length * 7) {
+                grow();
+                return slotOf(hash, anum, month, credit);
+            }
+            keys[slot] = hash;
+            anums[slot] = anum;
+            months[slot] = month;
+            credits[slot] = credit;
+            spent[slot] = 0;
+            levels[slot] = 0;
+            size++;
+            return slot;
+        }
+
+        // A new month starts from the monthly credit with nothing spent
+        void rollTo(int slot, int month, double credit) {
+            if (month > months[slot]) {
+                months[slot] = month;
+                credits[slot] = credit;
+                spent[slot] = 0;
+                levels[slot] = 0;
+            }
+        }
+
+        void markDirty(int slot) {
+            if (!dirty[slot]) {
+                dirty[slot] = true;
+                dirtyCount++;
+            }
+        }
+
+        // anum, period, credit, spent, alertedLevel of every changed slot
+        void drainDirty(List<Object[]> rows) {
+            for (int slot = 0; slot < keys.length && dirtyCount > 0; slot++) {
+                if (dirty[slot]) {
+                    rows.add(new Object[]{anums[slot], StartDateTimes.formatEpochMonth(months[slot]),
+                            credits[slot], spent[slot], levels[slot]});
+                    dirty[slot] = false;
+                    dirtyCount--;
+                }
+            }
+        }
+
+        Balance balance(int slot, int[] thresholds) {
+            return new Balance(anums[slot], StartDateTimes.formatEpochMonth(months[slot]), credits[slot], spent[slot],
+                    credits[slot] - spent[slot], levels[slot] == 0 ? 0 : thresholds[levels[slot] - 1]);
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            String[] oldAnums = anums;
+            int[] oldMonths = months;
+            double[] oldCredits = credits;
+            double[] oldSpent = spent;
+            byte[] oldLevels = levels;
+            boolean[] oldDirty = dirty;
+            int capacity = oldKeys.length * 2;
+            keys = new long[capacity];
+            anums = new String[capacity];
+            months = new int[capacity];
+            credits = new double[capacity];
+            spent = new double[capacity];
+            levels = new byte[capacity];
+            dirty = new boolean[capacity];
+            int mask = capacity - 1;
+            for (int old = 0; old < oldKeys.length; old++) {
+                if (oldKeys[old] == 0) {
+                    continue;
+                }
+                int slot = (int) oldKeys[old] & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[old];
+                anums[slot] = oldAnums[old];
+                months[slot] = oldMonths[old];
+                credits[slot] = oldCredits[old];
+                spent[slot] = oldSpent[old];
+                levels[slot] = oldLevels[old];
+                dirty[slot] = oldDirty[old];
+            }
+        }
+    }
+
+    // thresholdReached is the highest threshold percentage raised this month (0 if none)
+    public record Balance(String anum, String period, double credit, double spent, double remaining, int thresholdReached) {
+    }
+}
@@ -0,0 +1,396 @@
+package org.example.msbackend.billing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.example.cdrcommon.rating.TariffPlan;
+import org.example.msbackend.archive.CDRArchive;
+import org.example.msbackend.rating.RatingEngine;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// Monthly per-subscriber statements. Planning walks the subscribers in number order once, probing
+// idx_cdrs_anum_start for activity in the month, and cuts the active ones into ranges of `subscribers-per-partition`. Workers then claim ranges
+// one at a time, stream each range's CDRs for the month in anum order over a forward-only cursor, and
+// write the statements in batches that commit together with the range's checkpoint. The claim is refreshed
+// at least three times per `claim-timeout-seconds`; one that stops being refreshed (the instance died) can
+// be taken over, and the new owner resumes after the checkpoint. Statements and the range's statement count
+// are written as absolute values, so a batch redone after a crash is harmless.
+// Every record is rated under the default tariff plan (see RatingEngine). Only cdrs is read, so a month
+// has to be billed before cdr.archive.after-days moves it to the archive; start() refuses one that has.
+@Component
+public class BillingJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(BillingJob.class);
+    private static final int FLUSH_EVERY = 1000;
+    static final String PENDING = "PENDING";
+    static final String RUNNING = "RUNNING";
+    static final String DONE = "DONE";
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final JdbcTemplate streamingTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor workers;
+    private final int threads;
+
+    @Value("${cdr.billing.subscribers-per-partition:50000}")
+    private int subscribersPerPartition;
+
+    @Value("${cdr.billing.claim-timeout-seconds:300}")
+    private int claimTimeoutSeconds;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RatingEngine ratingEngine;
+
+    @Autowired
+    private CDRArchive archive;
+
+    public BillingJob(DataSource dataSource, PlatformTransactionManager transactionManager,
+                      @Value("${cdr.billing.threads:0}") int threads) {
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        // row by row, as in CDRHistoryReader
+        this.streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.threads = threads > 0 ? threads : defaultThreads(dataSource);
+        this.workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "billing-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // One per core, but every worker holds two connections (its cursor and its writes), so leave ingest
+    // at least two of the pool
+    private static int defaultThreads(DataSource dataSource) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (dataSource instanceof HikariDataSource hikari) {
+            return Math.max(1, Math.min(cores, (hikari.getMaximumPoolSize() - 2) / 2));
+        }
+        return cores;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    // Plans the period on first use, then puts every worker on its open ranges. Safe to call again (and
+    // from other instances) while it runs: ranges are claimed in MySQL, not in memory.
+    public Map<String, Object> start(String period) {
+        String month = parsePeriod(period);
+        YearMonth yearMonth = YearMonth.parse(month);
+        if (archive.covers(yearMonth.atDay(1).atStartOfDay(), yearMonth.plusMonths(1).atDay(1).atStartOfDay())) {
+            throw new IllegalStateException("❌ Billing period " + month + " is partly archived; statements are rated from cdrs only");
+        }
+        plan(month);
+        for (int i = 0; i < threads; i++) {
+            workers.submit(() -> work(month));
+        }
+        return status(month);
+    }
+
+    // Picks up runs interrupted by a shutdown and ranges whose claim lapsed, when this instance is idle
+    @Scheduled(fixedDelayString = "${cdr.billing.resume-ms:60000}", initialDelayString = "${cdr.billing.resume-ms:60000}")
+    public void resumeUnfinished() {
+        if (workers.getActiveCount() > 0 || !workers.getQueue().isEmpty()) {
+            return;
+        }
+        List<String> periods = jdbcTemplate.queryForList("SELECT period FROM billing_runs WHERE status = ?", String.class, RUNNING);
+        periods.forEach(period -> {
+            for (int i = 0; i < threads; i++) {
+                workers.submit(() -> work(period));
+            }
+        });
+    }
+
+    public Map<String, Object> status(String period) {
+        String month = parsePeriod(period);
+        List<Map<String, Object>> runs = jdbcTemplate.queryForList(
+                "SELECT period, status, partitions, createdAt, finishedAt FROM billing_runs WHERE period = ?", month);
+        if (runs.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> status = new LinkedHashMap<>(runs.get(0));
+        status.putAll(jdbcTemplate.queryForMap(
+                "SELECT COALESCE(SUM(status = 'DONE'), 0) AS partitionsDone, COALESCE(SUM(statements), 0) AS statements " +
+                        "FROM billing_partitions WHERE period = ?", month));
+        return status;
+    }
+
+    public BillingStatement statement(String period, String anum) {
+        List<BillingStatement> statements = jdbcTemplate.query(
+                "SELECT * FROM billing_statements WHERE period = ? AND anum = ?",
+                (rs, rowNum) -> new BillingStatement(rs.getString("period"), rs.getString("anum"),
+                        rs.getLong("calls"), rs.getDouble("callMinutes"), rs.getLong("sms"), rs.getDouble("dataMb"),
+                        rs.getBigDecimal("callCharge"), rs.getBigDecimal("smsCharge"), rs.getBigDecimal("dataCharge"),
+                        rs.getBigDecimal("total")),
+                parsePeriod(period), anum);
+        return statements.isEmpty() ? null : statements.get(0);
+    }
+
+    // The run row and all of its ranges commit together, so a crash while planning leaves nothing behind.
+    // A concurrent planner blocks on the run row's insert and then finds the run already there.
+    private void plan(String period) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int inserted = jdbcTemplate.update("INSERT IGNORE INTO billing_runs (period, status, partitions, createdAt) " +
+                    "VALUES (?, ?, 0, ?)", period, RUNNING, Timestamp.valueOf(LocalDateTime.now()));
+            if (inserted == 0) {
+                return;
+            }
+            String[] bounds = monthBounds(period);
+            List<String> lows = new ArrayList<>();
+            int[] seen = {0};
+            streamingTemplate.query("SELECT s.number FROM subscribers s WHERE EXISTS (SELECT 1 FROM cdrs c " +
+                            "WHERE c.anumId = s.id AND c.startDateTime >= ? AND c.startDateTime < ?) ORDER BY s.number",
+                    (RowCallbackHandler) rs -> {
+                        if (seen[0]++ % subscribersPerPartition == 0) {
+                            lows.add(rs.getString(1));
+                        }
+                    }, bounds[0], bounds[1]);
+
+            List<Object[]> partitions = new ArrayList<>(lows.size());
+            for (int i = 0; i < lows.size(); i++) {
+                partitions.add(new Object[]{period, i, lows.get(i), i + 1 < lows.size() ? lows.get(i + 1) : null, PENDING});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO billing_partitions (period, partitionNo, lowAnum, highAnum, status) " +
+                    "VALUES (?, ?, ?, ?, ?)", partitions);
+            jdbcTemplate.update("UPDATE billing_runs SET partitions = ? WHERE period = ?", lows.size(), period);
+            logger.info("Planned billing run {}: {} subscribers in {} partitions", period, seen[0], lows.size());
+        });
+    }
+
+    // One worker: bills ranges until none is left to claim, then closes the run if it was the last one
+    private void work(String period) {
+        try {
+            Integer partition;
+            while ((partition = claim(period)) != null) {
+                bill(period, partition);
+            }
+            int closed = jdbcTemplate.update("UPDATE billing_runs SET status = ?, finishedAt = ? WHERE period = ? AND status = ? " +
+                            "AND NOT EXISTS (SELECT 1 FROM billing_partitions WHERE period = ? AND status <> ?)",
+                    DONE, Timestamp.valueOf(LocalDateTime.now()), period, RUNNING, period, DONE);
+            if (closed > 0) {
+                logger.info("Billing run {} finished", period);
+            }
+        } catch (RuntimeException e) {
+            // the claim lapses and another worker (or the next resume) takes the range over
+            logger.error("Billing worker for {} stopped", period, e);
+        }
+    }
+
+    // The lowest open range that nobody holds (or whose holder stopped refreshing its claim)
+    private Integer claim(String period) {
+        Timestamp stale = Timestamp.valueOf(LocalDateTime.now().minusSeconds(claimTimeoutSeconds));
+        while (true) {
+            List<Integer> candidates = jdbcTemplate.queryForList("SELECT partitionNo FROM billing_partitions " +
+                            "WHERE period = ? AND status <> ? AND (claimedAt IS NULL OR claimedAt < ?) ORDER BY partitionNo LIMIT 1",
+                    Integer.class, period, DONE, stale);
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            int partition = candidates.get(0);
+            int claimed = jdbcTemplate.update("UPDATE billing_partitions SET status = ?, claimedBy = ?, claimedAt = ? " +
+                            "WHERE period = ? AND partitionNo = ? AND status <> ? AND (claimedAt IS NULL OR claimedAt < ?)",
+                    RUNNING, owner(), Timestamp.valueOf(LocalDateTime.now()),
+                    period, partition, DONE, stale);
+            if (claimed > 0) {
+                return partition;
+            }
+        }
+    }
+
+    private void bill(String period, int partition) {
+        Map<String, Object> range = jdbcTemplate.queryForMap("SELECT lowAnum, highAnum, lastAnum FROM billing_partitions " +
+                "WHERE period = ? AND partitionNo = ?", period, partition);
+        String low = (String) range.get("lowAnum");
+        String high = (String) range.get("highAnum");
+        String last = (String) range.get("lastAnum");
+        String[] bounds = monthBounds(period);
+
+        List<Object> args = new ArrayList<>(List.of(last != null ? last : low));
+        String sql = "SELECT anum, serviceType, `usage`, startDateTime FROM cdr_records WHERE anum " + (last != null ? "> ?" : ">= ?");
+        if (high != null) {
+            sql += " AND anum < ?";
+            args.add(high);
+        }
+        sql += " AND startDateTime >= ? AND startDateTime < ? ORDER BY anum";
+        args.add(bounds[0]);
+        args.add(bounds[1]);
+
+        String owner = owner();
+        Accumulator accumulator = new Accumulator(period, ratingEngine.plan(null), FLUSH_EVERY,
+                TimeUnit.SECONDS.toNanos(claimTimeoutSeconds) / 3, System::nanoTime,
+                statements -> flush(period, partition, owner, low, statements));
+        streamingTemplate.query(sql, (RowCallbackHandler) rs ->
+                accumulator.add(rs.getString(1), rs.getString(2), rs.getDouble(3), rs.getString(4)), args.toArray());
+        accumulator.finish();
+        jdbcTemplate.update("UPDATE billing_partitions SET status = ?, claimedAt = NULL WHERE period = ? AND partitionNo = ? AND claimedBy = ?",
+                DONE, period, partition, owner);
+    }
+
+    // Statements and checkpoint in one transaction. The range's statement count is recounted from the table,
+    // not incremented. Refreshing claimedAt keeps the claim alive (an empty batch does only that), and a claim
+    // taken over by someone else rolls the batch back and stops this worker's range.
+    private void flush(String period, int partition, String owner, String low, List<BillingStatement> statements) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        transactionTemplate.executeWithoutResult(status -> {
+            int owned;
+            if (statements.isEmpty()) {
+                owned = jdbcTemplate.update("UPDATE billing_partitions SET claimedAt = ? " +
+                        "WHERE period = ? AND partitionNo = ? AND claimedBy = ? AND status = ?",
+                        now, period, partition, owner, RUNNING);
+            } else {
+                jdbcTemplate.batchUpdate("INSERT INTO billing_statements (period, anum, calls, callMinutes, sms, dataMb, " +
+                                "callCharge, smsCharge, dataCharge, total) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) AS incoming " +
+                                "ON DUPLICATE KEY UPDATE calls = incoming.calls, callMinutes = incoming.callMinutes, " +
+                                "sms = incoming.sms, dataMb = incoming.dataMb, callCharge = incoming.callCharge, " +
+                                "smsCharge = incoming.smsCharge, dataCharge = incoming.dataCharge, total = incoming.total",
+                        statements.stream().map(s -> new Object[]{s.period(), s.anum(), s.calls(), s.callMinutes(), s.sms(),
+                                s.dataMb(), s.callCharge(), s.smsCharge(), s.dataCharge(), s.total()}).toList());
+                String checkpoint = statements.get(statements.size() - 1).anum();
+                owned = jdbcTemplate.update("UPDATE billing_partitions SET lastAnum = ?, claimedAt = ?, statements = " +
+                                "(SELECT COUNT(*) FROM billing_statements WHERE period = ? AND anum >= ? AND anum <= ?) " +
+                                "WHERE period = ? AND partitionNo = ? AND claimedBy = ? AND status = ?",
+                        checkpoint, now, period, low, checkpoint, period, partition, owner, RUNNING);
+            }
+            if (owned == 0) {
+                throw new IllegalStateException("❌ Billing partition " + period + "/" + partition + " was claimed by another worker");
+            }
+        });
+    }
+
+    private String owner() {
+        return instanceId + "/" + Thread.currentThread().getId();
+    }
+
+    private static String parsePeriod(String period) {
+        try {
+            return YearMonth.parse(period).toString();
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new IllegalArgumentException("❌ Billing period must look like yyyy-MM: " + period);
+        }
+    }
+
+    // startDateTime bounds of the month, as strings (the column sorts chronologically)
+    private static String[] monthBounds(String period) {
+        YearMonth month = YearMonth.parse(period);
+        return new String[]{month + "-01 00:00", month.plusMonths(1) + "-01 00:00"};
+    }
+
+    private static BigDecimal cents(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    // Totals for the subscriber currently streaming past; rows arrive grouped by anum. Closed statements go to
+    // `flush` every `flushEvery` subscribers, and sooner once `refreshNanos` have passed since the last flush;
+    // a single subscriber's rows can take longer than that, and then `flush` gets an empty batch.
+    static class Accumulator {
+        private final String period;
+        private final TariffPlan plan;
+        private final int flushEvery;
+        private final long refreshNanos;
+        private final LongSupplier clock;
+        private final Consumer<List<BillingStatement>> flush;
+        private final List<BillingStatement> pending = new ArrayList<>();
+        private long flushedAt;
+        private String anum;
+        private long calls;
+        private double callMinutes;
+        private long sms;
+        private double dataMb;
+        private final double[] charges = new double[ServiceTypes.names.length];
+
+        Accumulator(String period, TariffPlan plan, int flushEvery, long refreshNanos, LongSupplier clock,
+                    Consumer<List<BillingStatement>> flush) {
+            this.period = period;
+            this.plan = plan;
+            this.flushEvery = flushEvery;
+            this.refreshNanos = refreshNanos;
+            this.clock = clock;
+            this.flush = flush;
+            this.flushedAt = clock.getAsLong();
+        }
+
+        void add(String rowAnum, String serviceType, double usage, String startDateTime) {
+            if (!rowAnum.equals(anum)) {
+                close();
+                anum = rowAnum;
+            }
+            int service = ServiceTypes.indexOf(serviceType);
+            if (service != ServiceTypes.UNKNOWN) {
+                charges[service] += plan.charge(service, StartDateTimes.epochMinute(startDateTime), usage);
+            }
+            switch (service) {
+                case ServiceTypes.CALL -> {
+                    calls++;
+                    callMinutes += usage;
+                }
+                case ServiceTypes.SMS -> sms++;
+                case ServiceTypes.DATA -> dataMb += usage;
+                default -> { }
+            }
+            if (clock.getAsLong() - flushedAt >= refreshNanos) {
+                flush();
+            }
+        }
+
+        void finish() {
+            close();
+            if (!pending.isEmpty()) {
+                flush();
+            }
+        }
+
+        private void close() {
+            if (anum == null) {
+                return;
+            }
+            BigDecimal callCharge = cents(charges[ServiceTypes.CALL]);
+            BigDecimal smsCharge = cents(charges[ServiceTypes.SMS]);
+            BigDecimal dataCharge = cents(charges[ServiceTypes.DATA]);
+            pending.add(new BillingStatement(period, anum, calls, callMinutes, sms, dataMb,
+                    callCharge, smsCharge, dataCharge, callCharge.add(smsCharge).add(dataCharge)));
+            Arrays.fill(charges, 0);
+            calls = 0;
+            callMinutes = 0;
+            sms = 0;
+            dataMb = 0;
+            anum = null;
+            if (pending.size() >= flushEvery) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            flush.accept(List.copyOf(pending));
+            pending.clear();
+            flushedAt = clock.getAsLong();
+        }
+    }
+}
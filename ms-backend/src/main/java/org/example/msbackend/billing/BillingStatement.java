@@ -0,0 +1,11 @@
+package org.example.msbackend.billing;
+
+import java.math.BigDecimal;
+
+// One subscriber's usage and charges for a billing period (yyyy-MM); usage is what the CDRs carry,
+// call minutes and data MB as the loader generates them
+public record BillingStatement(String period, String anum,
+                               long calls, double callMinutes, long sms, double dataMb,
+                               BigDecimal callCharge, BigDecimal smsCharge, BigDecimal dataCharge,
+                               BigDecimal total) {
+}
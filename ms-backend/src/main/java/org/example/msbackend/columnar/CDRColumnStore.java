@@ -0,0 +1,442 @@
+package org.example.msbackend.columnar;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.graph.IntLongHashMap;
+import org.example.msbackend.graph.SubscriberIds;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.CDRHistoryReader;
+import org.example.msbackend.ingest.WarmupWatermark;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+// The most recent CDRs as columns in off-heap chunks (see ColumnChunk): dictionary ids for the A and B
+// numbers, a service code byte, the epoch minute and the usage as a float. Queries scan the chunks in
+// parallel with primitive reads only, so a scan allocates nothing per row and leaves the heap alone; only
+// the groups or rows it returns are turned back into strings. Fed by committed ingest batches; when full,
+// the oldest chunk is dropped. MySQL stays the record of truth, this is a fast analytical copy.
+@Component
+public class CDRColumnStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CDRColumnStore.class);
+
+    // replaced, never cleared, by compactIds(); a query keeps the one it started with
+    private SubscriberIds ids = new SubscriberIds();
+    // chunks dropped since the dictionary was last compacted
+    private int evictedSinceCompaction;
+    private final WarmupWatermark watermark = new WarmupWatermark();
+    private final int maxChunks;
+    // copy-on-write, so a query keeps scanning the chunks it started with
+    private volatile ColumnChunk[] chunks = {new ColumnChunk(0)};
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public CDRColumnStore(@Value("${cdr.columnar.max-rows:8388608}") long maxRows) {
+        this.maxChunks = (int) Math.max(2, (maxRows + ColumnChunk.ROWS - 1) / ColumnChunk.ROWS);
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        synchronized (this) {
+            for (CDR cdr : event.cdrs()) {
+                if (watermark.accepts(cdr)) {
+                    append(cdr);
+                }
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        // ids are close to dense, so the last max-rows of them is about what the store can hold
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM cdrs", Long.class);
+        long fromId = maxId == null ? 0 : Math.max(0, maxId - (long) maxChunks * ColumnChunk.ROWS);
+        // locked per row, for the same reason as TopTalkersTracker.warmUp()
+        long snapshotId = historyReader.read("id > ?", new Object[]{fromId}, watermark, cdr -> {
+            synchronized (this) {
+                append(cdr);
+            }
+        });
+        watermark.warmedThrough(snapshotId);
+        logger.info("Column store warmed up with {} rows", stats().get("rows"));
+    }
+
+    // Caller holds the monitor (the only writer)
+    private void append(CDR cdr) {
+        int service = ServiceTypes.indexOf(cdr.getServiceType());
+        long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+        if (service == ServiceTypes.UNKNOWN || minute < 0 || minute > Integer.MAX_VALUE || cdr.getAnum() == null) {
+            return;
+        }
+        ColumnChunk[] current = chunks;
+        ColumnChunk last = current[current.length - 1];
+        if (last.isFull()) {
+            int keep = Math.min(current.length, maxChunks - 1);
+            ColumnChunk[] next = Arrays.copyOfRange(current, current.length - keep, current.length + 1);
+            last = new ColumnChunk(last.seq + 1);
+            next[keep] = last;
+            chunks = next;
+            evictedSinceCompaction += current.length - keep;
+            if (evictedSinceCompaction >= Math.max(1, maxChunks / 2)) {
+                compactIds();
+                last = chunks[chunks.length - 1];
+            }
+        }
+        int anum = ids.intern(cdr.getAnum());
+        int bnum = ids.intern(cdr.getBnum() == null ? "null" : cdr.getBnum());
+        last.append(anum, bnum, (byte) service, (int) minute, (float) cdr.getUsage());
+    }
+
+    // Numbers whose rows were all dropped would otherwise keep their ids forever. The numbers the chunks
+    // still use are interned into a new dictionary and each chunk gets a copy with its id columns
+    // translated; a query running meanwhile keeps the old chunks and dictionary, which are not written again.
+    // Compacting after every maxChunks / 2 dropped chunks keeps the copying at about one column pass per
+    // row ingested, and the dictionary below about 1.5 times the numbers in the store.
+    private void compactIds() {
+        SubscriberIds compacted = new SubscriberIds();
+        ColumnChunk[] current = chunks;
+        ColumnChunk[] next = new ColumnChunk[current.length];
+        for (int i = 0; i < current.length; i++) {
+            next[i] = current[i].withIds(ids, compacted);
+        }
+        logger.debug("Compacted column store dictionary from {} to {} numbers", ids.size(), compacted.size());
+        ids = compacted;
+        chunks = next;
+        evictedSinceCompaction = 0;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long rows = 0;
+        for (ColumnChunk chunk : chunks) {
+            rows += chunk.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rows", rows);
+        stats.put("chunks", chunks.length);
+        stats.put("maxRows", (long) maxChunks * ColumnChunk.ROWS);
+        stats.put("subscribers", ids.size());
+        stats.put("offHeapBytes", (long) chunks.length * ColumnChunk.ROWS * 17);
+        return stats;
+    }
+
+    public Result query(ColumnQuery query) {
+        long started = System.nanoTime();
+        ColumnQuery.GroupBy grouping = query.grouping();
+        String order = query.ordering();
+        int limit = query.boundedLimit();
+        ColumnChunk[] snapshot;
+        SubscriberIds dictionary;
+        Filter filter;
+        synchronized (this) {
+            // the chunks together with the dictionary their number ids refer to
+            snapshot = chunks;
+            dictionary = ids;
+            filter = filter(query, dictionary);
+        }
+
+        Partial total = Arrays.stream(snapshot).parallel()
+                .map(chunk -> scan(chunk, filter, grouping, order, query.descending(), limit))
+                .reduce(Partial::merge)
+                .orElseThrow();
+
+        List<Group> groups = null;
+        List<Row> rows = null;
+        synchronized (this) {
+            if (grouping != null) {
+                groups = total.groups.sorted(grouping, order, query.descending(), limit, dictionary);
+            } else {
+                rows = total.top.rows(snapshot, dictionary);
+            }
+        }
+        return new Result(total.scanned, total.matched, (System.nanoTime() - started) / 1e6, groups, rows);
+    }
+
+    // Caller holds the monitor
+    private static Filter filter(ColumnQuery query, SubscriberIds ids) {
+        Filter filter = new Filter();
+        filter.service = query.serviceType() == null ? -1 : ServiceTypes.require(query.serviceType());
+        // a number never seen matches nothing: NONE is an id no row has
+        filter.anum = query.anum() == null ? Filter.ANY : orNone(ids.idOf(query.anum()));
+        filter.bnum = query.bnum() == null ? Filter.ANY : orNone(ids.idOf(query.bnum()));
+        filter.fromMinute = query.from() == null ? Long.MIN_VALUE : StartDateTimes.epochMinute(query.from());
+        filter.toMinute = query.to() == null ? Long.MAX_VALUE : StartDateTimes.epochMinute(query.to());
+        filter.minUsage = query.minUsage() == null ? Float.NEGATIVE_INFINITY : query.minUsage().floatValue();
+        filter.maxUsage = query.maxUsage() == null ? Float.POSITIVE_INFINITY : query.maxUsage().floatValue();
+        return filter;
+    }
+
+    private static int orNone(int id) {
+        return id < 0 ? Filter.NONE : id;
+    }
+
+    private static Partial scan(ColumnChunk chunk, Filter filter, ColumnQuery.GroupBy grouping, String order,
+                                boolean descending, int limit) {
+        int size = chunk.size();
+        Partial partial = new Partial(grouping == null ? new TopN(limit, descending) : null,
+                grouping == null ? null : new Groups());
+        partial.scanned = size;
+        boolean byTime = order.equals("time");
+        for (int i = 0; i < size; i++) {
+            byte service = chunk.services.get(i);
+            if (filter.service >= 0 && service != filter.service) {
+                continue;
+            }
+            int minute = chunk.minutes.get(i);
+            if (minute < filter.fromMinute || minute >= filter.toMinute) {
+                continue;
+            }
+            int anum = chunk.anums.get(i);
+            if (filter.anum != Filter.ANY && anum != filter.anum) {
+                continue;
+            }
+            int bnum = chunk.bnums.get(i);
+            if (filter.bnum != Filter.ANY && bnum != filter.bnum) {
+                continue;
+            }
+            float usage = chunk.usages.get(i);
+            if (usage < filter.minUsage || usage > filter.maxUsage) {
+                continue;
+            }
+            partial.matched++;
+            if (grouping == null) {
+                partial.top.offer(byTime ? minute : usage, chunk.seq << ColumnChunk.SHIFT | i);
+                continue;
+            }
+            int key = switch (grouping) {
+                case SERVICE -> service;
+                case ANUM -> anum;
+                case BNUM -> bnum;
+                case HOUR -> minute / 60;
+                case DAY -> minute / (24 * 60);
+                case ALL -> 0;
+            };
+            partial.groups.add(key, 1, usage, usage, usage);
+        }
+        return partial;
+    }
+
+    private static final class Filter {
+        static final int ANY = -1;
+        static final int NONE = -2;
+        int service;
+        int anum;
+        int bnum;
+        long fromMinute;
+        long toMinute;
+        float minUsage;
+        float maxUsage;
+    }
+
+    // One chunk's (or several merged chunks') share of the answer
+    private static final class Partial {
+        final TopN top;
+        final Groups groups;
+        long scanned;
+        long matched;
+
+        Partial(TopN top, Groups groups) {
+            this.top = top;
+            this.groups = groups;
+        }
+
+        Partial merge(Partial other) {
+            scanned += other.scanned;
+            matched += other.matched;
+            if (top != null) {
+                top.addAll(other.top);
+            } else {
+                groups.addAll(other.groups);
+            }
+            return this;
+        }
+    }
+
+    // Aggregates per int key in flat arrays; the map only translates a key to its slot
+    private static final class Groups {
+        private final IntLongHashMap slots = new IntLongHashMap();
+        private int[] keys = new int[16];
+        private long[] counts = new long[16];
+        private double[] sums = new double[16];
+        private float[] mins = new float[16];
+        private float[] maxs = new float[16];
+        private int size;
+        // rows arrive roughly in time order, so neighbours usually fall in the same group
+        private int lastKey = -1;
+        private int lastSlot;
+
+        void add(int key, long count, double sum, float min, float max) {
+            // slots hold slot + 1, since the map answers 0 for a missing key
+            int slot = key == lastKey ? lastSlot : (int) slots.get(key) - 1;
+            if (slot < 0) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                    sums = Arrays.copyOf(sums, size * 2);
+                    mins = Arrays.copyOf(mins, size * 2);
+                    maxs = Arrays.copyOf(maxs, size * 2);
+                }
+                slot = size++;
+                slots.addTo(key, slot + 1);
+                keys[slot] = key;
+                mins[slot] = min;
+                maxs[slot] = max;
+            }
+            lastKey = key;
+            lastSlot = slot;
+            counts[slot] += count;
+            sums[slot] += sum;
+            mins[slot] = Math.min(mins[slot], min);
+            maxs[slot] = Math.max(maxs[slot], max);
+        }
+
+        void addAll(Groups other) {
+            for (int slot = 0; slot < other.size; slot++) {
+                add(other.keys[slot], other.counts[slot], other.sums[slot], other.mins[slot], other.maxs[slot]);
+            }
+        }
+
+        List<Group> sorted(ColumnQuery.GroupBy grouping, String order, boolean descending, int limit, SubscriberIds ids) {
+            Integer[] slotOrder = new Integer[size];
+            for (int slot = 0; slot < size; slot++) {
+                slotOrder[slot] = slot;
+            }
+            Comparator<Integer> comparator = switch (order) {
+                case "usage" -> Comparator.comparingDouble(slot -> sums[slot]);
+                case "key" -> Comparator.comparingInt(slot -> keys[slot]);
+                default -> Comparator.comparingLong(slot -> counts[slot]);
+            };
+            Arrays.sort(slotOrder, descending ? comparator.reversed() : comparator);
+            List<Group> result = new ArrayList<>(Math.min(limit, size));
+            for (int i = 0; i < Math.min(limit, size); i++) {
+                int slot = slotOrder[i];
+                result.add(new Group(label(grouping, keys[slot], ids), counts[slot], sums[slot], mins[slot], maxs[slot]));
+            }
+            return result;
+        }
+
+        private static String label(ColumnQuery.GroupBy grouping, int key, SubscriberIds ids) {
+            return switch (grouping) {
+                case SERVICE -> ServiceTypes.names[key];
+                case ANUM, BNUM -> ids.numberOf(key);
+                case HOUR -> StartDateTimes.formatEpochMinute(key * 60L);
+                case DAY -> StartDateTimes.formatEpochMinute(key * 24L * 60).substring(0, 10);
+                case ALL -> "all";
+            };
+        }
+    }
+
+    // Bounded heap of the best `capacity` rows by sort key; the root is the worst row kept
+    private static final class TopN {
+        private final int capacity;
+        private final boolean descending;
+        private final double[] keys;
+        private final long[] refs;
+        private int size;
+
+        TopN(int capacity, boolean descending) {
+            this.capacity = capacity;
+            this.descending = descending;
+            this.keys = new double[capacity];
+            this.refs = new long[capacity];
+        }
+
+        void offer(double key, long ref) {
+            if (size < capacity) {
+                keys[size] = key;
+                refs[size] = ref;
+                siftUp(size++);
+            } else if (descending ? key > keys[0] : key < keys[0]) {
+                keys[0] = key;
+                refs[0] = ref;
+                siftDown(0);
+            }
+        }
+
+        void addAll(TopN other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.keys[i], other.refs[i]);
+            }
+        }
+
+        List<Row> rows(ColumnChunk[] snapshot, SubscriberIds ids) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Comparator<Integer> byKey = Comparator.comparingDouble(i -> keys[i]);
+            Arrays.sort(order, descending ? byKey.reversed() : byKey);
+            long firstSeq = snapshot[0].seq;
+            List<Row> rows = new ArrayList<>(size);
+            for (int i : order) {
+                ColumnChunk chunk = snapshot[(int) ((refs[i] >>> ColumnChunk.SHIFT) - firstSeq)];
+                int row = (int) (refs[i] & (ColumnChunk.ROWS - 1));
+                rows.add(new Row(ids.numberOf(chunk.anums.get(row)), ids.numberOf(chunk.bnums.get(row)),
+                        ServiceTypes.names[chunk.services.get(row)], StartDateTimes.formatEpochMinute(chunk.minutes.get(row)),
+                        chunk.usages.get(row)));
+            }
+            return rows;
+        }
+
+        // true if entry a belongs closer to the root than entry b
+        private boolean worse(int a, int b) {
+            return descending ? keys[a] < keys[b] : keys[a] > keys[b];
+        }
+
+        private void siftUp(int i) {
+            while (i > 0 && worse(i, (i - 1) / 2)) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    return;
+                }
+                if (child + 1 < size && worse(child + 1, child)) {
+                    child++;
+                }
+                if (!worse(child, i)) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            double key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long ref = refs[a];
+            refs[a] = refs[b];
+            refs[b] = ref;
+        }
+    }
+
+    public record Group(String key, long count, double usage, double minUsage, double maxUsage) {
+    }
+
+    public record Row(String anum, String bnum, String serviceType, String startDateTime, double usage) {
+    }
+
+    // Exactly one of groups and rows is set
+    public record Result(long scanned, long matched, double elapsedMs, List<Group> groups, List<Row> rows) {
+    }
+}
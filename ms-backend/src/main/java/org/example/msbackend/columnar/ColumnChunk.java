@@ -0,0 +1,75 @@
+package org.example.msbackend.columnar;
+
+import org.example.msbackend.graph.SubscriberIds;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+// A fixed block of rows stored column by column in direct (off-heap) buffers, 17 bytes a row.
+// One writer appends and then publishes the new size; readers only look at rows below the size they read.
+final class ColumnChunk {
+
+    static final int SHIFT = 20;
+    static final int ROWS = 1 << SHIFT;
+
+    // chunk sequence number: the store's row number of row i is seq << SHIFT | i
+    final long seq;
+    final IntBuffer anums;
+    final IntBuffer bnums;
+    final IntBuffer minutes;
+    final FloatBuffer usages;
+    final ByteBuffer services;
+    private volatile int size;
+
+    ColumnChunk(long seq) {
+        this(seq, ints(), ints(), ints(), ByteBuffer.allocateDirect(ROWS * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer(),
+                ByteBuffer.allocateDirect(ROWS));
+    }
+
+    private ColumnChunk(long seq, IntBuffer anums, IntBuffer bnums, IntBuffer minutes, FloatBuffer usages, ByteBuffer services) {
+        this.seq = seq;
+        this.anums = anums;
+        this.bnums = bnums;
+        this.minutes = minutes;
+        this.usages = usages;
+        this.services = services;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == ROWS;
+    }
+
+    // Single writer only
+    void append(int anum, int bnum, byte service, int minute, float usage) {
+        int row = size;
+        anums.put(row, anum);
+        bnums.put(row, bnum);
+        services.put(row, service);
+        minutes.put(row, minute);
+        usages.put(row, usage);
+        size = row + 1;
+    }
+
+    // A copy with the number columns translated from one dictionary to another; the other columns are shared.
+    // This chunk must not be appended to afterwards (the copy takes over as the writer's chunk).
+    ColumnChunk withIds(SubscriberIds from, SubscriberIds to) {
+        ColumnChunk copy = new ColumnChunk(seq, ints(), ints(), minutes, usages, services);
+        int rows = size;
+        for (int row = 0; row < rows; row++) {
+            copy.anums.put(row, to.intern(from.numberOf(anums.get(row))));
+            copy.bnums.put(row, to.intern(from.numberOf(bnums.get(row))));
+        }
+        copy.size = rows;
+        return copy;
+    }
+
+    private static IntBuffer ints() {
+        return ByteBuffer.allocateDirect(ROWS * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+}
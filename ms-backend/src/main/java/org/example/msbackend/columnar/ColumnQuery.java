@@ -0,0 +1,46 @@
+package org.example.msbackend.columnar;
+
+import java.time.LocalDateTime;
+
+// An ad-hoc query over CDRColumnStore. Every filter is optional (null); `to` is exclusive.
+// With groupBy the result is aggregated groups, otherwise matching rows; orderBy is count, usage or key
+// for groups and usage or time for rows.
+public record ColumnQuery(String serviceType, String anum, String bnum, LocalDateTime from, LocalDateTime to,
+                          Double minUsage, Double maxUsage, String groupBy, String orderBy, boolean descending,
+                          int limit) {
+
+    public static final int MAX_LIMIT = 10_000;
+
+    enum GroupBy {
+        SERVICE, ANUM, BNUM, HOUR, DAY, ALL
+    }
+
+    GroupBy grouping() {
+        if (groupBy == null || groupBy.isBlank()) {
+            return null;
+        }
+        for (GroupBy value : GroupBy.values()) {
+            if (value.name().equalsIgnoreCase(groupBy.trim())) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("❌ groupBy must be one of service, anum, bnum, hour, day or all");
+    }
+
+    String ordering() {
+        String order = orderBy == null || orderBy.isBlank() ? (groupBy == null || groupBy.isBlank() ? "usage" : "count")
+                : orderBy.trim().toLowerCase();
+        boolean valid = groupBy == null || groupBy.isBlank()
+                ? order.equals("usage") || order.equals("time")
+                : order.equals("count") || order.equals("usage") || order.equals("key");
+        if (!valid) {
+            throw new IllegalArgumentException("❌ orderBy must be " + (groupBy == null || groupBy.isBlank()
+                    ? "usage or time" : "count, usage or key"));
+        }
+        return order;
+    }
+
+    int boundedLimit() {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
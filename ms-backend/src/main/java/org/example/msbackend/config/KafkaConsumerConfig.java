@@ -1,20 +1,16 @@
 package org.example.msbackend.config;
 
-import org.apache.kafka.clients.consumer.Consumer;
-import org.apache.kafka.common.TopicPartition;
 import org.example.msbackend.database.entity.CDR;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
-import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -50,17 +46,10 @@ public class KafkaConsumerConfig {
                 new ConcurrentKafkaListenerContainerFactory<>();
 
         factory.setConsumerFactory(consumerFactory());
+        // hand each poll to the listener as one batch so it is persisted in one transaction
+        factory.setBatchListener(true);
 
-        // <— this forces every rebalance (including at startup) to read from beginning
-        factory.getContainerProperties()
-                .setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
-                    @Override
-                    public void onPartitionsAssigned(Consumer<?,?> consumer,
-                                                     Collection<TopicPartition> partitions) {
-                        consumer.seekToBeginning(partitions);
-                    }
-                });
-
+        // resumes from the group's committed offsets; history is re-sent by the loader's replay (CDRReplayer)
         return factory;
     }
 }
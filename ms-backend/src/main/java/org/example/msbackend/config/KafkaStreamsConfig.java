@@ -0,0 +1,50 @@
+package org.example.msbackend.config;
+
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.KStream;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.streams.CDRWindowTopology;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaStreams;
+import org.springframework.kafka.annotation.KafkaStreamsDefaultConfiguration;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.streams.KafkaStreamsInteractiveQueryService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Kafka Streams windowed aggregates next to the MySQL ingest (see CDRWindowTopology). Every backend
+// instance shares the application id, so adding instances splits the partitions and their state
+// stores between them; application.server tells the others where to forward a query.
+@Configuration
+@EnableKafkaStreams
+@ConditionalOnProperty(name = "cdr.streams.enabled", havingValue = "true", matchIfMissing = true)
+public class KafkaStreamsConfig {
+
+    @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
+    public KafkaStreamsConfiguration kafkaStreamsConfig(@Value("${cdr.streams.advertised-host}") String advertisedHost,
+                                                        @Value("${server.port}") int port,
+                                                        @Value("${cdr.streams.state-dir}") String stateDir) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "cdr-streams");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "kafka:9092");
+        props.put(StreamsConfig.APPLICATION_SERVER_CONFIG, advertisedHost + ":" + port);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+        return new KafkaStreamsConfiguration(props);
+    }
+
+    @Bean
+    public KStream<String, CDR> cdrWindowStream(StreamsBuilder streamsBuilder) {
+        return CDRWindowTopology.build(streamsBuilder);
+    }
+
+    @Bean
+    public KafkaStreamsInteractiveQueryService interactiveQueryService(StreamsBuilderFactoryBean streamsBuilderFactoryBean) {
+        return new KafkaStreamsInteractiveQueryService(streamsBuilderFactoryBean);
+    }
+}
@@ -20,6 +20,7 @@ public class WebConfig {
                         .allowedOrigins(frontendUrl, "http://localhost",  "http://127.0.0.1*")
                         .allowedMethods("*")
                         .allowedHeaders("*")
+                        .exposedHeaders("ETag")
                         .allowCredentials(true);
             }
         };
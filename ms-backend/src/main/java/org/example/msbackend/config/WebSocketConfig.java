@@ -0,0 +1,26 @@
+package org.example.msbackend.config;
+
+import org.example.msbackend.websocket.CDRPushHandler;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final CDRPushHandler cdrPushHandler;
+
+    public WebSocketConfig(CDRPushHandler cdrPushHandler) {
+        this.cdrPushHandler = cdrPushHandler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        // ✅ Same origins as the REST CORS mapping in WebConfig; lives under /api so every proxy routes it
+        String frontendUrl = System.getenv().getOrDefault("FRONTEND_URL", "http://localhost");
+        registry.addHandler(cdrPushHandler, "/api/ws/cdrs")
+                .setAllowedOriginPatterns(frontendUrl, "http://localhost", "http://127.0.0.1*");
+    }
+}
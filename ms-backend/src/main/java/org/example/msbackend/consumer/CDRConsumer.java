@@ -7,6 +7,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class CDRConsumer {
 
@@ -18,11 +20,12 @@ public class CDRConsumer {
     }
 
     @KafkaListener(topics = "cdr-topic", groupId = "backend-group", containerFactory = "cdrKafkaListenerContainerFactory")
-    public void consumeCDR(CDR cdr) {
-        //Wipe the ID so Hibernate treats it as NEW, not an update
-        cdr.setId(null);
-        logger.info("📥 Received CDR from Kafka: {}", cdr);
-        cdrService.saveCDR(cdr); // store into MySQL
+    public void consumeCDRs(List<CDR> cdrs) {
+        //Wipe the IDs so Hibernate treats them as NEW, not updates
+        cdrs.forEach(cdr -> cdr.setId(null));
+        logger.info("📥 Received {} CDRs from Kafka", cdrs.size());
+        // store into MySQL together with the rollups; CDRAnomalyDetector rates the batch once it has committed
+        cdrService.ingestBatch(cdrs);
     }
 
 
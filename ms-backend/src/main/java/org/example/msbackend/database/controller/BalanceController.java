@@ -0,0 +1,34 @@
+package org.example.msbackend.database.controller;
+
+import org.example.msbackend.balance.PrepaidBalances;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/balances")
+public class BalanceController {
+
+    @Autowired
+    private PrepaidBalances prepaidBalances;
+
+    @GetMapping
+    public Map<String, Object> getStats() {
+        return prepaidBalances.stats();
+    }
+
+    // ✅ A subscriber's prepaid balance for their current month, straight from memory
+    @GetMapping("/{anum}")
+    public ResponseEntity<PrepaidBalances.Balance> getBalance(@PathVariable String anum) {
+        PrepaidBalances.Balance balance = prepaidBalances.balance(anum);
+        return balance == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(balance);
+    }
+
+    // ✅ Adds credit to the current month
+    @PostMapping("/{anum}/topup")
+    public PrepaidBalances.Balance topUp(@PathVariable String anum, @RequestParam double amount) {
+        return prepaidBalances.topUp(anum, amount);
+    }
+}
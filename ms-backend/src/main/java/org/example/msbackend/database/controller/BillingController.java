@@ -0,0 +1,36 @@
+package org.example.msbackend.database.controller;
+
+import org.example.msbackend.billing.BillingJob;
+import org.example.msbackend.billing.BillingStatement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/billing")
+public class BillingController {
+
+    @Autowired
+    private BillingJob billingJob;
+
+    // ✅ Starts (or resumes) the statement run for a month, e.g. 2025-01; returns at once with its progress
+    @PostMapping("/runs/{period}")
+    public ResponseEntity<Map<String, Object>> startRun(@PathVariable String period) {
+        return ResponseEntity.accepted().body(billingJob.start(period));
+    }
+
+    @GetMapping("/runs/{period}")
+    public ResponseEntity<Map<String, Object>> getRun(@PathVariable String period) {
+        Map<String, Object> status = billingJob.status(period);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+
+    // ✅ One subscriber's statement for a billed month
+    @GetMapping("/statements/{period}/{anum}")
+    public ResponseEntity<BillingStatement> getStatement(@PathVariable String period, @PathVariable String anum) {
+        BillingStatement statement = billingJob.statement(period, anum);
+        return statement == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(statement);
+    }
+}
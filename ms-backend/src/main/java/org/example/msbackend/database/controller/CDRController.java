@@ -1,14 +1,21 @@
 package org.example.msbackend.database.controller;
 
 import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.database.entity.CDRHourlyRollup;
+import org.example.msbackend.database.service.CDRQueryCache;
+import org.example.msbackend.database.service.CDRRollupService;
 import org.example.msbackend.database.service.CDRService;
+import org.example.msbackend.utils.StartDateTimes;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.Comparator;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api")
@@ -17,57 +24,101 @@ public class CDRController {
     @Autowired
     private CDRService cdrService;
 
-    // ✅ Original: get all CDRs
+    @Autowired
+    private CDRRollupService rollupService;
+
+    @Autowired
+    private CDRQueryCache queryCache;
+
+    // ✅ Original: get all CDRs, or only those starting in [from, to)
     @GetMapping("/cdrs")
-    public List<CDR> getAllCDRs() {
-        return cdrService.getAllCDRs();
+    public List<CDR> getAllCDRs(@RequestParam(required = false) String from,
+                                @RequestParam(required = false) String to) {
+        if (from == null && to == null) {
+            return queryCache.get("cdrs", () -> List.copyOf(cdrService.getAllCDRs()));
+        }
+        LocalDateTime fromTime = StartDateTimes.parseBound(from);
+        LocalDateTime toTime = StartDateTimes.parseBound(to);
+        return queryCache.get("cdrs:" + fromTime + ":" + toTime,
+                () -> List.copyOf(cdrService.getCDRsBetween(fromTime, toTime)));
     }
 
-    // ✅ Filtered: sort or serviceType filter
+    // ✅ The newest n CDRs, newest first, answered from memory; pass the last id seen as `before` to page back
+    @GetMapping("/cdrs/recent")
+    public List<CDR> getRecentCDRs(@RequestParam(defaultValue = "50") int n,
+                                   @RequestParam(required = false) String serviceType,
+                                   @RequestParam(required = false) Long before) {
+        return cdrService.getRecentCDRs(serviceType, n, before);
+    }
+
+    // ✅ Filtered: serviceType filter, sort, date range and limit all run in MySQL
     @GetMapping("/cdrs/filtered")
     public List<CDR> getFilteredCDRs(@RequestParam(required = false) String sort,
-                                     @RequestParam(required = false) String serviceType) {
-        List<CDR> cdrs = cdrService.getAllCDRs();
-
-        if (serviceType != null) {
-            cdrs = cdrs.stream()
-                    .filter(cdr -> cdr.getServiceType().equalsIgnoreCase(serviceType))
-                    .collect(Collectors.toList());
-        }
+                                     @RequestParam(required = false) String serviceType,
+                                     @RequestParam(required = false) String from,
+                                     @RequestParam(required = false) String to,
+                                     @RequestParam(required = false) Integer limit) {
+        String key = "filtered:" + sort + ":" + serviceType + ":" + from + ":" + to + ":" + limit;
+        return queryCache.get(key, () -> List.copyOf(cdrService.getFilteredCDRs(serviceType, sort, from, to, limit)));
+    }
 
-        if (sort != null) {
-            switch (sort.toLowerCase()) {
-                case "anum":
-                    cdrs.sort(Comparator.comparing(cdr ->
-                            cdr.getAnum() != null ? cdr.getAnum() : "", String::compareTo));
-                    break;
-                case "bnum":
-                    cdrs.sort(Comparator.comparing(cdr ->
-                            cdr.getBnum() != null ? cdr.getBnum() : "", String::compareTo));
-                    break;
-                case "usage":
-                    cdrs.sort(Comparator.comparing(CDR::getUsage).reversed());
-                    break;
-            }
-        }
+    // ✅ Delta sync for polling clients: CDRs committed after the `since` cursor, oldest first, and the
+    // cursor to send next. Without `since` only the current cursor is returned. An idle system answers
+    // from the cache without touching MySQL.
+    @GetMapping("/cdrs/changes")
+    public Map<String, Object> getChanges(@RequestParam(required = false) Long since,
+                                          @RequestParam(defaultValue = "1000") int limit) {
+        long through = queryCache.get("changes:cursor", rollupService::snapshotCommittedId);
+        List<CDR> cdrs = since == null || since >= through
+                ? List.of()
+                : queryCache.get("changes:" + since + ":" + through + ":" + limit,
+                        () -> List.copyOf(cdrService.getChangesSince(since, through, limit)));
 
-        return cdrs;
+        boolean more = !cdrs.isEmpty() && cdrs.size() == limit;
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("cdrs", cdrs);
+        response.put("cursor", more ? cdrs.get(cdrs.size() - 1).getId() : since == null ? through : Math.max(through, since));
+        response.put("more", more);
+        return response;
     }
 
-
     @PostMapping("/cdrs")
     public CDR createCDR(@RequestBody CDR cdr) {
         return cdrService.saveCDR(cdr);
     }
 
+    // ✅ Counts per service type, read from the hourly rollup instead of the cdrs table.
+    // 304 Not Modified while nothing has been ingested since the client's ETag.
     @GetMapping("/cdrs/aggregated")
-    public Map<String, Long> getAggregatedUsage() {
-        List<CDR> allCDRs = cdrService.getAllCDRs();
+    public Map<String, Long> getAggregatedUsage(@RequestParam(required = false) String from,
+                                                @RequestParam(required = false) String to,
+                                                WebRequest request) {
+        if (request.checkNotModified(queryCache.etag())) {
+            return null;
+        }
+        LocalDateTime fromTime = StartDateTimes.parseBound(from);
+        LocalDateTime toTime = StartDateTimes.parseBound(to);
+        return queryCache.get("aggregated:" + fromTime + ":" + toTime,
+                () -> Map.copyOf(rollupService.countsByServiceType(fromTime, toTime)));
+    }
 
-        return allCDRs.stream()
-                .collect(Collectors.groupingBy(
-                        cdr -> cdr.getServiceType().toLowerCase(),
-                        Collectors.counting()
-                ));
+    @GetMapping("/cdrs/aggregated/hourly")
+    public List<CDRHourlyRollup> getHourlyUsage(@RequestParam(required = false) String serviceType,
+                                                @RequestParam(required = false) String from,
+                                                @RequestParam(required = false) String to,
+                                                WebRequest request) {
+        if (request.checkNotModified(queryCache.etag())) {
+            return null;
+        }
+        return rollupService.hourly(serviceType, StartDateTimes.parseBound(from), StartDateTimes.parseBound(to));
+    }
+
+    @PostMapping("/cdrs/aggregated/rebuild")
+    public ResponseEntity<String> rebuildAggregates() {
+        if (rollupService.isRebuilding()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("❌ A rollup rebuild is already running.");
+        }
+        rollupService.rebuildAsync();
+        return ResponseEntity.accepted().body("✅ Rollup rebuild started.");
     }
 }
@@ -0,0 +1,41 @@
+package org.example.msbackend.database.controller;
+
+import org.example.msbackend.columnar.CDRColumnStore;
+import org.example.msbackend.columnar.ColumnQuery;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/columnar")
+public class ColumnarController {
+
+    @Autowired
+    private CDRColumnStore columnStore;
+
+    @GetMapping
+    public Map<String, Object> getStats() {
+        return columnStore.stats();
+    }
+
+    // ✅ Ad-hoc filter / group / sort over the in-memory column store, e.g.
+    // ?serviceType=CALL&groupBy=anum&orderBy=usage&limit=20 or ?anum=...&orderBy=time
+    @GetMapping("/query")
+    public CDRColumnStore.Result query(@RequestParam(required = false) String serviceType,
+                                       @RequestParam(required = false) String anum,
+                                       @RequestParam(required = false) String bnum,
+                                       @RequestParam(required = false) String from,
+                                       @RequestParam(required = false) String to,
+                                       @RequestParam(required = false) Double minUsage,
+                                       @RequestParam(required = false) Double maxUsage,
+                                       @RequestParam(required = false) String groupBy,
+                                       @RequestParam(required = false) String orderBy,
+                                       @RequestParam(defaultValue = "desc") String direction,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        return columnStore.query(new ColumnQuery(serviceType, anum, bnum, StartDateTimes.parseBound(from),
+                StartDateTimes.parseBound(to), minUsage, maxUsage, groupBy, orderBy,
+                !direction.equalsIgnoreCase("asc"), limit));
+    }
+}
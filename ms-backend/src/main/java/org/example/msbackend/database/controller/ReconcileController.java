@@ -0,0 +1,29 @@
+package org.example.msbackend.database.controller;
+
+import org.example.msbackend.reconcile.ReconciliationJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/reconcile")
+public class ReconcileController {
+
+    @Autowired
+    private ReconciliationJob reconciliationJob;
+
+    // ✅ Starts comparing MySQL against the loader's Postgres for [from, to); returns at once with the run's id
+    @PostMapping("/runs")
+    public ResponseEntity<Map<String, Object>> startRun(@RequestParam String from, @RequestParam String to) {
+        return ResponseEntity.accepted().body(reconciliationJob.start(from, to));
+    }
+
+    // ✅ Progress, or the final report: counts per level and the missing and extra CDRs
+    @GetMapping("/runs/{id}")
+    public ResponseEntity<Map<String, Object>> getRun(@PathVariable String id) {
+        Map<String, Object> status = reconciliationJob.status(id);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+}
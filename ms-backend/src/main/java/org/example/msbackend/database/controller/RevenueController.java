@@ -0,0 +1,55 @@
+package org.example.msbackend.database.controller;
+
+import org.example.cdrcommon.rating.TariffPlan;
+import org.example.msbackend.database.service.CDRQueryCache;
+import org.example.msbackend.database.service.CDRRevenueService;
+import org.example.msbackend.rating.RatingEngine;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/revenue")
+public class RevenueController {
+
+    @Autowired
+    private CDRRevenueService revenueService;
+
+    @Autowired
+    private RatingEngine ratingEngine;
+
+    @Autowired
+    private CDRQueryCache queryCache;
+
+    // ✅ Revenue per service type under a tariff plan (default plan if none), by hour, by day or over the whole range
+    @GetMapping
+    public List<CDRRevenueService.Revenue> getRevenue(@RequestParam(required = false) String plan,
+                                                      @RequestParam(required = false) String serviceType,
+                                                      @RequestParam(required = false) String from,
+                                                      @RequestParam(required = false) String to,
+                                                      @RequestParam(required = false) String by,
+                                                      WebRequest request) {
+        if (request.checkNotModified(queryCache.etag())) {
+            return null;
+        }
+        LocalDateTime fromTime = StartDateTimes.parseBound(from);
+        LocalDateTime toTime = StartDateTimes.parseBound(to);
+        return queryCache.get("revenue:" + plan + ":" + serviceType + ":" + fromTime + ":" + toTime + ":" + by,
+                () -> List.copyOf(revenueService.revenue(plan, serviceType, fromTime, toTime, by)));
+    }
+
+    @GetMapping("/plans")
+    public Map<String, String> getPlans() {
+        Map<String, String> plans = new LinkedHashMap<>();
+        for (TariffPlan plan : ratingEngine.plans()) {
+            plans.put(plan.getName(), plan.getSpec());
+        }
+        return plans;
+    }
+}
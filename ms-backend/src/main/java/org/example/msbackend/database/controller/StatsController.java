@@ -0,0 +1,133 @@
+package org.example.msbackend.database.controller;
+
+import org.example.msbackend.archive.CDRArchive;
+import org.example.msbackend.database.service.CDRDistinctService;
+import org.example.msbackend.database.service.CDRHistogramService;
+import org.example.msbackend.database.service.CDRQueryCache;
+import org.example.msbackend.database.service.SubscriberDictionary;
+import org.example.msbackend.profile.SubscriberProfiles;
+import org.example.msbackend.stats.LiveRollupEngine;
+import org.example.msbackend.stats.TopTalkersTracker;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stats")
+public class StatsController {
+
+    @Autowired
+    private LiveRollupEngine liveRollupEngine;
+
+    @Autowired
+    private CDRQueryCache queryCache;
+
+    @Autowired
+    private TopTalkersTracker topTalkersTracker;
+
+    @Autowired
+    private CDRDistinctService distinctService;
+
+    @Autowired
+    private CDRHistogramService histogramService;
+
+    @Autowired
+    private SubscriberDictionary subscriberDictionary;
+
+    @Autowired
+    private SubscriberProfiles subscriberProfiles;
+
+    @Autowired
+    private CDRArchive archive;
+
+    @GetMapping("/cache")
+    public Map<String, Object> getCacheStats() {
+        return queryCache.stats();
+    }
+
+    @GetMapping("/dimensions")
+    public Map<String, Object> getDimensionStats() {
+        return subscriberDictionary.stats();
+    }
+
+    @GetMapping("/profiles")
+    public Map<String, Object> getProfileStats() {
+        return subscriberProfiles.stats();
+    }
+
+    @GetMapping("/archive")
+    public Map<String, Object> getArchiveStats() {
+        return archive.stats();
+    }
+
+    // ✅ 24h totals per service type, straight from memory
+    @GetMapping("/live")
+    public Map<String, Object> getLiveTotals() {
+        Map<String, Object> totals = new LinkedHashMap<>();
+        for (int service = 0; service < ServiceTypes.names.length; service++) {
+            totals.put(ServiceTypes.names[service].toLowerCase(), liveRollupEngine.total(service));
+        }
+        long newest = liveRollupEngine.newestMinute();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("windowEnd", newest == StartDateTimes.INVALID ? null : StartDateTimes.formatEpochMinute(newest));
+        response.put("services", totals);
+        return response;
+    }
+
+    @GetMapping("/live/minutes")
+    public List<LiveRollupEngine.Bucket> getLiveMinutes(@RequestParam String serviceType,
+                                                        @RequestParam(defaultValue = "60") int last) {
+        return liveRollupEngine.minutes(ServiceTypes.require(serviceType), last);
+    }
+
+    @GetMapping("/live/hours")
+    public List<LiveRollupEngine.Bucket> getLiveHours(@RequestParam String serviceType) {
+        return liveRollupEngine.hours(ServiceTypes.require(serviceType));
+    }
+
+    // ✅ Top anums by usage over the last 24h, with the sketch's error bounds and last exact check
+    @GetMapping("/top")
+    public Map<String, Object> getTopTalkers(@RequestParam String serviceType,
+                                             @RequestParam(defaultValue = "10") int n) {
+        return topTalkersTracker.top(ServiceTypes.require(serviceType), n);
+    }
+
+    // ✅ Unique A numbers, B numbers and A/B pairs per service type, by hour, by day or over the whole range
+    @GetMapping("/distinct")
+    public List<CDRDistinctService.DistinctCount> getDistinctSubscribers(@RequestParam(required = false) String serviceType,
+                                                                         @RequestParam(required = false) String from,
+                                                                         @RequestParam(required = false) String to,
+                                                                         @RequestParam(required = false) String by,
+                                                                         WebRequest request) {
+        if (request.checkNotModified(queryCache.etag())) {
+            return null;
+        }
+        LocalDateTime fromTime = StartDateTimes.parseBound(from);
+        LocalDateTime toTime = StartDateTimes.parseBound(to);
+        return queryCache.get("distinct:" + serviceType + ":" + fromTime + ":" + toTime + ":" + by,
+                () -> List.copyOf(distinctService.distinct(serviceType, fromTime, toTime, by)));
+    }
+
+    // ✅ p50/p90/p99/max of usage per service type, by hour, by day or over the whole range
+    @GetMapping("/percentiles")
+    public List<CDRHistogramService.UsagePercentiles> getUsagePercentiles(@RequestParam(required = false) String serviceType,
+                                                                          @RequestParam(required = false) String from,
+                                                                          @RequestParam(required = false) String to,
+                                                                          @RequestParam(required = false) String by,
+                                                                          WebRequest request) {
+        if (request.checkNotModified(queryCache.etag())) {
+            return null;
+        }
+        LocalDateTime fromTime = StartDateTimes.parseBound(from);
+        LocalDateTime toTime = StartDateTimes.parseBound(to);
+        return queryCache.get("percentiles:" + serviceType + ":" + fromTime + ":" + toTime + ":" + by,
+                () -> List.copyOf(histogramService.percentiles(serviceType, fromTime, toTime, by)));
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.msbackend.database.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.kafka.streams.state.HostInfo;
+import org.example.msbackend.streams.CDRWindowQueries;
+import org.example.msbackend.streams.CDRWindowTopology;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/streams")
+@ConditionalOnProperty(name = "cdr.streams.enabled", havingValue = "true", matchIfMissing = true)
+public class StreamsController {
+
+    @Autowired
+    private CDRWindowQueries windowQueries;
+
+    // ✅ 1 minute tumbling windows of one service type, from the Kafka Streams state store
+    @GetMapping("/services/{serviceType}/minutes")
+    public List<CDRWindowQueries.WindowedUsage> getServiceMinutes(@PathVariable String serviceType,
+                                                                  @RequestParam(required = false) String from,
+                                                                  @RequestParam(required = false) String to,
+                                                                  @RequestParam(defaultValue = "false") boolean forwarded,
+                                                                  HttpServletRequest request) {
+        String key = ServiceTypes.names[ServiceTypes.require(serviceType)];
+        return query(CDRWindowTopology.SERVICE_MINUTES_STORE, key, from, to, forwarded, request);
+    }
+
+    // ✅ 1 hour windows of one service type, one starting every 5 minutes
+    @GetMapping("/services/{serviceType}/hours")
+    public List<CDRWindowQueries.WindowedUsage> getServiceHours(@PathVariable String serviceType,
+                                                                @RequestParam(required = false) String from,
+                                                                @RequestParam(required = false) String to,
+                                                                @RequestParam(defaultValue = "false") boolean forwarded,
+                                                                HttpServletRequest request) {
+        String key = ServiceTypes.names[ServiceTypes.require(serviceType)];
+        return query(CDRWindowTopology.SERVICE_HOURS_HOPPING_STORE, key, from, to, forwarded, request);
+    }
+
+    // ✅ 1 hour tumbling windows of one subscriber (as the A side)
+    @GetMapping("/subscribers/{number}/hours")
+    public List<CDRWindowQueries.WindowedUsage> getSubscriberHours(@PathVariable String number,
+                                                                   @RequestParam(required = false) String from,
+                                                                   @RequestParam(required = false) String to,
+                                                                   @RequestParam(defaultValue = "false") boolean forwarded,
+                                                                   HttpServletRequest request) {
+        return query(CDRWindowTopology.SUBSCRIBER_HOURS_STORE, number, from, to, forwarded, request);
+    }
+
+    // Answers from the local store, or forwards once to the instance that owns the key
+    private List<CDRWindowQueries.WindowedUsage> query(String store, String key, String from, String to,
+                                                       boolean forwarded, HttpServletRequest request) {
+        HostInfo owner = forwarded ? null : windowQueries.ownerOf(store, key);
+        if (owner != null) {
+            String query = request.getQueryString();
+            return windowQueries.fetchRemote(owner, request.getRequestURI()
+                    + "?" + (query == null ? "" : query + "&") + "forwarded=true");
+        }
+        return windowQueries.fetchLocal(store, key, StartDateTimes.parseBound(from), StartDateTimes.parseBound(to));
+    }
+}
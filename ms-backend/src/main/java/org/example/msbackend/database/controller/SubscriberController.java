@@ -0,0 +1,73 @@
+package org.example.msbackend.database.controller;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.database.service.CDRService;
+import org.example.msbackend.graph.CallGraphIndex;
+import org.example.msbackend.profile.SubscriberProfiles;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/subscribers")
+public class SubscriberController {
+
+    @Autowired
+    private CDRService cdrService;
+
+    @Autowired
+    private CallGraphIndex callGraph;
+
+    @Autowired
+    private SubscriberProfiles subscriberProfiles;
+
+    // ✅ Every CDR where the number is the A or B side, newest first
+    @GetMapping("/{number}/cdrs")
+    public List<CDR> getHistory(@PathVariable String number,
+                                @RequestParam(defaultValue = "0") int page,
+                                @RequestParam(defaultValue = "50") int size) {
+        return cdrService.getSubscriberHistory(number, page, size);
+    }
+
+    // ✅ Calls, SMS, data MB and last seen time of the number as A side
+    @GetMapping("/{number}/profile")
+    public ResponseEntity<SubscriberProfiles.Profile> getProfile(@PathVariable String number) {
+        SubscriberProfiles.Profile profile = subscriberProfiles.profile(number);
+        return profile.isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(profile);
+    }
+
+    // ✅ The numbers this one calls and texts the most (direction: out, in or both)
+    @GetMapping("/{number}/contacts")
+    public List<CallGraphIndex.Contact> getTopContacts(@PathVariable String number,
+                                                       @RequestParam(defaultValue = "both") String direction,
+                                                       @RequestParam(defaultValue = "10") int n) {
+        return callGraph.topContacts(number, direction, n);
+    }
+
+    @GetMapping("/{number}/degree")
+    public CallGraphIndex.Degree getDegree(@PathVariable String number) {
+        return callGraph.degree(number);
+    }
+
+    // ✅ How many subscribers are one and two hops away
+    @GetMapping("/{number}/reach")
+    public CallGraphIndex.Reach getReach(@PathVariable String number,
+                                         @RequestParam(defaultValue = "out") String direction) {
+        return callGraph.reach(number, direction);
+    }
+
+    // ✅ Calls and SMS from each A number to each B number (comma-separated lists)
+    @GetMapping("/matrix")
+    public CallGraphIndex.TrafficMatrix getTrafficMatrix(@RequestParam List<String> anums,
+                                                         @RequestParam List<String> bnums) {
+        return callGraph.matrix(anums, bnums);
+    }
+
+    @GetMapping("/graph")
+    public Map<String, Object> getGraphSize() {
+        return callGraph.size();
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.msbackend.database.controller;
+
+import org.example.msbackend.traffic.BusyHourEngine;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/traffic")
+public class TrafficController {
+
+    @Autowired
+    private BusyHourEngine busyHourEngine;
+
+    // ✅ Per day peak concurrent calls, busy hour and Erlang load
+    @GetMapping("/days")
+    public List<BusyHourEngine.DayTraffic> getDays(@RequestParam(required = false) String from,
+                                                   @RequestParam(required = false) String to) {
+        return busyHourEngine.days(StartDateTimes.parseBound(from), StartDateTimes.parseBound(to));
+    }
+
+    // ✅ The busiest hour in the range
+    @GetMapping("/busy-hour")
+    public ResponseEntity<BusyHourEngine.DayTraffic> getBusyHour(@RequestParam(required = false) String from,
+                                                                 @RequestParam(required = false) String to) {
+        BusyHourEngine.DayTraffic busiest = busyHourEngine.busiest(StartDateTimes.parseBound(from), StartDateTimes.parseBound(to));
+        return busiest == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(busiest);
+    }
+
+    // Concurrent calls in each of the 1440 minutes of a day (yyyy-MM-dd)
+    @GetMapping("/days/{day}/concurrency")
+    public ResponseEntity<int[]> getConcurrency(@PathVariable String day) {
+        LocalDateTime start = StartDateTimes.parseBound(day);
+        int[] curve = busyHourEngine.concurrency(LocalDate.from(start));
+        return curve == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(curve);
+    }
+}
@@ -3,15 +3,23 @@ package org.example.msbackend.database.entity;
 //import jakarta.xml.bind.annotation.XmlElement;
 //import jakarta.xml.bind.annotation.XmlRootElement;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.example.msbackend.utils.StartDateTimes;
+
+import java.time.LocalDateTime;
 
 //@XmlRootElement(name = "cdr")
+// Read through the cdr_records view (V10), which joins the encoded cdrs table back to the subscriber and
+// service type names; new rows are written by CDRService.saveAllCDRs
 @Entity
-@Table(name = "cdrs")
+@Immutable
+@Table(name = "cdr_records")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -30,6 +38,10 @@ public class CDR {
     private double usage;
     @Column(name = "startDateTime",nullable = false)
     private String startDateTime;
+    // typed copy of startDateTime used for range queries and partition pruning; not part of the API
+    @JsonIgnore
+    @Column(name = "startTime")
+    private LocalDateTime startTime;
 
     public CDR(String anum, String bnum, String serviceType, double usage, String startDateTime) {
         this.anum = anum;
@@ -88,6 +100,15 @@ public class CDR {
         this.startDateTime = startDateTime;
     }
 
+    // Called by CDRService.saveAllCDRs for each row it inserts
+    public void fillStartTime() {
+        try {
+            startTime = LocalDateTime.parse(startDateTime, StartDateTimes.formatter);
+        } catch (RuntimeException e) {
+            startTime = null;
+        }
+    }
+
 
 //    public String toString(int index) {
 //        return(Color.colorText("\nCDR number (" + index + ")\n", Color.underline) +
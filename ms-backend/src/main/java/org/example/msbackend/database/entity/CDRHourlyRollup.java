@@ -0,0 +1,49 @@
+package org.example.msbackend.database.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Entity
+@Table(name = "cdr_hourly_rollups")
+@IdClass(CDRHourlyRollup.Key.class)
+@Getter
+@NoArgsConstructor
+public class CDRHourlyRollup {
+    @Id
+    @Column(name = "serviceType", nullable = false)
+    private String serviceType;
+    @Id
+    @Column(name = "bucketStart", nullable = false)
+    private LocalDateTime bucketStart;
+    @Column(name = "cdrCount", nullable = false)
+    private long cdrCount;
+    @Column(name = "usageSum", nullable = false)
+    private double usageSum;
+    @Column(name = "usageMin", nullable = false)
+    private double usageMin;
+    @Column(name = "usageMax", nullable = false)
+    private double usageMax;
+
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private String serviceType;
+        private LocalDateTime bucketStart;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+            return Objects.equals(serviceType, key.serviceType) && Objects.equals(bucketStart, key.bucketStart);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serviceType, bucketStart);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.msbackend.database.repository;
+
+import org.example.msbackend.database.entity.CDRHourlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CDRHourlyRollupRepository extends JpaRepository<CDRHourlyRollup, CDRHourlyRollup.Key> {
+
+    List<CDRHourlyRollup> findByBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(
+            LocalDateTime from, LocalDateTime to);
+
+    List<CDRHourlyRollup> findByServiceTypeAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(
+            String serviceType, LocalDateTime from, LocalDateTime to);
+
+    // Adds one pre-aggregated bucket of an ingest batch onto the stored bucket
+    @Modifying
+    @Query(value = "INSERT INTO cdr_hourly_rollups (serviceType, bucketStart, cdrCount, usageSum, usageMin, usageMax) " +
+            "VALUES (:serviceType, :bucketStart, :cdrCount, :usageSum, :usageMin, :usageMax) AS incoming " +
+            "ON DUPLICATE KEY UPDATE " +
+            "cdrCount = cdr_hourly_rollups.cdrCount + incoming.cdrCount, " +
+            "usageSum = cdr_hourly_rollups.usageSum + incoming.usageSum, " +
+            "usageMin = LEAST(cdr_hourly_rollups.usageMin, incoming.usageMin), " +
+            "usageMax = GREATEST(cdr_hourly_rollups.usageMax, incoming.usageMax)",
+            nativeQuery = true)
+    void upsert(@Param("serviceType") String serviceType,
+                @Param("bucketStart") LocalDateTime bucketStart,
+                @Param("cdrCount") long cdrCount,
+                @Param("usageSum") double usageSum,
+                @Param("usageMin") double usageMin,
+                @Param("usageMax") double usageMax);
+}
@@ -1,19 +1,42 @@
 package org.example.msbackend.database.repository;
 
 import org.example.msbackend.database.entity.CDR;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
 @Repository
-public interface CDRRepository extends JpaRepository<CDR, Long> {
+public interface CDRRepository extends JpaRepository<CDR, Long>, JpaSpecificationExecutor<CDR> {
     //List<CDR> findAllByOrderByStartTimeAsc();
     List<CDR> findByAnum(String anum);
     List<CDR> findByBnum(@Param("bnum") String bnum);
 
-//    @Query("SELECT c FROM CDR c WHERE c.anum = :num OR c.bnum = :num")
-//    List<CDR> findByAnumOrBnum(@Param("num") String num);
+    // Delta sync reads a primary key range, oldest first
+    List<CDR> findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(long since, long through, Pageable page);
+
+    // A and B side each read one range of their (num, startDateTime, id) index, newest first and capped at
+    // `window` rows, so a page never touches more than offset + size rows per side. Self-calls are only
+    // returned from the A side.
+    @Query(value = "SELECT * FROM (" +
+            "(SELECT * FROM cdr_records WHERE anum = :num ORDER BY startDateTime DESC, id DESC LIMIT :window) " +
+            "UNION ALL " +
+            "(SELECT * FROM cdr_records WHERE bnum = :num AND anum <> :num ORDER BY startDateTime DESC, id DESC LIMIT :window)" +
+            ") history ORDER BY startDateTime DESC, id DESC LIMIT :size OFFSET :offset",
+            nativeQuery = true)
+    List<CDR> findSubscriberHistory(@Param("num") String num,
+                                    @Param("window") int window,
+                                    @Param("size") int size,
+                                    @Param("offset") int offset);
+
+    @Query(value = "SELECT * FROM cdr_records WHERE anum = :num " +
+            "UNION ALL " +
+            "SELECT * FROM cdr_records WHERE bnum = :num AND anum <> :num",
+            nativeQuery = true)
+    List<CDR> findByAnumOrBnum(@Param("num") String num);
 
 }
@@ -0,0 +1,76 @@
+package org.example.msbackend.database.repository;
+
+import org.example.msbackend.database.entity.CDR;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+// Building blocks for /api/cdrs/filtered so the filtering happens in MySQL, not in a stream.
+// Every predicate is a plain column comparison so it can use the indexes from V2__Add_cdr_filter_indexes.sql.
+public class CDRSpecifications {
+
+    private CDRSpecifications() {
+    }
+
+    // The cdrs columns use MySQL's default case-insensitive collation, so an equality check
+    // keeps the old equalsIgnoreCase behaviour without wrapping the column in UPPER().
+    public static Specification<CDR> hasServiceType(String serviceType) {
+        return (root, query, cb) -> serviceType == null
+                ? null
+                : cb.equal(root.get("serviceType"), serviceType.toUpperCase());
+    }
+
+    // from is inclusive, to is exclusive. Compares the typed startTime column so MySQL can prune
+    // cdrs' daily partitions and use idx_cdrs_service_start_time.
+    public static Specification<CDR> startsBetween(LocalDateTime from, LocalDateTime to) {
+        return (root, query, cb) -> {
+            if (from == null && to == null) {
+                return null;
+            }
+            if (from == null) {
+                return cb.lessThan(root.get("startTime"), to);
+            }
+            if (to == null) {
+                return cb.greaterThanOrEqualTo(root.get("startTime"), from);
+            }
+            return cb.and(
+                    cb.greaterThanOrEqualTo(root.get("startTime"), from),
+                    cb.lessThan(root.get("startTime"), to));
+        };
+    }
+
+    // Rows older than an id cursor (null for no bound), for paging back through the newest CDRs
+    public static Specification<CDR> idBelow(Long id) {
+        return (root, query, cb) -> id == null ? null : cb.lessThan(root.get("id"), id);
+    }
+
+    // Same orderings the controller used to apply in memory; id breaks ties so pages are stable.
+    // MySQL already puts NULL bnums first in ascending order, matching the old "" fallback.
+    public static Sort sortBy(String sort) {
+        if (sort == null) {
+            return Sort.by("id");
+        }
+        return switch (sort.toLowerCase()) {
+            case "anum" -> Sort.by("anum", "id");
+            case "bnum" -> Sort.by("bnum", "id");
+            case "usage" -> Sort.by(Sort.Order.desc("usage"), Sort.Order.asc("id"));
+            default -> Sort.by("id");
+        };
+    }
+
+    // sortBy() in Java, for merging archived rows into a MySQL result
+    public static Comparator<CDR> comparatorBy(String sort) {
+        Comparator<CDR> byId = Comparator.comparing(CDR::getId);
+        if (sort == null) {
+            return byId;
+        }
+        return switch (sort.toLowerCase()) {
+            case "anum" -> Comparator.comparing(CDR::getAnum).thenComparing(byId);
+            case "bnum" -> Comparator.comparing(CDR::getBnum, Comparator.nullsFirst(Comparator.<String>naturalOrder())).thenComparing(byId);
+            case "usage" -> Comparator.comparingDouble(CDR::getUsage).reversed().thenComparing(byId);
+            default -> byId;
+        };
+    }
+}
@@ -0,0 +1,197 @@
+package org.example.msbackend.database.service;
+
+import lombok.Getter;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.stats.HyperLogLog;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Distinct anum, bnum and (anum, bnum) counts per service type and hour, kept as HyperLogLog sketches in
+// cdr_hourly_distinct. Adding a CDR to a sketch twice changes nothing, so the backfill and ingest can
+// overlap freely, and any range is answered by merging its hourly sketches instead of COUNT(DISTINCT).
+@Service
+public class CDRDistinctService {
+
+    public static final String ANUM = "ANUM";
+    public static final String BNUM = "BNUM";
+    public static final String PAIR = "PAIR";
+    private static final Logger logger = LoggerFactory.getLogger(CDRDistinctService.class);
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+    private static final long BACKFILL_CHUNK = 100_000;
+    private static final String BACKFILL = "distinct_sketches";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CDRDistinctService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Called from the ingest transaction, so the sketches move together with the inserted rows
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(List<CDR> cdrs) {
+        Map<SketchKey, HyperLogLog> sketches = new TreeMap<>();
+        cdrs.forEach(cdr -> add(sketches, cdr.getServiceType(), cdr.getStartDateTime(), cdr.getAnum(), cdr.getBnum()));
+        sketches.forEach(this::merge);
+    }
+
+    // One row per service type and bucket: `by` is "hour", "day" or null for the whole range.
+    // Bounds are rounded down to whole hours, the sketches' resolution.
+    public List<DistinctCount> distinct(String serviceType, LocalDateTime from, LocalDateTime to, String by) {
+        if (by != null && !by.equalsIgnoreCase("hour") && !by.equalsIgnoreCase("day")) {
+            throw new IllegalArgumentException("❌ by must be hour or day");
+        }
+        LocalDateTime lower = from == null ? MIN_TIME : from.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime upper = to == null ? MAX_TIME : to;
+        String sql = "SELECT serviceType, bucketStart, dimension, registers FROM cdr_hourly_distinct " +
+                "WHERE bucketStart >= ? AND bucketStart < ?" + (serviceType == null ? "" : " AND serviceType = ?");
+        Object[] args = serviceType == null
+                ? new Object[]{Timestamp.valueOf(lower), Timestamp.valueOf(upper)}
+                : new Object[]{Timestamp.valueOf(lower), Timestamp.valueOf(upper), serviceType.toUpperCase()};
+
+        Map<SketchKey, HyperLogLog> merged = new TreeMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            LocalDateTime bucket = rs.getTimestamp("bucketStart").toLocalDateTime();
+            if (by == null) {
+                bucket = null;
+            } else if (by.equalsIgnoreCase("day")) {
+                bucket = bucket.truncatedTo(ChronoUnit.DAYS);
+            }
+            SketchKey key = new SketchKey(rs.getString("serviceType"), bucket, rs.getString("dimension"));
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("registers"));
+            HyperLogLog existing = merged.putIfAbsent(key, sketch);
+            if (existing != null) {
+                existing.merge(sketch);
+            }
+        }, args);
+
+        Map<List<Object>, DistinctCount> counts = new LinkedHashMap<>();
+        merged.forEach((key, sketch) -> {
+            DistinctCount count = counts.computeIfAbsent(Arrays.asList(key.serviceType(), key.bucketStart()),
+                    k -> new DistinctCount(key.serviceType(),
+                            key.bucketStart() == null ? null : StartDateTimes.format(key.bucketStart())));
+            switch (key.dimension()) {
+                case ANUM -> count.anum = sketch.estimate();
+                case BNUM -> count.bnum = sketch.estimate();
+                case PAIR -> count.pairs = sketch.estimate();
+                default -> { }
+            }
+        });
+        return new ArrayList<>(counts.values());
+    }
+
+    // Rows that existed before the sketch table, up to the id V12 recorded in cdr_backfills. Each chunk
+    // commits together with its progress, as in CDRHistogramService.backfill(), so a restart resumes where
+    // it stopped instead of rescanning cdrs from the first id.
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Map<String, Object> progress = jdbcTemplate.queryForMap(
+                "SELECT doneThroughId, throughId FROM cdr_backfills WHERE name = ?", BACKFILL);
+        long done = ((Number) progress.get("doneThroughId")).longValue();
+        long through = ((Number) progress.get("throughId")).longValue();
+        if (done >= through) {
+            return;
+        }
+        for (long low = done; low < through; low += BACKFILL_CHUNK) {
+            long high = Math.min(low + BACKFILL_CHUNK, through);
+            Map<SketchKey, HyperLogLog> sketches = new TreeMap<>();
+            jdbcTemplate.query("SELECT serviceType, startDateTime, anum, bnum FROM cdr_records WHERE id > ? AND id <= ?",
+                    (RowCallbackHandler) rs -> add(sketches, rs.getString("serviceType"), rs.getString("startDateTime"),
+                            rs.getString("anum"), rs.getString("bnum")),
+                    low, high);
+            transactionTemplate.executeWithoutResult(status -> {
+                sketches.forEach(this::merge);
+                jdbcTemplate.update("UPDATE cdr_backfills SET doneThroughId = ? WHERE name = ?", high, BACKFILL);
+            });
+        }
+        logger.info("Backfilled distinct subscriber sketches for CDRs up to id {}", through);
+    }
+
+    private static void add(Map<SketchKey, HyperLogLog> sketches, String serviceType, String startDateTime,
+                            String anum, String bnum) {
+        long minute = StartDateTimes.epochMinute(startDateTime);
+        if (serviceType == null || anum == null || minute == StartDateTimes.INVALID) {
+            return;
+        }
+        String service = serviceType.toUpperCase();
+        LocalDateTime hour = hourOf(minute);
+        long anumHash = HyperLogLog.hash64(anum);
+        sketches.computeIfAbsent(new SketchKey(service, hour, ANUM), k -> new HyperLogLog()).addHash(anumHash);
+        // DATA records have no B side
+        if (bnum == null || bnum.isEmpty() || bnum.equals("null")) {
+            return;
+        }
+        long bnumHash = HyperLogLog.hash64(bnum);
+        sketches.computeIfAbsent(new SketchKey(service, hour, BNUM), k -> new HyperLogLog()).addHash(bnumHash);
+        sketches.computeIfAbsent(new SketchKey(service, hour, PAIR), k -> new HyperLogLog())
+                .addHash(HyperLogLog.mix64(anumHash * 31 + bnumHash));
+    }
+
+    private static LocalDateTime hourOf(long epochMinute) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMinute, 60L) * 3600, 0, ZoneOffset.UTC);
+    }
+
+    // Read-modify-write under the row lock; keys arrive sorted, so concurrent batches lock rows in the same order.
+    // The row is made to exist first: FOR UPDATE on a missing row only takes a gap lock, which two batches
+    // can both hold and then deadlock (or hit a duplicate key) inserting into.
+    private void merge(SketchKey key, HyperLogLog incoming) {
+        Timestamp bucket = Timestamp.valueOf(key.bucketStart());
+        jdbcTemplate.update("INSERT INTO cdr_hourly_distinct (serviceType, bucketStart, dimension, registers) VALUES (?, ?, ?, ?) "
+                        + "ON DUPLICATE KEY UPDATE registers = registers",
+                key.serviceType(), bucket, key.dimension(), new HyperLogLog().toBytes());
+        byte[] stored = jdbcTemplate.queryForObject(
+                "SELECT registers FROM cdr_hourly_distinct WHERE serviceType = ? AND bucketStart = ? AND dimension = ? FOR UPDATE",
+                byte[].class, key.serviceType(), bucket, key.dimension());
+        HyperLogLog sketch = HyperLogLog.fromBytes(stored);
+        sketch.merge(incoming);
+        jdbcTemplate.update("UPDATE cdr_hourly_distinct SET registers = ? WHERE serviceType = ? AND bucketStart = ? AND dimension = ?",
+                sketch.toBytes(), key.serviceType(), bucket, key.dimension());
+    }
+
+    private record SketchKey(String serviceType, LocalDateTime bucketStart, String dimension) implements Comparable<SketchKey> {
+        private static final Comparator<SketchKey> ORDER = Comparator
+                .comparing(SketchKey::serviceType)
+                .thenComparing(SketchKey::bucketStart, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(SketchKey::dimension);
+
+        @Override
+        public int compareTo(SketchKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    // Estimated distinct A numbers, B numbers and A/B pairs (about 1.6% standard error each)
+    @Getter
+    public static class DistinctCount {
+        private final String serviceType;
+        private final String bucketStart;
+        private long anum;
+        private long bnum;
+        private long pairs;
+
+        DistinctCount(String serviceType, String bucketStart) {
+            this.serviceType = serviceType;
+            this.bucketStart = bucketStart;
+        }
+    }
+}
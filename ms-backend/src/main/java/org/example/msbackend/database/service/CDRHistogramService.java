@@ -0,0 +1,174 @@
+package org.example.msbackend.database.service;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.stats.UsageHistogram;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Usage percentiles per service type and hour from the histograms in cdr_hourly_usage_histograms, so
+// p50/p90/p99 of any range is a merge of its hourly histograms instead of a sort over cdrs.
+@Service
+public class CDRHistogramService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CDRHistogramService.class);
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+    private static final String BACKFILL = "usage_histograms";
+    private static final long BACKFILL_CHUNK = 100_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CDRHistogramService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Called from the ingest transaction, so the histograms move together with the inserted rows
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(List<CDR> cdrs) {
+        Map<BucketKey, UsageHistogram> histograms = new TreeMap<>();
+        cdrs.forEach(cdr -> add(histograms, cdr.getServiceType(), cdr.getStartDateTime(), cdr.getUsage()));
+        histograms.forEach(this::merge);
+    }
+
+    // One row per service type and bucket: `by` is "hour", "day" or null for the whole range.
+    // Bounds are rounded down to whole hours, the histograms' resolution.
+    public List<UsagePercentiles> percentiles(String serviceType, LocalDateTime from, LocalDateTime to, String by) {
+        if (by != null && !by.equalsIgnoreCase("hour") && !by.equalsIgnoreCase("day")) {
+            throw new IllegalArgumentException("❌ by must be hour or day");
+        }
+        LocalDateTime lower = from == null ? MIN_TIME : from.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime upper = to == null ? MAX_TIME : to;
+        String sql = "SELECT serviceType, bucketStart, histogram FROM cdr_hourly_usage_histograms " +
+                "WHERE bucketStart >= ? AND bucketStart < ?" + (serviceType == null ? "" : " AND serviceType = ?");
+        Object[] args = serviceType == null
+                ? new Object[]{Timestamp.valueOf(lower), Timestamp.valueOf(upper)}
+                : new Object[]{Timestamp.valueOf(lower), Timestamp.valueOf(upper), serviceType.toUpperCase()};
+
+        Map<BucketKey, UsageHistogram> merged = new TreeMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            LocalDateTime bucket = rs.getTimestamp("bucketStart").toLocalDateTime();
+            if (by == null) {
+                bucket = null;
+            } else if (by.equalsIgnoreCase("day")) {
+                bucket = bucket.truncatedTo(ChronoUnit.DAYS);
+            }
+            UsageHistogram histogram = UsageHistogram.fromBytes(rs.getBytes("histogram"));
+            UsageHistogram existing = merged.putIfAbsent(new BucketKey(rs.getString("serviceType"), bucket), histogram);
+            if (existing != null) {
+                existing.merge(histogram);
+            }
+        }, args);
+
+        List<UsagePercentiles> result = new ArrayList<>(merged.size());
+        merged.forEach((key, histogram) -> result.add(new UsagePercentiles(
+                key.serviceType(),
+                key.bucketStart() == null ? null : StartDateTimes.format(key.bucketStart()),
+                histogram.getTotalCount(),
+                histogram.getMin(),
+                histogram.valueAtPercentile(50),
+                histogram.valueAtPercentile(90),
+                histogram.valueAtPercentile(99),
+                histogram.getMax())));
+        return result;
+    }
+
+    // The stored histogram of every hour of one service type in [from, to)
+    public Map<LocalDateTime, UsageHistogram> hourly(String serviceType, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = from == null ? MIN_TIME : from.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime upper = to == null ? MAX_TIME : to;
+        Map<LocalDateTime, UsageHistogram> histograms = new HashMap<>();
+        jdbcTemplate.query("SELECT bucketStart, histogram FROM cdr_hourly_usage_histograms " +
+                        "WHERE serviceType = ? AND bucketStart >= ? AND bucketStart < ?",
+                (RowCallbackHandler) rs -> histograms.put(rs.getTimestamp("bucketStart").toLocalDateTime(),
+                        UsageHistogram.fromBytes(rs.getBytes("histogram"))),
+                serviceType.toUpperCase(), Timestamp.valueOf(lower), Timestamp.valueOf(upper));
+        return histograms;
+    }
+
+    // Rows that existed before the histogram table, up to the id V7 recorded. Each chunk commits together
+    // with its progress, so a restart resumes where it stopped without counting a row twice.
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Map<String, Object> progress = jdbcTemplate.queryForMap(
+                "SELECT doneThroughId, throughId FROM cdr_backfills WHERE name = ?", BACKFILL);
+        long done = ((Number) progress.get("doneThroughId")).longValue();
+        long through = ((Number) progress.get("throughId")).longValue();
+        if (done >= through) {
+            return;
+        }
+        for (long low = done; low < through; low += BACKFILL_CHUNK) {
+            long high = Math.min(low + BACKFILL_CHUNK, through);
+            Map<BucketKey, UsageHistogram> histograms = new TreeMap<>();
+            jdbcTemplate.query("SELECT serviceType, startDateTime, `usage` FROM cdr_records WHERE id > ? AND id <= ?",
+                    (RowCallbackHandler) rs -> add(histograms, rs.getString("serviceType"),
+                            rs.getString("startDateTime"), rs.getDouble("usage")),
+                    low, high);
+            transactionTemplate.executeWithoutResult(status -> {
+                histograms.forEach(this::merge);
+                jdbcTemplate.update("UPDATE cdr_backfills SET doneThroughId = ? WHERE name = ?", high, BACKFILL);
+            });
+        }
+        logger.info("Backfilled usage histograms for CDRs up to id {}", through);
+    }
+
+    private static void add(Map<BucketKey, UsageHistogram> histograms, String serviceType, String startDateTime, double usage) {
+        long minute = StartDateTimes.epochMinute(startDateTime);
+        if (serviceType == null || minute == StartDateTimes.INVALID) {
+            return;
+        }
+        LocalDateTime hour = LocalDateTime.ofEpochSecond(Math.floorDiv(minute, 60L) * 3600, 0, ZoneOffset.UTC);
+        histograms.computeIfAbsent(new BucketKey(serviceType.toUpperCase(), hour), k -> new UsageHistogram()).record(usage);
+    }
+
+    // Read-modify-write under the row lock; keys arrive sorted, so concurrent batches lock rows in the same order.
+    // An empty row is inserted first, as in CDRDistinctService.merge(), so FOR UPDATE always locks a row.
+    private void merge(BucketKey key, UsageHistogram incoming) {
+        Timestamp bucket = Timestamp.valueOf(key.bucketStart());
+        jdbcTemplate.update("INSERT INTO cdr_hourly_usage_histograms (serviceType, bucketStart, histogram) VALUES (?, ?, ?) "
+                        + "ON DUPLICATE KEY UPDATE histogram = histogram",
+                key.serviceType(), bucket, new UsageHistogram().toBytes());
+        byte[] stored = jdbcTemplate.queryForObject(
+                "SELECT histogram FROM cdr_hourly_usage_histograms WHERE serviceType = ? AND bucketStart = ? FOR UPDATE",
+                byte[].class, key.serviceType(), bucket);
+        UsageHistogram histogram = UsageHistogram.fromBytes(stored);
+        histogram.merge(incoming);
+        jdbcTemplate.update("UPDATE cdr_hourly_usage_histograms SET histogram = ? WHERE serviceType = ? AND bucketStart = ?",
+                histogram.toBytes(), key.serviceType(), bucket);
+    }
+
+    private record BucketKey(String serviceType, LocalDateTime bucketStart) implements Comparable<BucketKey> {
+        private static final Comparator<BucketKey> ORDER = Comparator
+                .comparing(BucketKey::serviceType)
+                .thenComparing(BucketKey::bucketStart, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        @Override
+        public int compareTo(BucketKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    // Percentiles are the top of their histogram bucket, within about 1.6% of the true value; min and max are exact
+    public record UsagePercentiles(String serviceType, String bucketStart, long count,
+                                   double min, double p50, double p90, double p99, double max) {
+    }
+}
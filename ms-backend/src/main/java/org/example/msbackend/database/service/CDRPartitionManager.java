@@ -0,0 +1,213 @@
+package org.example.msbackend.database.service;
+
+import org.example.msbackend.archive.CDRArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Keeps cdrs range-partitioned by day on startTime. A partition is named after its exclusive upper
+// bound: p20261020 holds rows before 2026-10-20 00:00 (and from the previous bound on); pmax catches
+// anything beyond the last day created.
+@Component
+public class CDRPartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(CDRPartitionManager.class);
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+    private static final String MAX_PARTITION = "pmax";
+    private static final String SHADOW_TABLE = "cdrs_partitioned";
+    private static final long COPY_CHUNK = 10_000;
+    // how long the table swap may wait for readers of cdrs while it holds ingest off
+    private static final int SWAP_LOCK_WAIT_SECONDS = 5;
+
+    @Value("${cdr.partitions.days-ahead:7}")
+    private int daysAhead;
+
+    // daily partitions created when the table is first partitioned; older rows share the first partition
+    @Value("${cdr.partitions.initial-days:60}")
+    private int initialDays;
+
+    // 0 keeps every partition; with archiving on (cdr.archive.after-days) that age applies instead
+    @Value("${cdr.partitions.retention-days:0}")
+    private int retentionDays;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CDRArchive archive;
+
+    @Autowired
+    private CDRRollupService rollupService;
+
+    @Scheduled(cron = "${cdr.partitions.cron:0 5 0 * * *}")
+    public synchronized void maintain() {
+        LocalDate today = LocalDate.now();
+        List<LocalDate> bounds = currentBounds();
+        if (bounds.isEmpty()) {
+            if (jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM cdrs WHERE startTime IS NULL)", Boolean.class)) {
+                logger.warn("cdrs still has rows without startTime; partitioning waits for the backfill");
+                return;
+            }
+            if (!partitionTable(today)) {
+                return;
+            }
+            bounds = currentBounds();
+        }
+
+        LocalDate lastBound = bounds.get(bounds.size() - 1);
+        LocalDate wantedBound = today.plusDays(daysAhead + 1L);
+        if (lastBound.isBefore(wantedBound)) {
+            List<LocalDate> added = days(lastBound.plusDays(1), wantedBound);
+            // pmax only holds rows dated after the last created day, so splitting it is cheap
+            jdbcTemplate.execute("ALTER TABLE cdrs REORGANIZE PARTITION " + MAX_PARTITION + " INTO ("
+                    + definitions(added) + ", " + maxDefinition() + ")");
+            logger.info("Created cdrs partitions up to {}", wantedBound);
+        }
+
+        int keepDays = archive.isEnabled() ? archive.afterDays() : retentionDays;
+        if (keepDays > 0) {
+            LocalDate cutoff = today.minusDays(keepDays);
+            List<String> expired = bounds.stream()
+                    .filter(bound -> !bound.isAfter(cutoff))
+                    .map(bound -> bound.format(NAME_FORMAT))
+                    .collect(Collectors.toList());
+            if (archive.isEnabled()) {
+                archive(expired);
+            } else if (!expired.isEmpty()) {
+                dropPartitions(expired);
+                logger.info("Dropped cdrs partitions {} (older than {})", expired, cutoff);
+            }
+        }
+    }
+
+    // Oldest first, so the archive never has a gap; stops at the first partition that has to wait
+    private void archive(List<String> expired) {
+        for (String partition : expired) {
+            try {
+                if (!archive.archivePartition(partition)) {
+                    return;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("❌ Could not archive cdrs partition " + partition, e);
+            }
+        }
+    }
+
+    private void dropPartitions(List<String> partitions) {
+        jdbcTemplate.execute("ALTER TABLE cdrs DROP PARTITION " + String.join(", ", partitions));
+    }
+
+    // One-off conversion. The partition column has to be part of every unique key, so the primary key
+    // becomes (id, startTime). ALTER TABLE ... PARTITION BY would copy cdrs while blocking ingest, so like
+    // CDRRollupService.rebuild() the rows are copied into a partitioned shadow table in id chunks, and the
+    // tables are swapped once it has caught up. Rows are never updated after insert, so copying each id
+    // once is enough, and a restart resumes from the shadow's highest id. False if the swap has to wait.
+    private boolean partitionTable(LocalDate today) {
+        List<LocalDate> bounds = days(today.minusDays(initialDays - 1L), today.plusDays(daysAhead + 1L));
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + SHADOW_TABLE + " LIKE cdrs");
+        if (!isPartitioned(SHADOW_TABLE)) {
+            jdbcTemplate.execute("ALTER TABLE " + SHADOW_TABLE + " " +
+                    "MODIFY startTime DATETIME NOT NULL, " +
+                    "DROP PRIMARY KEY, ADD PRIMARY KEY (id, startTime) " +
+                    "PARTITION BY RANGE COLUMNS(startTime) (" + definitions(bounds) + ", " + maxDefinition() + ")");
+        }
+
+        long copied = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + SHADOW_TABLE, Long.class);
+        long target = rollupService.snapshotCommittedId();
+        // catch up outside the lock until what ingest added meanwhile fits in one chunk
+        while (target - copied > COPY_CHUNK) {
+            while (copied < target) {
+                long high = Math.min(copied + COPY_CHUNK, target);
+                copyIdRange(copied, high);
+                copied = high;
+            }
+            target = rollupService.snapshotCommittedId();
+        }
+
+        long caughtUp = copied;
+        boolean swapped = rollupService.atCommittedSnapshot(snapshotId -> {
+            copyIdRange(caughtUp, snapshotId);
+            return swap();
+        });
+        if (!swapped) {
+            logger.warn("cdrs is busy; the switch to the partitioned table is retried on the next run");
+            return false;
+        }
+        jdbcTemplate.execute("DROP TABLE cdrs_unpartitioned");
+        logger.info("Partitioned cdrs by day from {} to {}", bounds.get(0), bounds.get(bounds.size() - 1));
+        return true;
+    }
+
+    private void copyIdRange(long lowExclusive, long highInclusive) {
+        jdbcTemplate.update("INSERT INTO " + SHADOW_TABLE + " SELECT * FROM cdrs WHERE id > ? AND id <= ?",
+                lowExclusive, highInclusive);
+    }
+
+    // Runs with ingest held off, so the rename must not queue behind a long read of cdrs (a history scan)
+    private boolean swap() {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET SESSION lock_wait_timeout = " + SWAP_LOCK_WAIT_SECONDS);
+                try {
+                    statement.execute("RENAME TABLE cdrs TO cdrs_unpartitioned, " + SHADOW_TABLE + " TO cdrs");
+                    return true;
+                } catch (SQLException e) {
+                    logger.debug("cdrs rename timed out", e);
+                    return false;
+                } finally {
+                    statement.execute("SET SESSION lock_wait_timeout = DEFAULT");
+                }
+            }
+        });
+    }
+
+    private boolean isPartitioned(String table) {
+        return jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL)", Boolean.class, table);
+    }
+
+    // Upper bounds of the daily partitions in order, without pmax; empty while cdrs is unpartitioned
+    public List<LocalDate> currentBounds() {
+        return jdbcTemplate.queryForList(
+                        "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'cdrs' AND PARTITION_NAME IS NOT NULL " +
+                                "ORDER BY PARTITION_ORDINAL_POSITION", String.class)
+                .stream()
+                .filter(name -> !name.equals(MAX_PARTITION))
+                .map(name -> LocalDate.parse(name, NAME_FORMAT))
+                .collect(Collectors.toList());
+    }
+
+    private static List<LocalDate> days(LocalDate fromInclusive, LocalDate toInclusive) {
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = fromInclusive; !day.isAfter(toInclusive); day = day.plusDays(1)) {
+            days.add(day);
+        }
+        return days;
+    }
+
+    private static String definitions(List<LocalDate> bounds) {
+        return bounds.stream()
+                .map(bound -> "PARTITION " + bound.format(NAME_FORMAT) + " VALUES LESS THAN ('" + bound + " 00:00:00')")
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String maxDefinition() {
+        return "PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE)";
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.msbackend.database.service;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Result cache in front of the CDR read endpoints. Every dashboard polls the same few queries, so
+// between two ingest batches they share one database read: entries are dropped when a batch commits,
+// when they are older than the TTL, or (least recently used first) when the cache is over its entry count
+// or its byte budget. A result bigger than the whole budget is returned without being kept.
+// Concurrent misses on one key wait for a single load instead of all querying MySQL.
+@Component
+public class CDRQueryCache {
+
+    // rough heap sizes for the byte budget, as in SubscriberProfiles
+    private static final long OBJECT_BYTES = 64;
+    private static final long CDR_BYTES = 160;
+    private static final long STRING_BYTES = 40;
+    private static final long ELEMENT_BYTES = 8;
+    private static final long MAP_ENTRY_BYTES = 32;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // bumped on every ingest; an entry loaded under an older generation is never served
+    private final AtomicLong generation = new AtomicLong();
+    // keeps ETags from one run from matching the same generation number after a restart
+    private final String instanceTag = Long.toHexString(System.currentTimeMillis());
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @Value("${cdr.cache.max-entries:256}")
+    private int maxEntries;
+
+    @Value("${cdr.cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${cdr.cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        long currentGeneration = generation.get();
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isFresh(currentGeneration, now, ttlSeconds)) {
+            hits.increment();
+            entry.lastAccess = now;
+            return (T) await(entry);
+        }
+
+        Entry fresh = new Entry(currentGeneration, now);
+        Entry winner = entries.compute(key, (k, existing) ->
+                existing != null && existing.isFresh(currentGeneration, now, ttlSeconds) ? existing : fresh);
+        if (winner != fresh) {
+            hits.increment();
+            return (T) await(winner);
+        }
+
+        misses.increment();
+        T value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, fresh);
+            fresh.value.completeExceptionally(e);
+            throw e;
+        }
+        fresh.bytes = estimateBytes(value);
+        fresh.value.complete(value);
+        if (fresh.bytes > maxBytes) {
+            entries.remove(key, fresh);
+        } else {
+            evictIfFull();
+        }
+        return value;
+    }
+
+    // Callers that waited on another thread's load get its exception as thrown (an IllegalArgumentException
+    // still answers 400), not wrapped in a CompletionException
+    private static Object await(Entry entry) {
+        try {
+            return entry.value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        invalidations.increment();
+    }
+
+    // Changes whenever a batch commits or the rollups are rebuilt. Read it before computing a response,
+    // so a response is never tagged newer than the data it was built from.
+    public String etag() {
+        return "\"" + instanceTag + "-" + generation.get() + "\"";
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("bytes", cachedBytes());
+        stats.put("maxBytes", maxBytes);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private void evictIfFull() {
+        while (entries.size() > maxEntries || cachedBytes() > maxBytes) {
+            Map.Entry<String, Entry> oldest = null;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (oldest == null || candidate.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = candidate;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            if (entries.remove(oldest.getKey(), oldest.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    // entries still loading count as 0
+    private long cachedBytes() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            bytes += entry.bytes;
+        }
+        return bytes;
+    }
+
+    // The endpoints cache lists and maps of CDRs, strings, numbers and small records
+    private static long estimateBytes(Object value) {
+        if (value instanceof CDR cdr) {
+            return CDR_BYTES + 2L * (length(cdr.getAnum()) + length(cdr.getBnum())
+                    + length(cdr.getServiceType()) + length(cdr.getStartDateTime()));
+        }
+        if (value instanceof CharSequence text) {
+            return STRING_BYTES + 2L * text.length();
+        }
+        if (value instanceof Collection<?> collection) {
+            long bytes = OBJECT_BYTES;
+            for (Object element : collection) {
+                bytes += ELEMENT_BYTES + estimateBytes(element);
+            }
+            return bytes;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long bytes = OBJECT_BYTES;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes += MAP_ENTRY_BYTES + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        return value == null ? 0 : OBJECT_BYTES;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    private static class Entry {
+        final CompletableFuture<Object> value = new CompletableFuture<>();
+        final long generation;
+        final long loadedAt;
+        volatile long lastAccess;
+        volatile long bytes;
+
+        Entry(long generation, long loadedAt) {
+            this.generation = generation;
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+
+        boolean isFresh(long currentGeneration, long now, long ttlSeconds) {
+            return generation == currentGeneration
+                    && now - loadedAt < ttlSeconds * 1_000_000_000L
+                    && !value.isCompletedExceptionally();
+        }
+    }
+}
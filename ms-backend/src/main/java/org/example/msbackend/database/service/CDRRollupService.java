@@ -0,0 +1,299 @@
+package org.example.msbackend.database.service;
+
+import org.example.msbackend.archive.CDRArchive;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.database.entity.CDRHourlyRollup;
+import org.example.msbackend.database.repository.CDRHourlyRollupRepository;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Service
+public class CDRRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CDRRollupService.class);
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+    private static final String SHADOW_TABLE = "cdr_hourly_rollups_rebuild";
+    private static final long REBUILD_CHUNK = 100_000;
+
+    // Ingest transactions hold the read side until they complete; a rebuild takes the write side only
+    // for its id snapshot and the final table swap, so no batch can fall between the two tables.
+    private final ReentrantReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    // For committedWatermark(): the ingest transactions still open, and the highest id any of them inserted
+    private final Set<OpenIngest> openIngests = ConcurrentHashMap.newKeySet();
+    private final AtomicLong highestInserted = new AtomicLong(-1);
+
+    @Autowired
+    private CDRHourlyRollupRepository rollupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CDRQueryCache queryCache;
+
+    // lazy: CDRArchive takes its snapshots here
+    @Lazy
+    @Autowired
+    private CDRArchive archive;
+
+    // First step of the ingest transaction, before any row is inserted: ids are allocated inside the lock
+    // that snapshotCommittedId() waits on, so no row can commit below a snapshot id after it was taken
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void beginIngest() {
+        holdRebuildLockUntilCompletion();
+    }
+
+    // Called from the ingest transaction once its rows are inserted, so committedWatermark() can move past
+    // the ids below them before the transaction completes
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void inserted(List<CDR> cdrs) {
+        OpenIngest ingest = (OpenIngest) TransactionSynchronizationManager.getResource(openIngests);
+        if (ingest == null || cdrs.isEmpty()) {
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (CDR cdr : cdrs) {
+            min = Math.min(min, cdr.getId());
+            max = Math.max(max, cdr.getId());
+        }
+        ingest.below = min - 1;
+        highestInserted.accumulateAndGet(max, Math::max);
+    }
+
+    // Called from the ingest transaction, after beginIngest(), so the rollup moves together with the inserted rows.
+    // Rows inserted before the lock was taken could fall between a rebuild's snapshot and its swap.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(List<CDR> cdrs) {
+        if (rebuildLock.getReadHoldCount() == 0) {
+            throw new IllegalStateException("❌ beginIngest() must run before the ingest transaction inserts rows");
+        }
+        Map<BucketKey, Bucket> buckets = new HashMap<>();
+        for (CDR cdr : cdrs) {
+            LocalDateTime start;
+            try {
+                start = StartDateTimes.parseBound(cdr.getStartDateTime());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Skipping rollup for CDR {} with unreadable startDateTime '{}'", cdr.getId(), cdr.getStartDateTime());
+                continue;
+            }
+            BucketKey key = new BucketKey(cdr.getServiceType().toUpperCase(), start.truncatedTo(ChronoUnit.HOURS));
+            buckets.computeIfAbsent(key, k -> new Bucket()).add(cdr.getUsage());
+        }
+
+        buckets.forEach((key, bucket) -> rollupRepository.upsert(
+                key.serviceType(), key.hour(), bucket.count, bucket.sum, bucket.min, bucket.max));
+    }
+
+    // Bounds are rounded down to whole hours, the rollup's resolution
+    public Map<String, Long> countsByServiceType(LocalDateTime from, LocalDateTime to) {
+        Map<String, Long> counts = new HashMap<>();
+        for (CDRHourlyRollup rollup : hourly(null, from, to)) {
+            counts.merge(rollup.getServiceType().toLowerCase(), rollup.getCdrCount(), Long::sum);
+        }
+        return counts;
+    }
+
+    // Both bounds are rounded down to whole hours: [10:30, 12:30) reads the 10:00 and 11:00 buckets
+    public List<CDRHourlyRollup> hourly(String serviceType, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = from == null ? MIN_TIME : from.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime upper = to == null ? MAX_TIME : to.truncatedTo(ChronoUnit.HOURS);
+        if (serviceType == null) {
+            return rollupRepository.findByBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(lower, upper);
+        }
+        return rollupRepository.findByServiceTypeAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(
+                serviceType.toUpperCase(), lower, upper);
+    }
+
+    // Highest committed cdrs id at a moment with no ingest transaction in flight, so every row at or
+    // below it is visible to a following read and every later batch gets a higher id.
+    public long snapshotCommittedId() {
+        return atCommittedSnapshot(id -> id);
+    }
+
+    // Like snapshotCommittedId() (every id at or below it is committed or rolled back) without taking the
+    // lock, so it may lag behind: it stops below the rows of any ingest transaction still open. One that has
+    // not inserted yet will get ids above everything inserted before it began. Unlike a snapshot, a batch
+    // above the id may already have delivered its event.
+    public long committedWatermark() {
+        long watermark = highestInserted.get();
+        if (watermark < 0) {
+            watermark = highestInserted.accumulateAndGet(snapshotCommittedId(), Math::max);
+        }
+        for (OpenIngest ingest : openIngests) {
+            watermark = Math.min(watermark, ingest.below);
+        }
+        return watermark;
+    }
+
+    // Runs the action with the snapshot id while no ingest can start or finish. The lock is released in
+    // afterCompletion, after every after-commit listener, so those have all seen every batch up to the id.
+    public <T> T atCommittedSnapshot(LongFunction<T> action) {
+        rebuildLock.writeLock().lock();
+        try {
+            return action.apply(jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM cdrs", Long.class));
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    @Async
+    public void rebuildAsync() {
+        rebuild();
+    }
+
+    // Recomputes the rollup from the archive files and cdrs into a shadow table in id chunks while ingest
+    // keeps running, then catches up the rows ingested meanwhile and swaps the tables. No partition is
+    // archived meanwhile, so every row is counted once, from one side or the other.
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new IllegalStateException("❌ A rollup rebuild is already running.");
+        }
+        try {
+            archive.consistently(() -> {
+                long snapshotId = snapshotCommittedId();
+
+                logger.info("Rebuilding hourly rollups from the archive and cdrs up to id {}", snapshotId);
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + SHADOW_TABLE);
+                jdbcTemplate.execute("CREATE TABLE " + SHADOW_TABLE + " LIKE cdr_hourly_rollups");
+                addArchive(SHADOW_TABLE);
+                for (long low = 0; low < snapshotId; low += REBUILD_CHUNK) {
+                    addIdRange(SHADOW_TABLE, low, Math.min(low + REBUILD_CHUNK, snapshotId));
+                }
+
+                rebuildLock.writeLock().lock();
+                try {
+                    addIdRange(SHADOW_TABLE, snapshotId, Long.MAX_VALUE);
+                    jdbcTemplate.execute("RENAME TABLE cdr_hourly_rollups TO cdr_hourly_rollups_old, "
+                            + SHADOW_TABLE + " TO cdr_hourly_rollups");
+                    jdbcTemplate.execute("DROP TABLE cdr_hourly_rollups_old");
+                } finally {
+                    rebuildLock.writeLock().unlock();
+                }
+                return null;
+            });
+            queryCache.invalidateAll();
+            logger.info("Hourly rollups rebuilt");
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    // Backfill for databases that already held CDRs before the rollup table existed
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (rollupRepository.count() == 0 && (archive.covers(null, null)
+                || jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM cdrs)", Boolean.class))) {
+            rebuild();
+        }
+    }
+
+    // Archived rows aggregated in memory (one bucket per service type and hour), upserted like addIdRange()
+    private void addArchive(String table) {
+        Map<BucketKey, Bucket> buckets = new HashMap<>();
+        archive.scan(null, null, null, cdr -> {
+            long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+            if (minute != StartDateTimes.INVALID) {
+                LocalDateTime hour = LocalDateTime.ofEpochSecond(Math.floorDiv(minute, 60L) * 3600, 0, ZoneOffset.UTC);
+                buckets.computeIfAbsent(new BucketKey(cdr.getServiceType().toUpperCase(), hour), k -> new Bucket()).add(cdr.getUsage());
+            }
+        });
+        buckets.forEach((key, bucket) -> jdbcTemplate.update(
+                "INSERT INTO " + table + " (serviceType, bucketStart, cdrCount, usageSum, usageMin, usageMax) " +
+                        "VALUES (?, ?, ?, ?, ?, ?) AS incoming " +
+                        "ON DUPLICATE KEY UPDATE " +
+                        "cdrCount = " + table + ".cdrCount + incoming.cdrCount, " +
+                        "usageSum = " + table + ".usageSum + incoming.usageSum, " +
+                        "usageMin = LEAST(" + table + ".usageMin, incoming.usageMin), " +
+                        "usageMax = GREATEST(" + table + ".usageMax, incoming.usageMax)",
+                key.serviceType(), Timestamp.valueOf(key.hour()), bucket.count, bucket.sum, bucket.min, bucket.max));
+    }
+
+    private void addIdRange(String table, long lowExclusive, long highInclusive) {
+        jdbcTemplate.update("INSERT INTO " + table + " (serviceType, bucketStart, cdrCount, usageSum, usageMin, usageMax) " +
+                "SELECT * FROM (" +
+                "  SELECT UPPER(serviceType) AS st, " +
+                "         DATE_FORMAT(STR_TO_DATE(startDateTime, '%Y-%m-%d %H:%i'), '%Y-%m-%d %H:00:00') AS bs, " +
+                "         COUNT(*) AS c, SUM(`usage`) AS s, MIN(`usage`) AS mn, MAX(`usage`) AS mx " +
+                "  FROM cdr_records WHERE id > ? AND id <= ? GROUP BY st, bs HAVING bs IS NOT NULL" +
+                ") AS incoming " +
+                "ON DUPLICATE KEY UPDATE " +
+                "cdrCount = " + table + ".cdrCount + incoming.c, " +
+                "usageSum = " + table + ".usageSum + incoming.s, " +
+                "usageMin = LEAST(" + table + ".usageMin, incoming.mn), " +
+                "usageMax = GREATEST(" + table + ".usageMax, incoming.mx)",
+                lowExclusive, highInclusive);
+    }
+
+    private void holdRebuildLockUntilCompletion() {
+        rebuildLock.readLock().lock();
+        // ids inserted from here on are above everything inserted so far
+        OpenIngest ingest = new OpenIngest(highestInserted.get());
+        openIngests.add(ingest);
+        TransactionSynchronizationManager.bindResource(openIngests, ingest);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(openIngests);
+                openIngests.remove(ingest);
+                rebuildLock.readLock().unlock();
+            }
+        });
+    }
+
+    // The highest id an open ingest transaction can't hold: its lowest id minus one once it has inserted
+    private static final class OpenIngest {
+        volatile long below;
+
+        OpenIngest(long below) {
+            this.below = below;
+        }
+    }
+
+    private record BucketKey(String serviceType, LocalDateTime hour) {
+    }
+
+    private static class Bucket {
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add(double usage) {
+            count++;
+            sum += usage;
+            min = Math.min(min, usage);
+            max = Math.max(max, usage);
+        }
+    }
+}
@@ -1,28 +1,188 @@
 package org.example.msbackend.database.service;
 
+import org.example.msbackend.archive.CDRArchive;
 import org.example.msbackend.database.entity.CDR;
 import org.example.msbackend.database.repository.CDRRepository;
+import org.example.msbackend.database.repository.CDRSpecifications;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.RecentCDRBuffer;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 @Service
 public class CDRService {
 
+    private static final Logger logger = LoggerFactory.getLogger(CDRService.class);
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_CHANGES = 5000;
+    private static final int BATCH_SIZE = 100;
+    private static final int MAX_RECENT = 1000;
+
     @Autowired
     private CDRRepository cdrRepository;
 
-    @Transactional
+    @Autowired
+    private CDRRollupService rollupService;
+
+    @Autowired
+    private CDRDistinctService distinctService;
+
+    @Autowired
+    private CDRHistogramService histogramService;
+
+    @Autowired
+    private SubscriberDictionary subscriberDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RecentCDRBuffer recentBuffer;
+
+    @Autowired
+    private CDRArchive archive;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CDRService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     public CDR saveCDR(CDR cdr) {
-        return cdrRepository.save(cdr);
+        cdr.fillStartTime();
+        if (cdr.getStartTime() == null) {
+            throw new IllegalArgumentException("❌ startDateTime must be yyyy-MM-dd HH:mm, got " + cdr.getStartDateTime());
+        }
+        return ingestBatch(List.of(cdr)).get(0);
+    }
+
+    // Single write path for new CDRs: rows, their hourly rollups, distinct sketches and usage histograms commit together,
+    // and in-memory views are told about the batch once it has committed. Returns the stored CDRs: a record
+    // whose startDateTime can't be read has no partition to go to, so it is logged and left out rather
+    // than failing the batch.
+    // The batch's dimension keys are resolved first, in the dictionary's own short transaction: the ingest
+    // transaction starts after it, so an ingest never holds two pool connections at once.
+    public List<CDR> ingestBatch(List<CDR> batch) {
+        List<CDR> cdrs = new ArrayList<>(batch.size());
+        for (CDR cdr : batch) {
+            cdr.fillStartTime();
+            if (cdr.getStartTime() == null) {
+                logger.warn("Rejecting CDR {} -> {} with unreadable startDateTime '{}'", cdr.getAnum(), cdr.getBnum(), cdr.getStartDateTime());
+            } else {
+                cdrs.add(cdr);
+            }
+        }
+        if (cdrs.isEmpty()) {
+            return cdrs;
+        }
+        SubscriberDictionary.Encoded keys = subscriberDictionary.encode(cdrs);
+        return transactionTemplate.execute(status -> {
+            rollupService.beginIngest();
+            saveAllCDRs(cdrs, keys);
+            rollupService.inserted(cdrs);
+            rollupService.apply(cdrs);
+            distinctService.apply(cdrs);
+            histogramService.apply(cdrs);
+            eventPublisher.publishEvent(new CDRBatchIngestedEvent(List.copyOf(cdrs)));
+            return cdrs;
+        });
     }
 
     public  List<CDR> getAllCDRs() {
         return cdrRepository.findAll();
     }
 
+    // A date range also reads through to the archived partitions it reaches
+    public List<CDR> getFilteredCDRs(String serviceType, String sort, String from, String to, Integer limit) {
+        LocalDateTime fromTime = StartDateTimes.parseBound(from);
+        LocalDateTime toTime = StartDateTimes.parseBound(to);
+        Specification<CDR> spec = Specification
+                .where(CDRSpecifications.hasServiceType(serviceType))
+                .and(CDRSpecifications.startsBetween(fromTime, toTime));
+        Sort order = CDRSpecifications.sortBy(sort);
+
+        List<CDR> hot = limit == null
+                ? cdrRepository.findAll(spec, order)
+                : cdrRepository.findAll(spec, PageRequest.of(0, Math.max(1, limit), order)).getContent();
+        if ((from == null && to == null) || !archive.covers(fromTime, toTime)) {
+            return hot;
+        }
+        return withArchived(hot, serviceType, fromTime, toTime, CDRSpecifications.comparatorBy(sort), limit);
+    }
+
+    // Newest first by id, below the `before` id if given. Served from the in-memory ring; only what lies
+    // beyond the ring's reach is read from MySQL, below the smallest id the ring returned.
+    public List<CDR> getRecentCDRs(String serviceType, int n, Long before) {
+        if (n < 1 || n > MAX_RECENT) {
+            throw new IllegalArgumentException("❌ n must be between 1 and " + MAX_RECENT);
+        }
+        List<CDR> recent = new ArrayList<>();
+        if (recentBuffer.isWarm()) {
+            recent.addAll(recentBuffer.latest(serviceType, n, before));
+            if (recent.size() == n || recentBuffer.isComplete(serviceType)) {
+                return recent;
+            }
+        }
+        Long below = recent.isEmpty() ? before : recent.get(recent.size() - 1).getId();
+        Specification<CDR> older = Specification
+                .where(CDRSpecifications.hasServiceType(serviceType))
+                .and(CDRSpecifications.idBelow(below));
+        recent.addAll(cdrRepository.findAll(older, PageRequest.of(0, n - recent.size(), Sort.by(Sort.Order.desc("id")))).getContent());
+        return recent;
+    }
+
+    // from inclusive, to exclusive; only the partitions of the days in range are read, and the archive
+    // files only if the range reaches back past the partitions still in MySQL
+    public List<CDR> getCDRsBetween(LocalDateTime from, LocalDateTime to) {
+        List<CDR> hot = cdrRepository.findAll(CDRSpecifications.startsBetween(from, to), Sort.by("startTime", "id"));
+        if (!archive.covers(from, to)) {
+            return hot;
+        }
+        return withArchived(hot, null, from, to,
+                Comparator.comparing(CDR::getStartTime).thenComparing(CDR::getId), null);
+    }
+
+    // Archived rows never overlap the ones still in cdrs: a partition is dropped as its file is written
+    private List<CDR> withArchived(List<CDR> hot, String serviceType, LocalDateTime from, LocalDateTime to,
+                                   Comparator<CDR> order, Integer limit) {
+        List<CDR> merged = new ArrayList<>(archive.read(serviceType, from, to));
+        merged.addAll(hot);
+        merged.sort(order);
+        return limit == null ? merged : merged.subList(0, Math.min(merged.size(), Math.max(1, limit)));
+    }
+
+    // CDRs with since < id <= through, oldest first. `through` must be a committed snapshot id
+    // (CDRRollupService.snapshotCommittedId) so a row still being inserted below it can't be skipped.
+    public List<CDR> getChangesSince(long since, long through, int limit) {
+        if (limit < 1 || limit > MAX_CHANGES) {
+            throw new IllegalArgumentException("❌ limit must be between 1 and " + MAX_CHANGES);
+        }
+        return cdrRepository.findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(since, through, PageRequest.of(0, limit));
+    }
+
     public List<CDR> getCDRsByANUM(String name) {
         return cdrRepository.findByAnum(name);
     }
@@ -30,23 +190,48 @@ public class CDRService {
         return cdrRepository.findByBnum(name);
     }
     public List<CDR> findByANUMOrBNUM(String num) {
-        return cdrRepository.findByAnum(num).isEmpty() ?
-                cdrRepository.findByBnum(num) :
-                cdrRepository.findByAnum(num);
+        return cdrRepository.findByAnumOrBnum(num);
     }
 
-    @Transactional
-    public void saveAllCDRs(List<CDR> cdrList) {
-        final int BATCH_SIZE = 100;
-        int size = cdrList.size();
-        for (int i = 0; i < size; i += BATCH_SIZE) {
-            int end = Math.min(size, i + BATCH_SIZE);
-            List<CDR> batch = cdrList.subList(i, end);
-            cdrRepository.saveAll(batch);
-            cdrRepository.flush();
+    // Newest first; page is zero-based
+    public List<CDR> getSubscriberHistory(String num, int page, int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("❌ page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
         }
+        int offset = Math.multiplyExact(page, size);
+        return cdrRepository.findSubscriberHistory(num, Math.addExact(offset, size), size, offset);
     }
 
-
+    // Rows go straight into the encoded cdrs table (the CDR entity reads the cdr_records view); each CDR gets
+    // its generated id and startTime back, as it did from JPA
+    private void saveAllCDRs(List<CDR> cdrList, SubscriberDictionary.Encoded keys) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO cdrs (anumId, bnumId, serviceTypeId, `usage`, startDateTime, startTime) VALUES (?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (int from = 0; from < cdrList.size(); from += BATCH_SIZE) {
+                    int to = Math.min(cdrList.size(), from + BATCH_SIZE);
+                    for (int i = from; i < to; i++) {
+                        CDR cdr = cdrList.get(i);
+                        cdr.fillStartTime();
+                        insert.setInt(1, keys.anumIds()[i]);
+                        insert.setObject(2, keys.bnumIds()[i], Types.INTEGER);
+                        insert.setInt(3, keys.serviceTypeIds()[i]);
+                        insert.setDouble(4, cdr.getUsage());
+                        insert.setString(5, cdr.getStartDateTime());
+                        insert.setObject(6, cdr.getStartTime());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                    try (ResultSet generated = insert.getGeneratedKeys()) {
+                        for (int i = from; i < to && generated.next(); i++) {
+                            cdrList.get(i).setId(generated.getLong(1));
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+    }
 
 }
@@ -0,0 +1,80 @@
+package org.example.msbackend.database.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Fills cdrs.startTime for rows written before the column existed. Each chunk is its own short
+// autocommit UPDATE over a primary key range, so ingest keeps running while it works through the table.
+@Component
+public class StartTimeBackfillJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartTimeBackfillJob.class);
+    private static final long CHUNK = 10_000;
+    // the shape CDR.fillStartTime() accepts; STR_TO_DATE is only given rows that match it
+    private static final String START_DATE_TIME_PATTERN = "^[0-9]{4}-[0-9]{2}-[0-9]{2} [0-9]{2}:[0-9]{2}$";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CDRPartitionManager partitionManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public StartTimeBackfillJob(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Off the startup thread: on a large table both steps take a while, and neither blocks ingest
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillAndPartition() {
+        backfill();
+        partitionManager.maintain();
+    }
+
+    public void backfill() {
+        Long first = jdbcTemplate.queryForObject("SELECT MIN(id) FROM cdrs WHERE startTime IS NULL", Long.class);
+        if (first == null) {
+            return;
+        }
+        long last = jdbcTemplate.queryForObject("SELECT MAX(id) FROM cdrs", Long.class);
+        long updated = 0;
+        long quarantined = 0;
+        for (long low = first - 1; low < last; low += CHUNK) {
+            long high = Math.min(low + CHUNK, last);
+            // IGNORE: under strict sql_mode an impossible date that still matches the pattern (2024-13-45) would
+            // fail the whole UPDATE; with it that row keeps a NULL startTime and is quarantined below
+            updated += jdbcTemplate.update(
+                    "UPDATE IGNORE cdrs SET startTime = STR_TO_DATE(startDateTime, '%Y-%m-%d %H:%i') " +
+                            "WHERE id > ? AND id <= ? AND startTime IS NULL AND startDateTime REGEXP ?",
+                    low, high, START_DATE_TIME_PATTERN);
+            quarantined += quarantine(low, high);
+        }
+        logger.info("Backfilled startTime on {} CDRs", updated);
+        if (quarantined > 0) {
+            logger.warn("Moved {} CDRs with an unreadable startDateTime to cdrs_quarantine", quarantined);
+        }
+    }
+
+    // Rows left without a startTime can never get one, and CDRPartitionManager needs it on every row before
+    // it partitions cdrs. They move out of the table (copy and delete in one transaction) to be fixed by hand.
+    private int quarantine(long lowExclusive, long highInclusive) {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.update("INSERT INTO cdrs_quarantine (id, anumId, bnumId, serviceTypeId, `usage`, startDateTime) " +
+                            "SELECT id, anumId, bnumId, serviceTypeId, `usage`, startDateTime FROM cdrs " +
+                            "WHERE id > ? AND id <= ? AND startTime IS NULL",
+                    lowExclusive, highInclusive);
+            return jdbcTemplate.update("DELETE FROM cdrs WHERE id > ? AND id <= ? AND startTime IS NULL",
+                    lowExclusive, highInclusive);
+        });
+    }
+}
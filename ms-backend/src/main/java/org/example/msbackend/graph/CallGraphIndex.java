@@ -0,0 +1,232 @@
+package org.example.msbackend.graph;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.CDRHistoryReader;
+import org.example.msbackend.ingest.WarmupWatermark;
+import org.example.msbackend.utils.ServiceTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+// Who-contacts-whom graph over all CALL and SMS records, kept in memory so contact questions never need a
+// self-join over cdrs. Subscribers are interned to dense int ids; each has an outgoing and an incoming
+// IntLongHashMap from contact id to a packed weight (calls in the high 32 bits, SMS in the low 32).
+// Warmed up from MySQL on startup, then extended by every committed batch.
+@Component
+public class CallGraphIndex {
+
+    public static final int MAX_CONTACTS = 100;
+    public static final int MAX_MATRIX_SIDE = 100;
+    private static final Logger logger = LoggerFactory.getLogger(CallGraphIndex.class);
+    private static final long CALL = 1L << 32;
+    private static final long SMS = 1L;
+
+    private final SubscriberIds ids = new SubscriberIds();
+    private final WarmupWatermark watermark = new WarmupWatermark();
+    private IntLongHashMap[] outgoing = new IntLongHashMap[1024];
+    private IntLongHashMap[] incoming = new IntLongHashMap[1024];
+    private long edges;
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        synchronized (this) {
+            for (CDR cdr : event.cdrs()) {
+                if (watermark.accepts(cdr)) {
+                    record(cdr);
+                }
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        // locked per row, for the same reason as TopTalkersTracker.warmUp()
+        long snapshotId = historyReader.read("serviceType IN (?, ?)",
+                new Object[]{ServiceTypes.names[ServiceTypes.CALL], ServiceTypes.names[ServiceTypes.SMS]}, watermark, cdr -> {
+                    synchronized (this) {
+                        record(cdr);
+                    }
+                });
+        watermark.warmedThrough(snapshotId);
+        synchronized (this) {
+            logger.info("Call graph warmed up with {} subscribers and {} edges", ids.size(), edges);
+        }
+    }
+
+    // Caller holds the monitor
+    private void record(CDR cdr) {
+        int service = ServiceTypes.indexOf(cdr.getServiceType());
+        if (service != ServiceTypes.CALL && service != ServiceTypes.SMS || !isNumber(cdr.getAnum()) || !isNumber(cdr.getBnum())) {
+            return;
+        }
+        int a = ids.intern(cdr.getAnum());
+        int b = ids.intern(cdr.getBnum());
+        if (Math.max(a, b) >= outgoing.length) {
+            int length = Math.max(outgoing.length * 2, Math.max(a, b) + 1);
+            outgoing = Arrays.copyOf(outgoing, length);
+            incoming = Arrays.copyOf(incoming, length);
+        }
+        long weight = service == ServiceTypes.CALL ? CALL : SMS;
+        IntLongHashMap out = mapAt(outgoing, a);
+        if (!out.containsKey(b)) {
+            edges++;
+        }
+        out.addTo(b, weight);
+        mapAt(incoming, b).addTo(a, weight);
+    }
+
+    public synchronized Map<String, Object> size() {
+        Map<String, Object> size = new LinkedHashMap<>();
+        size.put("subscribers", ids.size());
+        size.put("edges", edges);
+        return size;
+    }
+
+    // The n (at most MAX_CONTACTS) contacts the number exchanged the most calls and SMS with
+    public synchronized List<Contact> topContacts(String number, String direction, int n) {
+        IntLongHashMap contacts = neighbours(ids.idOf(number), Direction.of(direction));
+        List<Contact> result = new ArrayList<>(contacts.size());
+        contacts.forEach((id, weight) -> result.add(new Contact(ids.numberOf(id), calls(weight), sms(weight))));
+        result.sort(Comparator.comparingLong((Contact contact) -> contact.calls() + contact.sms()).reversed()
+                .thenComparing(Contact::number));
+        return result.subList(0, Math.min(Math.max(1, Math.min(n, MAX_CONTACTS)), result.size()));
+    }
+
+    public synchronized Degree degree(String number) {
+        int id = ids.idOf(number);
+        return new Degree(number, sizeAt(outgoing, id), sizeAt(incoming, id), neighbours(id, Direction.BOTH).size());
+    }
+
+    // Distinct subscribers one and two hops away, marked in a bitset over the dense ids
+    public synchronized Reach reach(String number, String direction) {
+        Direction along = Direction.of(direction);
+        int source = ids.idOf(number);
+        if (source < 0) {
+            return new Reach(number, along.name().toLowerCase(), 0, 0);
+        }
+        BitSet seen = new BitSet(ids.size());
+        seen.set(source);
+        IntLongHashMap first = neighbours(source, along);
+        first.forEach((id, weight) -> seen.set(id));
+        int direct = seen.cardinality() - 1;
+        first.forEach((id, weight) -> {
+            visit(outgoing, id, along != Direction.IN, seen);
+            visit(incoming, id, along != Direction.OUT, seen);
+        });
+        return new Reach(number, along.name().toLowerCase(), direct, seen.cardinality() - 1 - direct);
+    }
+
+    // Calls and SMS from each A number (rows) to each B number (columns)
+    public synchronized TrafficMatrix matrix(List<String> anums, List<String> bnums) {
+        if (anums.size() > MAX_MATRIX_SIDE || bnums.size() > MAX_MATRIX_SIDE) {
+            throw new IllegalArgumentException("❌ A traffic matrix takes at most " + MAX_MATRIX_SIDE + " numbers per side");
+        }
+        int[] columns = bnums.stream().mapToInt(ids::idOf).toArray();
+        long[][] calls = new long[anums.size()][bnums.size()];
+        long[][] sms = new long[anums.size()][bnums.size()];
+        for (int row = 0; row < anums.size(); row++) {
+            int a = ids.idOf(anums.get(row));
+            IntLongHashMap out = a < 0 ? null : outgoing[a];
+            if (out == null) {
+                continue;
+            }
+            for (int column = 0; column < columns.length; column++) {
+                long weight = columns[column] < 0 ? 0 : out.get(columns[column]);
+                calls[row][column] = calls(weight);
+                sms[row][column] = sms(weight);
+            }
+        }
+        return new TrafficMatrix(anums, bnums, calls, sms);
+    }
+
+    // Both directions are merged into a fresh map; a single direction is returned as stored (read-only)
+    private IntLongHashMap neighbours(int id, Direction direction) {
+        IntLongHashMap out = id < 0 ? null : outgoing[id];
+        IntLongHashMap in = id < 0 ? null : incoming[id];
+        if (direction == Direction.OUT || in == null) {
+            return orEmpty(direction == Direction.IN ? in : out);
+        }
+        if (direction == Direction.IN || out == null) {
+            return in;
+        }
+        IntLongHashMap both = new IntLongHashMap(out.size() + in.size());
+        out.forEach(both::addTo);
+        in.forEach(both::addTo);
+        return both;
+    }
+
+    private static void visit(IntLongHashMap[] adjacency, int id, boolean enabled, BitSet seen) {
+        if (enabled && adjacency[id] != null) {
+            adjacency[id].forEach((next, weight) -> seen.set(next));
+        }
+    }
+
+    private static IntLongHashMap mapAt(IntLongHashMap[] adjacency, int id) {
+        IntLongHashMap map = adjacency[id];
+        if (map == null) {
+            map = new IntLongHashMap();
+            adjacency[id] = map;
+        }
+        return map;
+    }
+
+    private static IntLongHashMap orEmpty(IntLongHashMap map) {
+        return map == null ? new IntLongHashMap() : map;
+    }
+
+    private static int sizeAt(IntLongHashMap[] adjacency, int id) {
+        return id < 0 || adjacency[id] == null ? 0 : adjacency[id].size();
+    }
+
+    private static long calls(long weight) {
+        return weight >>> 32;
+    }
+
+    private static long sms(long weight) {
+        return weight & 0xFFFFFFFFL;
+    }
+
+    // SMS and CALL records always carry a B number, but the loader writes "null" for missing ones
+    private static boolean isNumber(String number) {
+        return number != null && !number.isEmpty() && !number.equals("null");
+    }
+
+    private enum Direction {
+        OUT, IN, BOTH;
+
+        static Direction of(String direction) {
+            if (direction == null) {
+                return BOTH;
+            }
+            for (Direction value : values()) {
+                if (value.name().equalsIgnoreCase(direction)) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("❌ direction must be out, in or both");
+        }
+    }
+
+    public record Contact(String number, long calls, long sms) {
+    }
+
+    // `total` counts a contact reached in both directions once
+    public record Degree(String number, int out, int in, int total) {
+    }
+
+    public record Reach(String number, String direction, int direct, int twoHop) {
+    }
+
+    public record TrafficMatrix(List<String> anums, List<String> bnums, long[][] calls, long[][] sms) {
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.msbackend.graph;
+
+import java.util.Arrays;
+
+// Open-addressing map from non-negative int keys to long values, kept in two flat arrays so an edge costs
+// 12 bytes plus slack instead of two boxed objects and an entry. Starts tiny because most subscribers
+// only have a handful of contacts. Not thread-safe.
+public class IntLongHashMap {
+
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    public IntLongHashMap() {
+        this(2);
+    }
+
+    public IntLongHashMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(2, expected * 4 / 3 + 1) - 1) << 1;
+        keys = new int[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return keys[slotOf(keys, key)] == key;
+    }
+
+    public long get(int key) {
+        int slot = slotOf(keys, key);
+        return keys[slot] == key ? values[slot] : 0;
+    }
+
+    // Adds delta to the key's value, inserting it at delta when absent
+    public void addTo(int key, long delta) {
+        int slot = slotOf(keys, key);
+        if (keys[slot] == key) {
+            values[slot] += delta;
+            return;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size * 4 >= keys.length * 3) {
+            resize();
+        }
+    }
+
+    public void forEach(IntLongConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slotOf(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // The key's slot, or the free slot it would go in
+    private static int slotOf(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @FunctionalInterface
+    public interface IntLongConsumer {
+        void accept(int key, long value);
+    }
+}
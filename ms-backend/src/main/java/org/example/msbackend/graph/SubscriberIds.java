@@ -0,0 +1,80 @@
+package org.example.msbackend.graph;
+
+import java.util.Arrays;
+
+// Dictionary that gives every subscriber number a dense int id (0, 1, 2, ...) so graph structures can be
+// indexed by array position. Ids are never reused. Not thread-safe.
+public class SubscriberIds {
+
+    private static final int FREE = -1;
+
+    private String[] numbers = new String[1024];
+    private int[] hashes = new int[1024];
+    private int[] table = new int[2048];
+    private int size;
+
+    public SubscriberIds() {
+        Arrays.fill(table, FREE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The number's id, or -1 if it has never been seen
+    public int idOf(String number) {
+        int hash = spread(number.hashCode());
+        return table[slotOf(number, hash)];
+    }
+
+    // The number's id, assigning the next one if it is new
+    public int intern(String number) {
+        int hash = spread(number.hashCode());
+        int slot = slotOf(number, hash);
+        if (table[slot] != FREE) {
+            return table[slot];
+        }
+        if (size == numbers.length) {
+            numbers = Arrays.copyOf(numbers, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        numbers[id] = number;
+        hashes[id] = hash;
+        table[slot] = id;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    public String numberOf(int id) {
+        return numbers[id];
+    }
+
+    private int slotOf(String number, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != FREE && (hashes[table[slot]] != hash || !numbers[table[slot]].equals(number))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, FREE);
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.msbackend.ingest;
+
+import org.example.msbackend.database.entity.CDR;
+
+import java.util.List;
+
+// Published by CDRService.ingestBatch; in-memory views listen with @TransactionalEventListener
+// so they only ever see rows that were committed (and therefore have their ids).
+public record CDRBatchIngestedEvent(List<CDR> cdrs) {
+}
@@ -0,0 +1,65 @@
+package org.example.msbackend.ingest;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.database.service.CDRRollupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+// Streams committed CDRs out of MySQL to warm up in-memory views on startup. Archived partitions (CDRArchive)
+// are not read: the windowed views and the ones resuming from an id (PrepaidBalances, CDRColumnStore) only
+// need recent rows, while CallGraphIndex, which loads the whole history, leaves archived days out.
+@Component
+public class CDRHistoryReader {
+
+    private final JdbcTemplate streamingTemplate;
+
+    @Autowired
+    private CDRRollupService rollupService;
+
+    public CDRHistoryReader(DataSource dataSource) {
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        // MySQL Connector/J only streams row by row with this fetch size; otherwise it buffers the whole result
+        this.streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    // For loads that buffer their own events meanwhile and skip the ones they read (SubscriberProfiles).
+    // Lock-free, unlike snapshotId(watermark), so a load never holds up ingest.
+    public long committedWatermark() {
+        return rollupService.committedWatermark();
+    }
+
+    // Takes the snapshot id and hands it to the watermark while no ingest can complete, so every batch
+    // after it is accepted by the view's listener and every batch up to it is the view's to load
+    public long snapshotId(WarmupWatermark watermark) {
+        return rollupService.atCommittedSnapshot(id -> {
+            watermark.acceptAbove(id);
+            return id;
+        });
+    }
+
+    // Reads every committed CDR matching the condition (a SQL predicate over cdrs, or null for all rows) up to
+    // a snapshot id and returns it, to hand to WarmupWatermark.warmedThrough(). Ingest events above the id
+    // reach the view while the rows stream, so the sink must be safe to call alongside its listener.
+    public long read(String condition, Object[] args, WarmupWatermark watermark, Consumer<CDR> sink) {
+        long snapshotId = snapshotId(watermark);
+        String sql = "SELECT id, anum, bnum, serviceType, `usage`, startDateTime FROM cdr_records WHERE id <= ?"
+                + (condition == null ? "" : " AND (" + condition + ")");
+        Object[] params = new Object[(args == null ? 0 : args.length) + 1];
+        params[0] = snapshotId;
+        if (args != null) {
+            System.arraycopy(args, 0, params, 1, args.length);
+        }
+
+        streamingTemplate.query(sql, rs -> {
+            CDR cdr = new CDR(rs.getString("anum"), rs.getString("bnum"), rs.getString("serviceType"),
+                    rs.getDouble("usage"), rs.getString("startDateTime"));
+            cdr.setId(rs.getLong("id"));
+            sink.accept(cdr);
+        }, params);
+        return snapshotId;
+    }
+}
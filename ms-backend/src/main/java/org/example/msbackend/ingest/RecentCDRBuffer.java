@@ -0,0 +1,209 @@
+package org.example.msbackend.ingest;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.utils.ServiceTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The newest committed CDRs in fixed-size lock-free rings: one over all service types and, with
+// cdr.recent.per-service, one per service type so a quiet type isn't pushed out by a busy one.
+// Writers claim a sequence number and publish an immutable (sequence, CDR) slot; readers walk back from
+// the head and keep only slots carrying the sequence they expect, so a slot overwritten mid-read (or not
+// yet published) is skipped rather than returned out of order. Warmed up with the newest rows from MySQL.
+@Component
+public class RecentCDRBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentCDRBuffer.class);
+
+    private final Ring all;
+    private final Ring[] byService;
+    private final WarmupWatermark watermark = new WarmupWatermark();
+    // batches committed while the rings are being filled
+    private final List<CDR> pending = new ArrayList<>();
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public RecentCDRBuffer(@Value("${cdr.recent.capacity:10000}") int capacity,
+                           @Value("${cdr.recent.per-service:true}") boolean perService) {
+        this.all = new Ring(capacity);
+        this.byService = new Ring[ServiceTypes.names.length];
+        for (int service = 0; service < byService.length; service++) {
+            byService[service] = perService ? new Ring(capacity) : null;
+        }
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        if (!watermark.isWarm()) {
+            synchronized (pending) {
+                if (!watermark.isWarm()) {
+                    for (CDR cdr : event.cdrs()) {
+                        if (watermark.accepts(cdr)) {
+                            pending.add(cdr);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+        for (CDR cdr : event.cdrs()) {
+            if (watermark.accepts(cdr)) {
+                add(cdr);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long snapshotId = historyReader.snapshotId(watermark);
+        fill(all, null, snapshotId);
+        for (int service = 0; service < byService.length; service++) {
+            if (byService[service] != null) {
+                fill(byService[service], ServiceTypes.names[service], snapshotId);
+            }
+        }
+        // batches committed during the fill go in after it, so the rings stay in commit order
+        synchronized (pending) {
+            pending.forEach(this::add);
+            pending.clear();
+            watermark.warmedThrough(snapshotId);
+        }
+        logger.info("Recent CDR buffer warmed up with {} rows", all.size());
+    }
+
+    private void fill(Ring ring, String serviceType, long snapshotId) {
+        List<CDR> newest = jdbcTemplate.query(
+                "SELECT id, anum, bnum, serviceType, `usage`, startDateTime FROM cdr_records WHERE id <= ?"
+                        + (serviceType == null ? "" : " AND serviceType = ?") + " ORDER BY id DESC LIMIT ?",
+                (rs, row) -> {
+                    CDR cdr = new CDR(rs.getString("anum"), rs.getString("bnum"), rs.getString("serviceType"),
+                            rs.getDouble("usage"), rs.getString("startDateTime"));
+                    cdr.setId(rs.getLong("id"));
+                    return cdr;
+                },
+                serviceType == null ? new Object[]{snapshotId, ring.capacity()} : new Object[]{snapshotId, serviceType, ring.capacity()});
+        Collections.reverse(newest);
+        newest.forEach(ring::add);
+        // fewer rows than fit means the ring holds the whole history (until it wraps)
+        ring.complete = newest.size() < ring.capacity();
+    }
+
+    private void add(CDR cdr) {
+        all.add(cdr);
+        int service = ServiceTypes.indexOf(cdr.getServiceType());
+        if (service != ServiceTypes.UNKNOWN && byService[service] != null) {
+            byService[service].add(cdr);
+        }
+    }
+
+    public boolean isWarm() {
+        return watermark.isWarm();
+    }
+
+    // Up to n of the newest CDRs with id < beforeId (null for no bound), by id descending, from the ring of
+    // the service type (null for all): the largest ids anywhere in the ring, since concurrent batches can
+    // make commit order differ from id order. The last element is the smallest id returned and the one to
+    // page on. The answer may be shorter than n when the ring doesn't reach back far enough; whether older
+    // rows can exist at all is told by isComplete().
+    public List<CDR> latest(String serviceType, int n, Long beforeId) {
+        return ring(serviceType).latest(n, beforeId == null ? Long.MAX_VALUE : beforeId);
+    }
+
+    // True if the ring has held every committed CDR of its service type since startup, so nothing older
+    // than its oldest entry is in MySQL
+    public boolean isComplete(String serviceType) {
+        return ring(serviceType).isComplete();
+    }
+
+    private Ring ring(String serviceType) {
+        if (serviceType == null) {
+            return all;
+        }
+        Ring ring = byService[ServiceTypes.require(serviceType)];
+        if (ring == null) {
+            throw new IllegalArgumentException("❌ Per service type recent buffers are disabled (cdr.recent.per-service)");
+        }
+        return ring;
+    }
+
+    private static final class Ring {
+        private final AtomicReferenceArray<Slot> slots;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        private volatile boolean complete;
+
+        Ring(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        int capacity() {
+            return slots.length();
+        }
+
+        long size() {
+            return Math.min(head.get(), slots.length());
+        }
+
+        boolean isComplete() {
+            return complete && head.get() <= slots.length();
+        }
+
+        void add(CDR cdr) {
+            long sequence = head.getAndIncrement();
+            slots.set((int) (sequence & mask), new Slot(sequence, cdr));
+        }
+
+        // The whole ring is walked: commit order is not id order, so the n largest ids below beforeId can
+        // sit anywhere in it. A min-heap of size n keeps the largest seen so far.
+        List<CDR> latest(int n, long beforeId) {
+            long newest = head.get() - 1;
+            long oldest = Math.max(0, newest - mask);
+            PriorityQueue<CDR> largest = new PriorityQueue<>(Math.min(n, slots.length()), Comparator.comparing(CDR::getId));
+            for (long sequence = newest; sequence >= oldest; sequence--) {
+                Slot slot = slots.get((int) (sequence & mask));
+                if (slot == null || slot.sequence < sequence) {
+                    continue; // claimed but not yet published
+                }
+                if (slot.sequence > sequence) {
+                    break; // writers lapped this reader: everything further back is gone too
+                }
+                if (slot.cdr.getId() >= beforeId) {
+                    continue;
+                }
+                if (largest.size() < n) {
+                    largest.add(slot.cdr);
+                } else if (slot.cdr.getId() > largest.peek().getId()) {
+                    largest.poll();
+                    largest.add(slot.cdr);
+                }
+            }
+            List<CDR> result = new ArrayList<>(largest);
+            result.sort(Comparator.comparing(CDR::getId).reversed());
+            return result;
+        }
+    }
+
+    private record Slot(long sequence, CDR cdr) {
+    }
+}
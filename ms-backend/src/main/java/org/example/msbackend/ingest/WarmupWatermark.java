@@ -0,0 +1,31 @@
+package org.example.msbackend.ingest;
+
+import org.example.msbackend.database.entity.CDR;
+
+// Keeps an in-memory view from counting a row twice, or not at all: once from its startup scan of MySQL
+// and once from the ingest event. CDRHistoryReader sets the snapshot id while ingest is held off, so from
+// then on events for rows above it are applied (alongside the scan), and rows at or below it are left to
+// the scan. The view is warm, and may answer reads, once its scan has finished.
+public class WarmupWatermark {
+    private volatile long snapshotId = -1;
+    private volatile boolean warm;
+
+    // Called by CDRHistoryReader when it takes the snapshot, before streaming
+    void acceptAbove(long id) {
+        snapshotId = id;
+    }
+
+    public void warmedThrough(long id) {
+        snapshotId = id;
+        warm = true;
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    public boolean accepts(CDR cdr) {
+        long watermark = snapshotId;
+        return watermark >= 0 && cdr.getId() != null && cdr.getId() > watermark;
+    }
+}
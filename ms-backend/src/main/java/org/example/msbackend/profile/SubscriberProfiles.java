@@ -0,0 +1,259 @@
+package org.example.msbackend.profile;
+
+import org.example.msbackend.archive.CDRArchive;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.CDRHistoryReader;
+import org.example.msbackend.utils.ServiceTypes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lifetime totals per A number (calls, call minutes, SMS, data MB, last seen), kept under a byte budget.
+// A miss loads the subscriber from its archived totals plus one aggregate query up to the committed
+// watermark; from then on the profile is moved forward by the ingest event, so a hot subscriber never
+// reaches MySQL again. Subscribers that
+// are not cached are not tracked at all. The cache is split into stripes, each an access-ordered map that
+// drops its least recently used profiles once its share of the budget is used up.
+@Component
+public class SubscriberProfiles {
+
+    private static final int STRIPES = 16;
+    // rough heap cost of a cached profile besides its number's characters: map node, entry, future, boxes
+    private static final int ENTRY_OVERHEAD_BYTES = 240;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long stripeBudget;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CDRArchive archive;
+
+    public SubscriberProfiles(@Value("${cdr.profiles.max-bytes:67108864}") long maxBytes) {
+        this.stripeBudget = maxBytes / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // A batch either commits before a load reads past the watermark, or reaches `pending` here; both are
+    // possible at once, so the load merges them by id
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        for (CDR cdr : event.cdrs()) {
+            Stripe stripe = stripeOf(cdr.getAnum());
+            synchronized (stripe) {
+                // counts as a use, so subscribers with traffic are the last to be evicted
+                Entry entry = stripe.entries.get(cdr.getAnum());
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.pending != null) {
+                    entry.pending.add(cdr);
+                } else {
+                    entry.add(cdr);
+                }
+            }
+        }
+    }
+
+    public Profile profile(String anum) {
+        Stripe stripe = stripeOf(anum);
+        Entry entry;
+        synchronized (stripe) {
+            entry = stripe.entries.get(anum);
+            if (entry != null) {
+                hits.increment();
+                if (entry.pending == null) {
+                    return entry.profile();
+                }
+            } else {
+                misses.increment();
+                entry = new Entry(anum);
+                stripe.entries.put(anum, entry);
+            }
+        }
+        // outside the monitor: events for the stripe keep flowing while the queries run
+        return entry.claimLoad() ? load(stripe, entry) : entry.ready.join();
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long entries = 0;
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                entries += stripe.entries.size();
+                bytes += stripe.bytes;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries);
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", stripeBudget * STRIPES);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.sum());
+        stats.put("averageLoadMs", missCount == 0 ? 0.0 : loadNanos.sum() / 1e6 / missCount);
+        return stats;
+    }
+
+    // Only the thread that claimed the entry gets here; others wait on entry.ready
+    private Profile load(Stripe stripe, Entry entry) {
+        long started = System.nanoTime();
+        try {
+            // every id up to the watermark is committed and counted by the aggregate; the rows above it that
+            // have committed are read one by one and merged with `pending` below
+            long watermark = historyReader.committedWatermark();
+            List<CDR> recent = archive.consistently(() -> {
+                for (CDRArchive.ArchivedTotals totals : archive.archivedTotals(entry.anum)) {
+                    entry.addTotals(ServiceTypes.indexOf(totals.serviceType()), totals.cdrCount(), totals.usageSum(),
+                            totals.lastStartDateTime());
+                }
+                jdbcTemplate.query("SELECT serviceType, COUNT(*), SUM(`usage`), MAX(startDateTime) FROM cdr_records "
+                                + "WHERE anum = ? AND id <= ? GROUP BY serviceType",
+                        (RowCallbackHandler) rs -> entry.addTotals(ServiceTypes.indexOf(rs.getString(1)),
+                                rs.getLong(2), rs.getDouble(3), rs.getString(4)),
+                        entry.anum, watermark);
+                return jdbcTemplate.query("SELECT id, serviceType, `usage`, startDateTime FROM cdr_records WHERE anum = ? AND id > ?",
+                        (rs, row) -> {
+                            CDR cdr = new CDR(entry.anum, null, rs.getString(2), rs.getDouble(3), rs.getString(4));
+                            cdr.setId(rs.getLong(1));
+                            return cdr;
+                        },
+                        entry.anum, watermark);
+            });
+            Profile profile;
+            synchronized (stripe) {
+                Set<Long> added = new HashSet<>();
+                for (CDR cdr : recent) {
+                    added.add(cdr.getId());
+                    entry.add(cdr);
+                }
+                for (CDR cdr : entry.pending) {
+                    if (cdr.getId() > watermark && added.add(cdr.getId())) {
+                        entry.add(cdr);
+                    }
+                }
+                entry.pending = null;
+                stripe.bytes += entry.bytes();
+                evict(stripe);
+                profile = entry.profile();
+            }
+            entry.ready.complete(profile);
+            return profile;
+        } catch (RuntimeException e) {
+            synchronized (stripe) {
+                stripe.entries.remove(entry.anum, entry);
+            }
+            entry.ready.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadNanos.add(System.nanoTime() - started);
+        }
+    }
+
+    // Drops least recently used profiles until the stripe is within budget; entries still loading stay
+    private void evict(Stripe stripe) {
+        Iterator<Entry> eldest = stripe.entries.values().iterator();
+        while (stripe.bytes > stripeBudget && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            if (entry.pending == null) {
+                eldest.remove();
+                stripe.bytes -= entry.bytes();
+                evictions.increment();
+            }
+        }
+    }
+
+    private Stripe stripeOf(String anum) {
+        int hash = anum.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static final class Stripe {
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        long bytes;
+    }
+
+    // Guarded by its stripe's monitor. While loading, `pending` collects the CDRs ingested meanwhile.
+    private static final class Entry {
+        final String anum;
+        final CompletableFuture<Profile> ready = new CompletableFuture<>();
+        final AtomicBoolean claimed = new AtomicBoolean();
+        List<CDR> pending = new ArrayList<>();
+        long calls;
+        double callMinutes;
+        long sms;
+        long dataSessions;
+        double dataMb;
+        String lastSeen;
+
+        Entry(String anum) {
+            this.anum = anum;
+        }
+
+        boolean claimLoad() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        void add(CDR cdr) {
+            addTotals(ServiceTypes.indexOf(cdr.getServiceType()), 1, cdr.getUsage(), cdr.getStartDateTime());
+        }
+
+        void addTotals(int service, long count, double usage, String newest) {
+            switch (service) {
+                case ServiceTypes.CALL -> {
+                    calls += count;
+                    callMinutes += usage;
+                }
+                case ServiceTypes.SMS -> sms += count;
+                case ServiceTypes.DATA -> {
+                    dataSessions += count;
+                    dataMb += usage;
+                }
+                default -> {
+                    return;
+                }
+            }
+            if (newest != null && (lastSeen == null || newest.compareTo(lastSeen) > 0)) {
+                lastSeen = newest;
+            }
+        }
+
+        long bytes() {
+            return ENTRY_OVERHEAD_BYTES + 2L * anum.length();
+        }
+
+        Profile profile() {
+            return new Profile(anum, calls, callMinutes, sms, dataSessions, dataMb, lastSeen);
+        }
+    }
+
+    // lastSeen is the newest startDateTime, null for a number with no records as A side
+    public record Profile(String anum, long calls, double callMinutes, long sms, long dataSessions,
+                          double dataMb, String lastSeen) {
+        public boolean isEmpty() {
+            return calls + sms + dataSessions == 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.msbackend.rating;
+
+import org.example.cdrcommon.rating.TariffPlan;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// The tariff plans configured under cdr.rating.plans.<name>, compiled once at startup (a bad plan fails
+// the startup rather than the first bill)
+@Component
+public class RatingEngine {
+
+    private final Map<String, TariffPlan> plans = new TreeMap<>();
+    private final TariffPlan defaultPlan;
+
+    public RatingEngine(Environment environment, @Value("${cdr.rating.default-plan:standard}") String defaultPlan) {
+        Binder.get(environment)
+                .bind("cdr.rating.plans", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of())
+                .forEach((name, spec) -> plans.put(name, TariffPlan.parse(name, spec)));
+        if (!plans.containsKey(defaultPlan)) {
+            throw new IllegalStateException("❌ Default tariff plan " + defaultPlan + " is not configured under cdr.rating.plans");
+        }
+        this.defaultPlan = plans.get(defaultPlan);
+    }
+
+    public Collection<TariffPlan> plans() {
+        return plans.values();
+    }
+
+    // null means the default plan
+    public TariffPlan plan(String name) {
+        if (name == null) {
+            return defaultPlan;
+        }
+        TariffPlan plan = plans.get(name);
+        if (plan == null) {
+            throw new IllegalArgumentException("❌ Unknown tariff plan: " + name + " (expected one of " + plans.keySet() + ")");
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.msbackend.reconcile;
+
+import org.example.msbackend.archive.CDRArchive;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Order-independent checksums of the CDRs starting in a time range, grouped by day, hour or minute. A row
+// hashes to the first 60 bits of the MD5 of its content, and a group to the count and exact sum of its row
+// hashes, so a missing or duplicated row changes both. The ids differ between the loader's Postgres and this
+// MySQL, so only the content is hashed. Rows moved to the archive (CDRArchive) are hashed here in Java the
+// same way and counted with the ones still in MySQL. Must stay in line with ms-loader's RangeHashes, which
+// computes the same in Postgres.
+@Component
+public class RangeHashes {
+
+    private static final String ROW_TEXT =
+            "CONCAT_WS('|', anum, COALESCE(bnum, ''), UPPER(serviceType), CAST(ROUND(`usage` * 1000) AS SIGNED), startDateTime)";
+    private static final String ROW_HASH = "CAST(CONV(LEFT(MD5(" + ROW_TEXT + "), 15), 16, 10) AS UNSIGNED)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CDRArchive archive;
+
+    // One checksum per level bucket with rows in [from, to)
+    public List<RangeHash> hashes(Level level, LocalDateTime from, LocalDateTime to) {
+        Map<String, RangeHash> buckets = new TreeMap<>();
+        jdbcTemplate.query("SELECT LEFT(startDateTime, " + level.prefix + ") AS bucket, COUNT(*), SUM(" + ROW_HASH + ") "
+                        + "FROM cdr_records WHERE startTime >= ? AND startTime < ? GROUP BY bucket",
+                (RowCallbackHandler) rs -> buckets.put(rs.getString(1), new RangeHash(rs.getString(1), rs.getLong(2), rs.getBigDecimal(3))),
+                from, to);
+        if (archive.covers(from, to)) {
+            archive.scan(null, from, to, cdr -> {
+                String bucket = cdr.getStartDateTime().substring(0, level.prefix);
+                buckets.merge(bucket, new RangeHash(bucket, 1, BigDecimal.valueOf(rowHash(rowText(cdr)))), RangeHash::plus);
+            });
+        }
+        return new ArrayList<>(buckets.values());
+    }
+
+    // The distinct row contents in [from, to) with how often each occurs
+    public List<RowCount> rows(LocalDateTime from, LocalDateTime to) {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT " + ROW_TEXT + " AS content, COUNT(*) FROM cdr_records "
+                        + "WHERE startTime >= ? AND startTime < ? GROUP BY content",
+                (RowCallbackHandler) rs -> counts.merge(rs.getString(1), rs.getLong(2), Long::sum), from, to);
+        if (archive.covers(from, to)) {
+            archive.scan(null, from, to, cdr -> counts.merge(rowText(cdr), 1L, Long::sum));
+        }
+        List<RowCount> rows = new ArrayList<>(counts.size());
+        counts.forEach((row, count) -> rows.add(new RowCount(row, count)));
+        return rows;
+    }
+
+    // ROW_TEXT of an archived row; MySQL's ROUND of a DOUBLE, like Math.rint, rounds halves to even
+    static String rowText(CDR cdr) {
+        return cdr.getAnum() + '|' + (cdr.getBnum() == null ? "" : cdr.getBnum()) + '|' + cdr.getServiceType().toUpperCase()
+                + '|' + (long) Math.rint(cdr.getUsage() * 1000) + '|' + cdr.getStartDateTime();
+    }
+
+    // ROW_HASH: the first 15 hex digits of the MD5 are its top 60 bits
+    static long rowHash(String rowText) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(rowText.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong() >>> 4;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Buckets are prefixes of startDateTime ("yyyy-MM-dd HH:mm")
+    public enum Level {
+        DAY(10, " 00:00", 24 * 60),
+        HOUR(13, ":00", 60),
+        MINUTE(16, "", 1);
+
+        final int prefix;
+        private final String padding;
+        private final int minutes;
+
+        Level(int prefix, String padding, int minutes) {
+            this.prefix = prefix;
+            this.padding = padding;
+            this.minutes = minutes;
+        }
+
+        public Level finer() {
+            return this == MINUTE ? null : values()[ordinal() + 1];
+        }
+
+        LocalDateTime start(String bucket) {
+            return StartDateTimes.parseBound(bucket + padding);
+        }
+
+        LocalDateTime end(String bucket) {
+            return start(bucket).plusMinutes(minutes);
+        }
+    }
+
+    // sum is exact; it outgrows a long after a few hundred rows
+    public record RangeHash(String bucket, long count, BigDecimal sum) {
+
+        RangeHash plus(RangeHash other) {
+            return new RangeHash(bucket, count + other.count, sum.add(other.sum));
+        }
+    }
+
+    // row is anum|bnum|SERVICETYPE|usage in thousandths|startDateTime
+    public record RowCount(String row, long count) {
+    }
+}
@@ -0,0 +1,273 @@
+package org.example.msbackend.reconcile;
+
+import jakarta.annotation.PreDestroy;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Checks that MySQL holds exactly the CDRs of the loader's Postgres for a time range, without moving the
+// rows. Every day of the range is compared on its own worker: the day checksums of both sides are fetched
+// side by side (the loader's over HTTP), and only a day that differs is split into hours, an hour into
+// minutes, and only a differing minute has its rows listed on both sides and diffed. The loader and MySQL
+// number rows independently, so the finest level is the minute, not an id range.
+@Component
+public class ReconciliationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationJob.class);
+    private static final int MAX_RUNS = 20;
+
+    private final ExecutorService days;
+    // loader requests, so a day's worker waits on its own MySQL query and the loader's at once
+    private final ExecutorService fetches;
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final Map<String, Run> runs = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    @Value("${cdr.reconcile.loader-url:http://loader:8080}")
+    private String loaderUrl;
+
+    // rows listed per side of the report; the totals are always complete
+    @Value("${cdr.reconcile.max-reported:1000}")
+    private int maxReported;
+
+    @Autowired
+    private RangeHashes rangeHashes;
+
+    public ReconciliationJob(@Value("${cdr.reconcile.threads:4}") int threads) {
+        this.days = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "reconcile-day");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fetches = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "reconcile-fetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        days.shutdownNow();
+        fetches.shutdownNow();
+    }
+
+    // from inclusive, to exclusive; returns at once with the run's id and progress
+    public Map<String, Object> start(String from, String to) {
+        LocalDateTime fromTime = StartDateTimes.parseBound(from);
+        LocalDateTime toTime = StartDateTimes.parseBound(to);
+        if (fromTime == null || toTime == null || !fromTime.isBefore(toTime)) {
+            throw new IllegalArgumentException("❌ from and to are required and from must be before to");
+        }
+        Run run = new Run(UUID.randomUUID().toString(), fromTime, toTime, maxReported);
+        synchronized (runs) {
+            runs.put(run.id, run);
+            if (runs.size() > MAX_RUNS) {
+                runs.remove(runs.keySet().iterator().next());
+            }
+        }
+        Thread coordinator = new Thread(() -> execute(run), "reconcile-" + run.id);
+        coordinator.setDaemon(true);
+        coordinator.start();
+        return run.status();
+    }
+
+    public Map<String, Object> status(String id) {
+        Run run = runs.get(id);
+        return run == null ? null : run.status();
+    }
+
+    private void execute(Run run) {
+        List<Future<?>> dayTasks = new ArrayList<>();
+        for (LocalDateTime day = run.from.toLocalDate().atStartOfDay(); day.isBefore(run.to); day = day.plusDays(1)) {
+            LocalDateTime dayFrom = day.isBefore(run.from) ? run.from : day;
+            LocalDateTime dayTo = day.plusDays(1).isAfter(run.to) ? run.to : day.plusDays(1);
+            dayTasks.add(days.submit(() -> {
+                compare(run, RangeHashes.Level.DAY, dayFrom, dayTo);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> task : dayTasks) {
+                task.get();
+            }
+            run.finish("DONE", null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dayTasks.forEach(task -> task.cancel(true));
+            run.finish("FAILED", "interrupted");
+        } catch (ExecutionException e) {
+            dayTasks.forEach(task -> task.cancel(true));
+            logger.warn("Reconciliation {} failed", run.id, e.getCause());
+            run.finish("FAILED", String.valueOf(e.getCause().getMessage()));
+        }
+        logger.info("Reconciliation {} of [{}, {}) finished: {}", run.id, run.from, run.to, run.status());
+    }
+
+    // Compares the level's buckets in [from, to) and descends into the ones that differ
+    private void compare(Run run, RangeHashes.Level level, LocalDateTime from, LocalDateTime to) throws Exception {
+        Future<List<RangeHashes.RangeHash>> remote = fetches.submit(() -> loader("/api/reconcile/hashes",
+                Map.of("level", level.name(), "from", StartDateTimes.format(from), "to", StartDateTimes.format(to)),
+                new ParameterizedTypeReference<List<RangeHashes.RangeHash>>() {}));
+        Map<String, RangeHashes.RangeHash> local = new HashMap<>();
+        for (RangeHashes.RangeHash hash : rangeHashes.hashes(level, from, to)) {
+            local.put(hash.bucket(), hash);
+        }
+        Map<String, RangeHashes.RangeHash> loader = new HashMap<>();
+        for (RangeHashes.RangeHash hash : remote.get()) {
+            loader.put(hash.bucket(), hash);
+        }
+        run.checksumsTransferred.addAndGet(local.size() + loader.size());
+
+        Set<String> buckets = new TreeSet<>(local.keySet());
+        buckets.addAll(loader.keySet());
+        for (String bucket : buckets) {
+            run.compared(level).incrementAndGet();
+            RangeHashes.RangeHash mine = local.get(bucket);
+            RangeHashes.RangeHash theirs = loader.get(bucket);
+            if (level == RangeHashes.Level.DAY) {
+                run.loaderRows.addAndGet(theirs == null ? 0 : theirs.count());
+                run.backendRows.addAndGet(mine == null ? 0 : mine.count());
+            }
+            if (mine != null && theirs != null && mine.count() == theirs.count() && mine.sum().compareTo(theirs.sum()) == 0) {
+                continue;
+            }
+            run.mismatched(level).incrementAndGet();
+            LocalDateTime bucketFrom = max(from, level.start(bucket));
+            LocalDateTime bucketTo = min(to, level.end(bucket));
+            if (level.finer() != null) {
+                compare(run, level.finer(), bucketFrom, bucketTo);
+            } else {
+                diffRows(run, bucketFrom, bucketTo);
+            }
+        }
+    }
+
+    private void diffRows(Run run, LocalDateTime from, LocalDateTime to) throws Exception {
+        Future<List<RangeHashes.RowCount>> remote = fetches.submit(() -> loader("/api/reconcile/rows",
+                Map.of("from", StartDateTimes.format(from), "to", StartDateTimes.format(to)),
+                new ParameterizedTypeReference<List<RangeHashes.RowCount>>() {}));
+        Map<String, Long> counts = new HashMap<>();
+        List<RangeHashes.RowCount> local = rangeHashes.rows(from, to);
+        for (RangeHashes.RowCount row : local) {
+            counts.merge(row.row(), -row.count(), Long::sum);
+        }
+        List<RangeHashes.RowCount> loader = remote.get();
+        for (RangeHashes.RowCount row : loader) {
+            counts.merge(row.row(), row.count(), Long::sum);
+        }
+        run.rowsTransferred.addAndGet(local.size() + loader.size());
+        // positive: rows the loader has more often than MySQL
+        counts.forEach((row, difference) -> {
+            if (difference > 0) {
+                run.report(run.missing, run.missingRows, row, difference);
+            } else if (difference < 0) {
+                run.report(run.extra, run.extraRows, row, -difference);
+            }
+        });
+    }
+
+    private <T> T loader(String path, Map<String, String> params, ParameterizedTypeReference<T> type) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromUriString(loaderUrl).path(path);
+        params.forEach(uri::queryParam);
+        URI target = uri.encode().build().toUri();
+        return restTemplate.exchange(target, HttpMethod.GET, null, type).getBody();
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static final class Run {
+        final String id;
+        final LocalDateTime from;
+        final LocalDateTime to;
+        final long startedAt = System.currentTimeMillis();
+        final AtomicLong[] compared = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+        final AtomicLong[] mismatched = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+        final AtomicLong loaderRows = new AtomicLong();
+        final AtomicLong backendRows = new AtomicLong();
+        final AtomicLong checksumsTransferred = new AtomicLong();
+        final AtomicLong rowsTransferred = new AtomicLong();
+        final AtomicLong missingRows = new AtomicLong();
+        final AtomicLong extraRows = new AtomicLong();
+        final int maxReported;
+        // row content -> copies the loader has that MySQL lacks / copies MySQL has beyond the loader's
+        // (duplicates, or rows the loader never had)
+        final Map<String, Long> missing = new ConcurrentHashMap<>();
+        final Map<String, Long> extra = new ConcurrentHashMap<>();
+        volatile String state = "RUNNING";
+        volatile String error;
+        volatile long finishedAt;
+
+        Run(String id, LocalDateTime from, LocalDateTime to, int maxReported) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.maxReported = maxReported;
+        }
+
+        AtomicLong compared(RangeHashes.Level level) {
+            return compared[level.ordinal()];
+        }
+
+        AtomicLong mismatched(RangeHashes.Level level) {
+            return mismatched[level.ordinal()];
+        }
+
+        synchronized void report(Map<String, Long> rows, AtomicLong total, String row, long copies) {
+            total.addAndGet(copies);
+            if (rows.size() < maxReported) {
+                rows.put(row, copies);
+            }
+        }
+
+        void finish(String state, String error) {
+            this.error = error;
+            this.finishedAt = System.currentTimeMillis();
+            this.state = state;
+        }
+
+        Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("id", id);
+            status.put("from", StartDateTimes.format(from));
+            status.put("to", StartDateTimes.format(to));
+            status.put("status", state);
+            if (error != null) {
+                status.put("error", error);
+            }
+            status.put("elapsedMs", (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt);
+            status.put("loaderRows", loaderRows.get());
+            status.put("backendRows", backendRows.get());
+            for (RangeHashes.Level level : RangeHashes.Level.values()) {
+                String name = level.name().toLowerCase();
+                status.put(name + "sCompared", compared(level).get());
+                status.put(name + "sMismatched", mismatched(level).get());
+            }
+            status.put("checksumsTransferred", checksumsTransferred.get());
+            status.put("rowsTransferred", rowsTransferred.get());
+            status.put("missingInBackend", missingRows.get());
+            status.put("extraInBackend", extraRows.get());
+            status.put("missing", new TreeMap<>(missing));
+            status.put("extra", new TreeMap<>(extra));
+            return status;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.msbackend.stats;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.CDRHistoryReader;
+import org.example.msbackend.ingest.WarmupWatermark;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per service type, per minute counters over a sliding 24h ring, kept in memory so the dashboard's
+// live numbers never touch MySQL. The window slides with the newest startDateTime seen (not the wall
+// clock), since the loader generates a whole day of timestamps up front.
+@Component
+public class LiveRollupEngine {
+
+    public static final int WINDOW_MINUTES = 24 * 60;
+    private static final Logger logger = LoggerFactory.getLogger(LiveRollupEngine.class);
+
+    // slots[service][slot] holds the counters of the epoch minute the slot currently counts; a record for a
+    // newer minute swaps in fresh counters with a CAS. Nothing is ever reset in place, so ingest and the
+    // warm-up scan running beside it need no lock: an add racing the swap lands in the old minute's counters.
+    @SuppressWarnings("unchecked")
+    private final AtomicReferenceArray<Slot>[] slots = new AtomicReferenceArray[ServiceTypes.names.length];
+    private final AtomicLong newestMinute = new AtomicLong(StartDateTimes.INVALID);
+    private final WarmupWatermark watermark = new WarmupWatermark();
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public LiveRollupEngine() {
+        for (int service = 0; service < ServiceTypes.names.length; service++) {
+            slots[service] = new AtomicReferenceArray<>(WINDOW_MINUTES);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        for (CDR cdr : event.cdrs()) {
+            if (watermark.accepts(cdr)) {
+                record(cdr);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        String newest = jdbcTemplate.queryForObject("SELECT MAX(startDateTime) FROM cdrs", String.class);
+        long newestStart = StartDateTimes.epochMinute(newest);
+        if (newestStart == StartDateTimes.INVALID) {
+            watermark.warmedThrough(historyReader.snapshotId(watermark));
+            return;
+        }
+        String windowStart = StartDateTimes.formatEpochMinute(newestStart - WINDOW_MINUTES + 1);
+        long[] loaded = {0};
+        long snapshotId = historyReader.read("startDateTime >= ?", new Object[]{windowStart}, watermark, cdr -> {
+            record(cdr);
+            loaded[0]++;
+        });
+        watermark.warmedThrough(snapshotId);
+        logger.info("Live rollups warmed up with {} CDRs since {}", loaded[0], windowStart);
+    }
+
+    public void record(CDR cdr) {
+        int service = ServiceTypes.indexOf(cdr.getServiceType());
+        long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+        if (service == ServiceTypes.UNKNOWN || minute == StartDateTimes.INVALID) {
+            return;
+        }
+        long newest = newestMinute.accumulateAndGet(minute, Math::max);
+        if (minute <= newest - WINDOW_MINUTES) {
+            return;
+        }
+
+        int slot = (int) Math.floorMod(minute, (long) WINDOW_MINUTES);
+        AtomicReferenceArray<Slot> ring = slots[service];
+        Slot current = ring.get(slot);
+        while (current == null || current.minute != minute) {
+            if (current != null && current.minute > minute) {
+                return; // the slot already moved on to a newer minute than this late record
+            }
+            Slot claimed = new Slot(minute);
+            if (ring.compareAndSet(slot, current, claimed)) {
+                current = claimed;
+                break;
+            }
+            current = ring.get(slot);
+        }
+        current.count.increment();
+        current.usage.add(cdr.getUsage());
+    }
+
+    public long newestMinute() {
+        return newestMinute.get();
+    }
+
+    // The newest `minutes` minutes (at most 24h) for one service, oldest first
+    public List<Bucket> minutes(int service, int minutes) {
+        long newest = newestMinute.get();
+        List<Bucket> buckets = new ArrayList<>();
+        if (newest == StartDateTimes.INVALID) {
+            return buckets;
+        }
+        int span = Math.max(1, Math.min(minutes, WINDOW_MINUTES));
+        for (long minute = newest - span + 1; minute <= newest; minute++) {
+            int slot = (int) Math.floorMod(minute, (long) WINDOW_MINUTES);
+            Slot counted = slots[service].get(slot);
+            boolean live = counted != null && counted.minute == minute;
+            buckets.add(new Bucket(minute, live ? counted.count.sum() : 0, live ? counted.usage.sum() : 0));
+        }
+        return buckets;
+    }
+
+    // Clock hours covering the window, oldest first
+    public List<Bucket> hours(int service) {
+        List<Bucket> hours = new ArrayList<>();
+        long currentHour = -1;
+        long count = 0;
+        double sum = 0;
+        for (Bucket minute : minutes(service, WINDOW_MINUTES)) {
+            long hour = Math.floorDiv(minute.epochMinute(), 60L) * 60;
+            if (hour != currentHour && currentHour != -1) {
+                hours.add(new Bucket(currentHour, count, sum));
+                count = 0;
+                sum = 0;
+            }
+            currentHour = hour;
+            count += minute.count();
+            sum += minute.usage();
+        }
+        if (currentHour != -1) {
+            hours.add(new Bucket(currentHour, count, sum));
+        }
+        return hours;
+    }
+
+    public Bucket total(int service) {
+        long count = 0;
+        double sum = 0;
+        for (Bucket minute : minutes(service, WINDOW_MINUTES)) {
+            count += minute.count();
+            sum += minute.usage();
+        }
+        return new Bucket(newestMinute.get(), count, sum);
+    }
+
+    private static final class Slot {
+        final long minute;
+        final LongAdder count = new LongAdder();
+        final DoubleAdder usage = new DoubleAdder();
+
+        Slot(long minute) {
+            this.minute = minute;
+        }
+    }
+
+    public record Bucket(long epochMinute, long count, double usage) {
+        public String getStart() {
+            return StartDateTimes.formatEpochMinute(epochMinute);
+        }
+    }
+}
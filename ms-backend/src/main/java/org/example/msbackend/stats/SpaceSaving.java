@@ -0,0 +1,132 @@
+package org.example.msbackend.stats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Weighted Space-Saving summary (Metwally et al.) over at most `capacity` keys. A key that is not tracked
+// takes over the smallest counter and inherits its count as error, so a tracked count overestimates the
+// true total by at most its error, and any untracked key's total is at most min().
+// Counters sit in a min-heap so both the update and the replacement are O(log capacity). Not thread-safe.
+public class SpaceSaving {
+
+    private final int capacity;
+    private final String[] keys;
+    private final double[] counts;
+    private final double[] errors;
+    private final Map<String, Integer> positions;
+    private int size;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("❌ Space-Saving capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.keys = new String[capacity];
+        this.counts = new double[capacity];
+        this.errors = new double[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    public void add(String key, double weight) {
+        if (key == null || weight <= 0) {
+            return;
+        }
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position] += weight;
+            siftDown(position);
+            return;
+        }
+        if (size < capacity) {
+            int slot = size++;
+            keys[slot] = key;
+            counts[slot] = weight;
+            errors[slot] = 0;
+            positions.put(key, slot);
+            siftUp(slot);
+            return;
+        }
+        double min = counts[0];
+        positions.remove(keys[0]);
+        keys[0] = key;
+        counts[0] = min + weight;
+        errors[0] = min;
+        positions.put(key, 0);
+        siftDown(0);
+    }
+
+    // Upper bound on the total of any key that is not tracked
+    public double min() {
+        return size < capacity ? 0 : counts[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String key(int index) {
+        return keys[index];
+    }
+
+    public double count(int index) {
+        return counts[index];
+    }
+
+    public double error(int index) {
+        return errors[index];
+    }
+
+    // Heap index of the key, or -1 when it is not tracked
+    public int indexOf(String key) {
+        Integer position = positions.get(key);
+        return position == null ? -1 : position;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+        }
+        positions.clear();
+        size = 0;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (counts[parent] <= counts[index]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+            if (counts[index] <= counts[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        String key = keys[a];
+        double count = counts[a];
+        double error = errors[a];
+        keys[a] = keys[b];
+        counts[a] = counts[b];
+        errors[a] = errors[b];
+        keys[b] = key;
+        counts[b] = count;
+        errors[b] = error;
+        positions.put(keys[a], a);
+        positions.put(keys[b], b);
+    }
+}
@@ -0,0 +1,254 @@
+package org.example.msbackend.stats;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.CDRHistoryReader;
+import org.example.msbackend.ingest.WarmupWatermark;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Top talkers (anum with the most call minutes, SMS or data MB) per service type over the newest 24 clock
+// hours, in bounded memory: one Space-Saving summary per service and hour, merged when asked. Like
+// LiveRollupEngine the window follows the newest startDateTime seen. The merged ranking is cached until
+// the next batch, and a scheduled job checks it against an exact GROUP BY in MySQL.
+@Component
+public class TopTalkersTracker {
+
+    public static final int WINDOW_HOURS = 24;
+    public static final int MAX_TOP = 100;
+    private static final Logger logger = LoggerFactory.getLogger(TopTalkersTracker.class);
+    private static final String[] METRICS = {"minutes", "count", "MB"};
+
+    private final int capacity;
+    private final SpaceSaving[][] summaries = new SpaceSaving[ServiceTypes.names.length][WINDOW_HOURS];
+    private final long[][] slotHour = new long[ServiceTypes.names.length][WINDOW_HOURS];
+    private final Ranking[] rankings = new Ranking[ServiceTypes.names.length];
+    private final Reconciliation[] reconciliations = new Reconciliation[ServiceTypes.names.length];
+    private final WarmupWatermark watermark = new WarmupWatermark();
+    private long newestHour = StartDateTimes.INVALID;
+    private long version;
+
+    @Value("${cdr.top.reconcile-n:10}")
+    private int reconcileN;
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public TopTalkersTracker(@Value("${cdr.top.capacity:1000}") int capacity) {
+        this.capacity = capacity;
+        for (int service = 0; service < ServiceTypes.names.length; service++) {
+            Arrays.fill(slotHour[service], StartDateTimes.INVALID);
+            for (int slot = 0; slot < WINDOW_HOURS; slot++) {
+                summaries[service][slot] = new SpaceSaving(capacity);
+            }
+        }
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        synchronized (this) {
+            for (CDR cdr : event.cdrs()) {
+                if (watermark.accepts(cdr)) {
+                    record(cdr);
+                }
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        String newest = jdbcTemplate.queryForObject("SELECT MAX(startDateTime) FROM cdrs", String.class);
+        long newestStart = StartDateTimes.epochMinute(newest);
+        if (newestStart == StartDateTimes.INVALID) {
+            watermark.warmedThrough(historyReader.snapshotId(watermark));
+            return;
+        }
+        String windowStart = StartDateTimes.formatEpochMinute(windowStartMinute(Math.floorDiv(newestStart, 60L)));
+        // locked per row: holding the monitor across read() could deadlock with an ingest that is
+        // committing (it holds the rollup lock that read() waits for, then calls onIngested)
+        long snapshotId = historyReader.read("startDateTime >= ?", new Object[]{windowStart}, watermark, cdr -> {
+            synchronized (this) {
+                record(cdr);
+            }
+        });
+        watermark.warmedThrough(snapshotId);
+        logger.info("Top talkers warmed up from CDRs since {}", windowStart);
+    }
+
+    // Caller holds the monitor
+    private void record(CDR cdr) {
+        int service = ServiceTypes.indexOf(cdr.getServiceType());
+        long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+        if (service == ServiceTypes.UNKNOWN || minute == StartDateTimes.INVALID) {
+            return;
+        }
+        long hour = Math.floorDiv(minute, 60L);
+        newestHour = newestHour == StartDateTimes.INVALID ? hour : Math.max(newestHour, hour);
+        if (hour <= newestHour - WINDOW_HOURS) {
+            return;
+        }
+        int slot = (int) Math.floorMod(hour, (long) WINDOW_HOURS);
+        if (slotHour[service][slot] > hour) {
+            return; // the slot already moved on to a newer hour than this late record
+        }
+        if (slotHour[service][slot] != hour) {
+            slotHour[service][slot] = hour;
+            summaries[service][slot].clear();
+        }
+        summaries[service][slot].add(cdr.getAnum(), cdr.getUsage());
+        version++;
+    }
+
+    // The n (at most MAX_TOP) largest anums of one service; answered from the cached ranking until the next batch
+    public synchronized Map<String, Object> top(int service, int n) {
+        Ranking ranking = rankings[service];
+        if (ranking == null || ranking.version != version) {
+            ranking = rank(service);
+            rankings[service] = ranking;
+        }
+        int limit = Math.max(1, Math.min(n, MAX_TOP));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("serviceType", ServiceTypes.names[service]);
+        response.put("metric", METRICS[service]);
+        response.put("windowStart", newestHour == StartDateTimes.INVALID ? null
+                : StartDateTimes.formatEpochMinute(windowStartMinute(newestHour)));
+        response.put("windowEnd", newestHour == StartDateTimes.INVALID ? null
+                : StartDateTimes.formatEpochMinute((newestHour + 1) * 60));
+        response.put("capacityPerHour", capacity);
+        // any anum that is not listed has at most this total in the window
+        response.put("unlistedAtMost", ranking.unseenBound);
+        response.put("top", ranking.talkers.subList(0, Math.min(limit, ranking.talkers.size())));
+        response.put("reconciliation", reconciliations[service]);
+        return response;
+    }
+
+    // Compares the sketch's top list with an exact GROUP BY over the same hours, for every service
+    @Scheduled(fixedDelayString = "${cdr.top.reconcile-ms:900000}", initialDelayString = "${cdr.top.reconcile-ms:900000}")
+    public void reconcile() {
+        if (!watermark.isWarm()) {
+            return;
+        }
+        for (int service = 0; service < ServiceTypes.names.length; service++) {
+            long hour;
+            List<Talker> sketchTop;
+            synchronized (this) {
+                if (newestHour == StartDateTimes.INVALID) {
+                    return;
+                }
+                hour = newestHour;
+                List<Talker> ranked = rank(service).talkers;
+                sketchTop = ranked.subList(0, Math.min(reconcileN, ranked.size()));
+            }
+            String from = StartDateTimes.formatEpochMinute(windowStartMinute(hour));
+            String to = StartDateTimes.formatEpochMinute((hour + 1) * 60);
+            List<Map<String, Object>> exact = jdbcTemplate.queryForList(
+                    "SELECT anum, SUM(`usage`) AS total FROM cdr_records " +
+                            "WHERE serviceType = ? AND startDateTime >= ? AND startDateTime < ? " +
+                            "GROUP BY anum ORDER BY total DESC LIMIT ?",
+                    ServiceTypes.names[service], from, to, reconcileN);
+
+            Set<String> sketchKeys = new HashSet<>();
+            sketchTop.forEach(talker -> sketchKeys.add(talker.anum()));
+            int overlap = 0;
+            double maxDeviation = 0;
+            synchronized (this) {
+                for (Map<String, Object> row : exact) {
+                    String anum = (String) row.get("anum");
+                    double total = ((Number) row.get("total")).doubleValue();
+                    if (sketchKeys.contains(anum)) {
+                        overlap++;
+                    }
+                    maxDeviation = Math.max(maxDeviation, Math.abs(estimate(service, anum) - total));
+                }
+                reconciliations[service] = new Reconciliation(LocalDateTime.now().format(StartDateTimes.formatter),
+                        from, exact.size(), exact.isEmpty() ? 1.0 : (double) overlap / exact.size(), maxDeviation);
+            }
+            if (overlap < exact.size()) {
+                logger.info("Top talkers for {}: sketch matches {} of the exact top {}, max deviation {}",
+                        ServiceTypes.names[service], overlap, exact.size(), maxDeviation);
+            }
+        }
+    }
+
+    // Merges the live hours: a key missing from a full hourly summary may still have up to that summary's
+    // min() there, which is added to both its estimate and its error
+    private Ranking rank(int service) {
+        double unseenBound = 0;
+        Map<String, double[]> merged = new HashMap<>();
+        for (int slot = 0; slot < WINDOW_HOURS; slot++) {
+            if (!isLive(service, slot)) {
+                continue;
+            }
+            SpaceSaving summary = summaries[service][slot];
+            double min = summary.min();
+            unseenBound += min;
+            for (int i = 0; i < summary.size(); i++) {
+                // count, error, min() of the hours the key was tracked in
+                double[] totals = merged.computeIfAbsent(summary.key(i), k -> new double[3]);
+                totals[0] += summary.count(i);
+                totals[1] += summary.error(i);
+                totals[2] += min;
+            }
+        }
+        List<Talker> talkers = new ArrayList<>(merged.size());
+        for (Map.Entry<String, double[]> entry : merged.entrySet()) {
+            double[] totals = entry.getValue();
+            double untracked = unseenBound - totals[2];
+            talkers.add(new Talker(entry.getKey(), totals[0] + untracked, totals[1] + untracked));
+        }
+        talkers.sort(Comparator.comparingDouble(Talker::estimate).reversed());
+        return new Ranking(version, unseenBound, List.copyOf(talkers.subList(0, Math.min(MAX_TOP, talkers.size()))));
+    }
+
+    private double estimate(int service, String anum) {
+        double estimate = 0;
+        for (int slot = 0; slot < WINDOW_HOURS; slot++) {
+            if (!isLive(service, slot)) {
+                continue;
+            }
+            SpaceSaving summary = summaries[service][slot];
+            int index = summary.indexOf(anum);
+            estimate += index >= 0 ? summary.count(index) : summary.min();
+        }
+        return estimate;
+    }
+
+    private boolean isLive(int service, int slot) {
+        long hour = slotHour[service][slot];
+        return hour != StartDateTimes.INVALID && hour > newestHour - WINDOW_HOURS;
+    }
+
+    private static long windowStartMinute(long newestHour) {
+        return (newestHour - WINDOW_HOURS + 1) * 60;
+    }
+
+    private record Ranking(long version, double unseenBound, List<Talker> talkers) {
+    }
+
+    // estimate never undercounts; the true total is at least estimate - error
+    public record Talker(String anum, double estimate, double error) {
+        public double getLowerBound() {
+            return estimate - error;
+        }
+    }
+
+    public record Reconciliation(String checkedAt, String windowStart, int exactRows, double overlap, double maxDeviation) {
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.msbackend.stats;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+// HDR-style log-linear histogram of usage values. Values are kept in thousandths; below 128 every value
+// has its own bucket, above that each power of two is split into 64 linear buckets, so a reported
+// percentile is within 1/64 (about 1.6%) of the true value. Histograms merge by adding bucket counts.
+// Stored sparsely (varint index deltas and counts), which is a few hundred bytes for an hour of CDRs.
+public class UsageHistogram {
+
+    public static final double UNIT = 1000.0;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    private long[] counts = new long[SUB_BUCKETS];
+    private long totalCount;
+    private long minUnits = Long.MAX_VALUE;
+    private long maxUnits = Long.MIN_VALUE;
+
+    public void record(double usage) {
+        long units = Math.max(0, Math.round(usage * UNIT));
+        int index = indexOf(units);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        }
+        counts[index]++;
+        totalCount++;
+        minUnits = Math.min(minUnits, units);
+        maxUnits = Math.max(maxUnits, units);
+    }
+
+    public void merge(UsageHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        minUnits = Math.min(minUnits, other.minUnits);
+        maxUnits = Math.max(maxUnits, other.maxUnits);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public double getMin() {
+        return totalCount == 0 ? 0 : minUnits / UNIT;
+    }
+
+    public double getMax() {
+        return totalCount == 0 ? 0 : maxUnits / UNIT;
+    }
+
+    // The highest value in the bucket holding the given rank, capped by the exact max
+    public double valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestUnitsAt(i), maxUnits) / UNIT;
+            }
+        }
+        return maxUnits / UNIT;
+    }
+
+    // Each non-empty bucket as its middle value (clamped to the exact min and max) and count
+    public void forEachBucket(BucketConsumer consumer) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                long low = Math.max(lowestUnitsAt(i), minUnits);
+                long high = Math.min(highestUnitsAt(i), maxUnits);
+                consumer.accept((low + high) / 2.0 / UNIT, counts[i]);
+            }
+        }
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarLong(out, totalCount == 0 ? 0 : minUnits);
+        writeVarLong(out, totalCount == 0 ? 0 : maxUnits);
+        int previous = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                writeVarLong(out, i - previous);
+                writeVarLong(out, counts[i]);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static UsageHistogram fromBytes(byte[] bytes) {
+        UsageHistogram histogram = new UsageHistogram();
+        int[] position = {0};
+        long min = readVarLong(bytes, position);
+        long max = readVarLong(bytes, position);
+        int index = -1;
+        while (position[0] < bytes.length) {
+            index += (int) readVarLong(bytes, position);
+            long count = readVarLong(bytes, position);
+            if (index >= histogram.counts.length) {
+                histogram.counts = Arrays.copyOf(histogram.counts, Math.max(index + 1, histogram.counts.length * 2));
+            }
+            histogram.counts[index] += count;
+            histogram.totalCount += count;
+        }
+        if (histogram.totalCount > 0) {
+            histogram.minUnits = min;
+            histogram.maxUnits = max;
+        }
+        return histogram;
+    }
+
+    static int indexOf(long units) {
+        if (units < SUB_BUCKETS) {
+            return (int) units;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(units) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (units >>> shift) - HALF;
+    }
+
+    static long lowestUnitsAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        return (long) ((index - SUB_BUCKETS) % HALF + HALF) << shift;
+    }
+
+    static long highestUnitsAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        return lowestUnitsAt(index) + (1L << ((index - SUB_BUCKETS) / HALF + 1)) - 1;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] bytes, int[] position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(double value, long count);
+    }
+}
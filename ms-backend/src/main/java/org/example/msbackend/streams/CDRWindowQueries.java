@@ -0,0 +1,71 @@
+package org.example.msbackend.streams;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.kafka.streams.KafkaStreamsInteractiveQueryService;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Interactive queries over CDRWindowTopology's window stores. A key lives on the instance that owns its
+// partition; the caller asks ownerOf() first and forwards the request there when it is not this one.
+@Service
+@ConditionalOnProperty(name = "cdr.streams.enabled", havingValue = "true", matchIfMissing = true)
+public class CDRWindowQueries {
+
+    private final KafkaStreamsInteractiveQueryService queryService;
+    private final RestClient restClient = RestClient.create();
+
+    public CDRWindowQueries(KafkaStreamsInteractiveQueryService queryService) {
+        this.queryService = queryService;
+    }
+
+    // The instance holding the key's windows, or null when it is this one
+    public HostInfo ownerOf(String store, String key) {
+        HostInfo owner = queryService.getKafkaStreamsApplicationHostInfo(store, key, Serdes.String().serializer());
+        return owner == null || owner.equals(queryService.getCurrentKafkaStreamsApplicationHostInfo()) ? null : owner;
+    }
+
+    // Windows of the key starting in [from, to], oldest first; null bounds are open
+    public List<WindowedUsage> fetchLocal(String store, String key, LocalDateTime from, LocalDateTime to) {
+        ReadOnlyWindowStore<String, UsageAggregate> windows =
+                queryService.retrieveQueryableStore(store, QueryableStoreTypes.windowStore());
+        Instant lower = from == null ? Instant.EPOCH : Instant.ofEpochSecond(StartDateTimes.epochMinute(from) * 60);
+        Instant upper = to == null ? Instant.ofEpochMilli(Long.MAX_VALUE) : Instant.ofEpochSecond(StartDateTimes.epochMinute(to) * 60);
+
+        List<WindowedUsage> result = new ArrayList<>();
+        try (WindowStoreIterator<UsageAggregate> iterator = windows.fetch(key, lower, upper)) {
+            iterator.forEachRemaining(entry -> result.add(WindowedUsage.of(key, entry.key, store, entry.value)));
+        }
+        return result;
+    }
+
+    public List<WindowedUsage> fetchRemote(HostInfo owner, String pathAndQuery) {
+        return restClient.get()
+                .uri("http://" + owner.host() + ":" + owner.port() + pathAndQuery)
+                .retrieve()
+                .body(new ParameterizedTypeReference<>() {
+                });
+    }
+
+    public record WindowedUsage(String key, String windowStart, String windowEnd, long count, double usage, double max) {
+
+        static WindowedUsage of(String key, long windowStartMs, String store, UsageAggregate aggregate) {
+            long startMinute = windowStartMs / 60_000;
+            long sizeMinutes = CDRWindowTopology.windowSize(store).toMinutes();
+            return new WindowedUsage(key, StartDateTimes.formatEpochMinute(startMinute),
+                    StartDateTimes.formatEpochMinute(startMinute + sizeMinutes),
+                    aggregate.count(), aggregate.usage(), aggregate.max());
+        }
+    }
+}
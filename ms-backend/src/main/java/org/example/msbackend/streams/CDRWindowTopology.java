@@ -0,0 +1,84 @@
+package org.example.msbackend.streams;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.processor.TimestampExtractor;
+import org.apache.kafka.streams.state.WindowStore;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.utils.StartDateTimes;
+import org.springframework.kafka.support.serializer.JsonSerde;
+
+import java.time.Duration;
+
+// Windowed usage aggregates straight off cdr-topic, kept in RocksDB window stores that the
+// /api/streams endpoints read through interactive queries:
+//   - per service type, 1 minute tumbling windows and 1 hour windows hopping every 5 minutes
+//   - per anum, 1 hour tumbling windows (a day is 24 of them, fetched as one range, instead of a
+//     24h hopping window that would write every CDR 24 times)
+// Windows follow startDateTime, not the Kafka timestamp. The loader produces a whole day of timestamps
+// in random order, so windows accept records up to a day late and stores keep two days.
+public class CDRWindowTopology {
+
+    public static final String INPUT_TOPIC = "cdr-topic";
+    public static final String SERVICE_MINUTES_STORE = "cdr-service-minutes";
+    public static final String SERVICE_HOURS_HOPPING_STORE = "cdr-service-hours-hopping";
+    public static final String SUBSCRIBER_HOURS_STORE = "cdr-subscriber-hours";
+    public static final Duration GRACE = Duration.ofDays(1);
+    public static final Duration RETENTION = Duration.ofDays(2);
+
+    private CDRWindowTopology() {
+    }
+
+    // Returns the filtered source stream
+    public static KStream<String, CDR> build(StreamsBuilder builder) {
+        Serde<CDR> cdrSerde = new JsonSerde<>(CDR.class).ignoreTypeHeaders().noTypeInfo();
+        Serde<UsageAggregate> aggregateSerde = new JsonSerde<>(UsageAggregate.class).ignoreTypeHeaders().noTypeInfo();
+
+        KStream<String, CDR> cdrs = builder
+                .stream(INPUT_TOPIC, Consumed.with(Serdes.String(), cdrSerde).withTimestampExtractor(startDateTimeExtractor()))
+                .filter((key, cdr) -> cdr != null && cdr.getServiceType() != null && cdr.getAnum() != null);
+
+        KGroupedStream<String, CDR> byService = cdrs.groupBy(
+                (key, cdr) -> cdr.getServiceType().toUpperCase(), Grouped.with("by-service", Serdes.String(), cdrSerde));
+        aggregate(byService.windowedBy(TimeWindows.ofSizeAndGrace(Duration.ofMinutes(1), GRACE)),
+                SERVICE_MINUTES_STORE, aggregateSerde);
+        aggregate(byService.windowedBy(TimeWindows.ofSizeAndGrace(Duration.ofHours(1), GRACE).advanceBy(Duration.ofMinutes(5))),
+                SERVICE_HOURS_HOPPING_STORE, aggregateSerde);
+
+        KGroupedStream<String, CDR> bySubscriber = cdrs.groupBy(
+                (key, cdr) -> cdr.getAnum(), Grouped.with("by-subscriber", Serdes.String(), cdrSerde));
+        aggregate(bySubscriber.windowedBy(TimeWindows.ofSizeAndGrace(Duration.ofHours(1), GRACE)),
+                SUBSCRIBER_HOURS_STORE, aggregateSerde);
+        return cdrs;
+    }
+
+    public static Duration windowSize(String store) {
+        return store.equals(SERVICE_MINUTES_STORE) ? Duration.ofMinutes(1) : Duration.ofHours(1);
+    }
+
+    private static void aggregate(TimeWindowedKStream<String, CDR> windowed, String store, Serde<UsageAggregate> aggregateSerde) {
+        windowed.aggregate(
+                () -> UsageAggregate.EMPTY,
+                (key, cdr, aggregate) -> aggregate.add(cdr.getUsage()),
+                Materialized.<String, UsageAggregate, WindowStore<Bytes, byte[]>>as(store)
+                        .withKeySerde(Serdes.String())
+                        .withValueSerde(aggregateSerde)
+                        .withRetention(RETENTION));
+    }
+
+    // Unreadable startDateTimes fall back to the record's own timestamp
+    static TimestampExtractor startDateTimeExtractor() {
+        return (record, partitionTime) -> {
+            if (record.value() instanceof CDR cdr) {
+                long minute = StartDateTimes.epochMinute(cdr.getStartDateTime());
+                if (minute != StartDateTimes.INVALID) {
+                    return minute * 60_000;
+                }
+            }
+            return record.timestamp();
+        };
+    }
+}
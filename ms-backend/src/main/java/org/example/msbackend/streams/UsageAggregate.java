@@ -0,0 +1,11 @@
+package org.example.msbackend.streams;
+
+// Value of every window store in CDRWindowTopology
+public record UsageAggregate(long count, double usage, double max) {
+
+    public static final UsageAggregate EMPTY = new UsageAggregate(0, 0, 0);
+
+    public UsageAggregate add(double recordUsage) {
+        return new UsageAggregate(count + 1, usage + recordUsage, count == 0 ? recordUsage : Math.max(max, recordUsage));
+    }
+}
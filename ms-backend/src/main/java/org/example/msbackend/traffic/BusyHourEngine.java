@@ -0,0 +1,311 @@
+package org.example.msbackend.traffic;
+
+import jakarta.annotation.PreDestroy;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.CDRHistoryReader;
+import org.example.msbackend.ingest.WarmupWatermark;
+import org.example.msbackend.utils.ServiceTypes;
+import org.example.msbackend.utils.StartDateTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Concurrent calls per minute, the basis of busy-hour and Erlang figures. Every CALL record is the interval
+// [start, start + usage minutes rounded up); per day the engine keeps the interval endpoints packed as
+// minute << 1 | isStart, so sorting them puts a call's end before another's start in the same minute.
+// A day's curve is a sweep over its sorted endpoints. Endpoints of new records are appended unsorted and
+// the day is marked dirty; a refresh sorts just that tail, merges it into the sorted prefix and sweeps
+// again, with the dirty days spread over a small thread pool. Calls running past midnight are split
+// across the days they cover.
+@Component
+public class BusyHourEngine {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    private static final Logger logger = LoggerFactory.getLogger(BusyHourEngine.class);
+    // the loader's calls are far shorter; anything longer is treated as a day-long call
+    private static final int MAX_CALL_MINUTES = MINUTES_PER_DAY;
+
+    private final ConcurrentMap<Long, DaySweep> days = new ConcurrentHashMap<>();
+    private final WarmupWatermark watermark = new WarmupWatermark();
+    private final int retentionDays;
+    private final ExecutorService workers;
+    private volatile long newestDay = Long.MIN_VALUE;
+
+    @Autowired
+    private CDRHistoryReader historyReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public BusyHourEngine(@Value("${cdr.traffic.retention-days:90}") int retentionDays,
+                          @Value("${cdr.traffic.threads:0}") int threads) {
+        this.retentionDays = retentionDays;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "busy-hour");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        for (CDR cdr : event.cdrs()) {
+            if (watermark.accepts(cdr)) {
+                record(cdr);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        // only the retained days, counted back from the newest record
+        String newest = jdbcTemplate.queryForObject("SELECT MAX(startDateTime) FROM cdr_records WHERE serviceType = ?",
+                String.class, ServiceTypes.names[ServiceTypes.CALL]);
+        long newestMinute = StartDateTimes.epochMinute(newest);
+        if (newestMinute == StartDateTimes.INVALID) {
+            watermark.warmedThrough(historyReader.snapshotId(watermark));
+            return;
+        }
+        String windowStart = StartDateTimes.formatEpochMinute(
+                (Math.floorDiv(newestMinute, MINUTES_PER_DAY) - retentionDays + 1) * MINUTES_PER_DAY);
+        long snapshotId = historyReader.read("serviceType = ? AND startDateTime >= ?",
+                new Object[]{ServiceTypes.names[ServiceTypes.CALL], windowStart}, watermark, this::record);
+        watermark.warmedThrough(snapshotId);
+        refresh();
+        logger.info("Busy-hour engine warmed up with {} days of calls", days.size());
+    }
+
+    private void record(CDR cdr) {
+        if (ServiceTypes.indexOf(cdr.getServiceType()) != ServiceTypes.CALL || !(cdr.getUsage() > 0)) {
+            return;
+        }
+        long start = StartDateTimes.epochMinute(cdr.getStartDateTime());
+        if (start == StartDateTimes.INVALID) {
+            return;
+        }
+        long end = start + (long) Math.min(MAX_CALL_MINUTES, Math.ceil(cdr.getUsage()));
+        boolean first = true;
+        while (start < end) {
+            long day = Math.floorDiv(start, MINUTES_PER_DAY);
+            long dayStart = day * MINUTES_PER_DAY;
+            long segmentEnd = Math.min(end, dayStart + MINUTES_PER_DAY);
+            days.computeIfAbsent(day, DaySweep::new).add((int) (start - dayStart), (int) (segmentEnd - dayStart), first);
+            first = false;
+            start = segmentEnd;
+        }
+        long day = Math.floorDiv(end - 1, MINUTES_PER_DAY);
+        // ingest and the warm-up scan both get here
+        synchronized (days) {
+            if (day > newestDay) {
+                newestDay = day;
+            }
+        }
+    }
+
+    // Precomputes the days changed since the last refresh and drops the ones past retention
+    @Scheduled(fixedDelayString = "${cdr.traffic.refresh-ms:10000}", initialDelayString = "${cdr.traffic.refresh-ms:10000}")
+    public void refresh() {
+        long oldest = newestDay - retentionDays + 1;
+        days.keySet().removeIf(day -> day < oldest);
+        sweep(days.values().stream().filter(DaySweep::isDirty).toList());
+    }
+
+    // Per day summaries of the days with calls in [from, to); null bounds are open
+    public List<DayTraffic> days(LocalDateTime from, LocalDateTime to) {
+        List<DaySweep> selected = select(from, to);
+        sweep(selected);
+        List<DayTraffic> result = new ArrayList<>(selected.size());
+        for (DaySweep day : selected) {
+            result.add(day.traffic());
+        }
+        return result;
+    }
+
+    // The day whose busy hour carried the most traffic, or null when there are no calls in range
+    public DayTraffic busiest(LocalDateTime from, LocalDateTime to) {
+        DayTraffic busiest = null;
+        for (DayTraffic day : days(from, to)) {
+            if (busiest == null || day.busyHourErlangs() > busiest.busyHourErlangs()) {
+                busiest = day;
+            }
+        }
+        return busiest;
+    }
+
+    // Concurrent calls in each minute of the day, or null if the day has no calls
+    public int[] concurrency(LocalDate date) {
+        DaySweep day = days.get(date.toEpochDay());
+        if (day == null) {
+            return null;
+        }
+        sweep(List.of(day));
+        return day.curve();
+    }
+
+    private List<DaySweep> select(LocalDateTime from, LocalDateTime to) {
+        long fromDay = from == null ? Long.MIN_VALUE : Math.floorDiv(StartDateTimes.epochMinute(from), MINUTES_PER_DAY);
+        // `to` is exclusive: a day is in range if it starts before it
+        long toDay = to == null ? Long.MAX_VALUE : Math.floorDiv(StartDateTimes.epochMinute(to) - 1, MINUTES_PER_DAY);
+        List<DaySweep> selected = new ArrayList<>();
+        for (DaySweep day : days.values()) {
+            if (day.day >= fromDay && day.day <= toDay) {
+                selected.add(day);
+            }
+        }
+        selected.sort(Comparator.comparingLong(day -> day.day));
+        return selected;
+    }
+
+    // Recomputes the dirty ones among the days in parallel, waiting for all of them
+    private void sweep(List<DaySweep> selected) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (DaySweep day : selected) {
+            if (day.isDirty()) {
+                tasks.add(() -> {
+                    day.recompute();
+                    return null;
+                });
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        try {
+            for (Future<Void> done : workers.invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("❌ Interrupted while computing concurrent calls", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("❌ Could not compute concurrent calls", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    // One day's endpoints and its last computed curve. All access is under the instance's monitor.
+    private static final class DaySweep {
+        final long day;
+        int[] endpoints = new int[64];
+        int size;
+        int sorted;
+        int calls;
+        int[] curve = new int[MINUTES_PER_DAY];
+        DayTraffic traffic;
+
+        DaySweep(long day) {
+            this.day = day;
+        }
+
+        synchronized void add(int from, int to, boolean startsHere) {
+            if (size + 2 > endpoints.length) {
+                endpoints = Arrays.copyOf(endpoints, endpoints.length * 2);
+            }
+            endpoints[size++] = from << 1 | 1;
+            endpoints[size++] = to << 1;
+            if (startsHere) {
+                calls++;
+            }
+        }
+
+        synchronized boolean isDirty() {
+            return traffic == null || sorted != size;
+        }
+
+        synchronized int[] curve() {
+            return curve.clone();
+        }
+
+        synchronized DayTraffic traffic() {
+            return traffic;
+        }
+
+        synchronized void recompute() {
+            if (sorted < size) {
+                Arrays.sort(endpoints, sorted, size);
+                if (sorted > 0) {
+                    merge();
+                }
+                sorted = size;
+            }
+
+            // sweep line: the count after the last endpoint at or before a minute is that minute's concurrency
+            int active = 0;
+            int next = 0;
+            int peak = 0;
+            int peakMinute = 0;
+            long callMinutes = 0;
+            for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+                while (next < size && endpoints[next] >> 1 <= minute) {
+                    active += (endpoints[next] & 1) == 1 ? 1 : -1;
+                    next++;
+                }
+                curve[minute] = active;
+                callMinutes += active;
+                if (active > peak) {
+                    peak = active;
+                    peakMinute = minute;
+                }
+            }
+
+            // busy hour: the 60-minute window (on minute boundaries) carrying the most call minutes
+            long window = 0;
+            for (int minute = 0; minute < 60; minute++) {
+                window += curve[minute];
+            }
+            long busiest = window;
+            int busyHourStart = 0;
+            for (int minute = 60; minute < MINUTES_PER_DAY; minute++) {
+                window += curve[minute] - curve[minute - 60];
+                if (window > busiest) {
+                    busiest = window;
+                    busyHourStart = minute - 59;
+                }
+            }
+
+            long dayStart = day * MINUTES_PER_DAY;
+            traffic = new DayTraffic(LocalDate.ofEpochDay(day).toString(), calls, peak,
+                    StartDateTimes.formatEpochMinute(dayStart + peakMinute),
+                    StartDateTimes.formatEpochMinute(dayStart + busyHourStart),
+                    busiest / 60.0, callMinutes / (double) MINUTES_PER_DAY);
+        }
+
+        // Merges the freshly sorted tail [sorted, size) into the sorted prefix [0, sorted)
+        private void merge() {
+            int[] merged = new int[endpoints.length];
+            int left = 0;
+            int right = sorted;
+            int out = 0;
+            while (left < sorted && right < size) {
+                merged[out++] = endpoints[left] <= endpoints[right] ? endpoints[left++] : endpoints[right++];
+            }
+            System.arraycopy(endpoints, left, merged, out, sorted - left);
+            out += sorted - left;
+            System.arraycopy(endpoints, right, merged, out, size - right);
+            endpoints = merged;
+        }
+    }
+
+    // Erlangs are carried traffic: call minutes per minute, over the busy hour and over the whole day
+    public record DayTraffic(String day, int calls, int peakConcurrent, String peakAt,
+                             String busyHourStart, double busyHourErlangs, double dayErlangs) {
+    }
+}
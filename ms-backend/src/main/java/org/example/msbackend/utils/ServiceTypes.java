@@ -0,0 +1,24 @@
+package org.example.msbackend.utils;
+
+// The three service types the loader generates, indexed for array-backed stats. The indexes are the
+// shared org.example.cdrcommon.ServiceTypes ones, which TariffPlan also prices by.
+public class ServiceTypes {
+    public static final String[] names = org.example.cdrcommon.ServiceTypes.names;
+    public static final int CALL = org.example.cdrcommon.ServiceTypes.CALL;
+    public static final int SMS = org.example.cdrcommon.ServiceTypes.SMS;
+    public static final int DATA = org.example.cdrcommon.ServiceTypes.DATA;
+    public static final int UNKNOWN = org.example.cdrcommon.ServiceTypes.UNKNOWN;
+
+    public static int indexOf(String serviceType) {
+        return org.example.cdrcommon.ServiceTypes.indexOf(serviceType);
+    }
+
+    // For request parameters: null means "all", anything unknown is the caller's mistake
+    public static int require(String serviceType) {
+        int index = indexOf(serviceType);
+        if (index == UNKNOWN) {
+            throw new IllegalArgumentException("❌ Unknown service type: " + serviceType + " (expected CALL, SMS or DATA)");
+        }
+        return index;
+    }
+}
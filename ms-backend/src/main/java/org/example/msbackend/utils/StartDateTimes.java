@@ -0,0 +1,72 @@
+package org.example.msbackend.utils;
+
+import org.example.cdrcommon.EpochMinutes;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// startDateTime is stored as "yyyy-MM-dd HH:mm" (see the loader's StartDateTimeGenerator),
+// so plain string comparison on it follows chronological order.
+public class StartDateTimes {
+    public static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    public static final long INVALID = EpochMinutes.INVALID;
+
+    public static String format(LocalDateTime dateTime) {
+        return dateTime.format(formatter);
+    }
+
+    public static String formatEpochMinute(long epochMinute) {
+        return format(LocalDateTime.ofEpochSecond(epochMinute * 60, 0, ZoneOffset.UTC));
+    }
+
+    public static long epochMinute(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    // Allocation-free parse of "yyyy-MM-dd HH:mm" for the per-record ingest paths, shared with the loader's rating
+    public static long epochMinute(CharSequence value) {
+        return EpochMinutes.parse(value);
+    }
+
+    // Months since 1970-01 of an epoch minute, e.g. for monthly allowances
+    public static int epochMonth(long epochMinute) {
+        // Howard Hinnant's civil_from_days, year and month only
+        long z = Math.floorDiv(epochMinute, 24 * 60L) + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) ((year - 1970) * 12 + month - 1);
+    }
+
+    // "yyyy-MM" of an epochMonth() value
+    public static String formatEpochMonth(int epochMonth) {
+        return YearMonth.of(1970 + Math.floorDiv(epochMonth, 12), Math.floorMod(epochMonth, 12) + 1).toString();
+    }
+
+    // Accepts "yyyy-MM-dd", "yyyy-MM-dd HH:mm" or ISO "yyyy-MM-ddTHH:mm[:ss]" request parameters
+    public static LocalDateTime parseBound(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            if (trimmed.length() == 10) {
+                return LocalDate.parse(trimmed).atStartOfDay();
+            }
+            if (trimmed.indexOf('T') > 0) {
+                return LocalDateTime.parse(trimmed);
+            }
+            return LocalDateTime.parse(trimmed, formatter);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("❌ Invalid date: " + value + " (expected yyyy-MM-dd or yyyy-MM-dd HH:mm)");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.example.msbackend.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Pushes every committed ingest batch to connected dashboards as
+// {"type":"batch","cdrs":[...],"counts":{"call":n,...}} where counts is the per service type delta,
+// so clients append rows and bump their charts instead of re-downloading the table.
+// Prepaid threshold crossings go out as {"type":"balance","events":[...]}.
+// On connect a client first gets {"type":"hello","cursor":id}: every CDR above the id will be pushed to it,
+// so it reads what it is missing up to the id from /api/cdrs/changes.
+// Everything is sent from one push thread, in order: the ingest listeners that hand messages over run under
+// the ingest lock and only queue them.
+@Component
+public class CDRPushHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(CDRPushHandler.class);
+    private static final int SEND_TIME_LIMIT_MS = 5_000;
+    private static final int BUFFER_SIZE_LIMIT = 1024 * 1024;
+
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final ExecutorService pusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cdr-push");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CDRPushHandler(ObjectMapper objectMapper, JdbcTemplate jdbcTemplate) {
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pusher.shutdownNow();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // the decorator makes sends thread-safe and drops clients that stop reading
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, BUFFER_SIZE_LIMIT);
+        pusher.execute(() -> {
+            sessions.add(decorated);
+            // Read after the session is registered: a batch committed later is queued after this and pushed
+            // to it, one committed before is at or below the id. No lock needed, the client skips ids it has.
+            try {
+                Long cursor = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM cdrs", Long.class);
+                Map<String, Object> hello = new LinkedHashMap<>();
+                hello.put("type", "hello");
+                hello.put("cursor", cursor);
+                send(decorated, hello);
+            } catch (RuntimeException e) {
+                drop(decorated, e);
+            }
+        });
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        // queued too, so a close can't overtake the registration above
+        pusher.execute(() -> sessions.removeIf(open -> open.getId().equals(session.getId())));
+    }
+
+    @TransactionalEventListener
+    public void onIngested(CDRBatchIngestedEvent event) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        pusher.execute(() -> publish("batch", event.cdrs(), countsByServiceType(event)));
+    }
+
+    public void pushBalanceEvents(List<?> events) {
+        if (sessions.isEmpty() || events.isEmpty()) {
+            return;
+        }
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "balance");
+        message.put("events", List.copyOf(events));
+        pusher.execute(() -> send(message));
+    }
+
+    public int connectedClients() {
+        return sessions.size();
+    }
+
+    private void publish(String type, Object cdrs, Map<String, Long> counts) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", type);
+        message.put("cdrs", cdrs);
+        message.put("counts", counts);
+        send(message);
+    }
+
+    private void send(Map<String, Object> message) {
+        TextMessage text = serialize(message);
+        if (text == null) {
+            return;
+        }
+        for (WebSocketSession session : sessions) {
+            sendTo(session, text);
+        }
+    }
+
+    private void send(WebSocketSession session, Map<String, Object> message) {
+        TextMessage text = serialize(message);
+        if (text != null) {
+            sendTo(session, text);
+        }
+    }
+
+    private TextMessage serialize(Map<String, Object> message) {
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            logger.error("❌ Could not serialize CDR push message", e);
+            return null;
+        }
+    }
+
+    // One failing client (closed, or over the buffer limit, which throws SessionLimitExceededException) is
+    // dropped, and nothing escapes to the sends queued after it
+    private void sendTo(WebSocketSession session, TextMessage text) {
+        try {
+            session.sendMessage(text);
+        } catch (IOException | RuntimeException e) {
+            drop(session, e);
+        }
+    }
+
+    private void drop(WebSocketSession session, Exception cause) {
+        logger.info("Dropping push client {}: {}", session.getId(), cause.getMessage());
+        sessions.remove(session);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException closeFailure) {
+            logger.debug("Push client {} did not close cleanly", session.getId(), closeFailure);
+        }
+    }
+
+    private static Map<String, Long> countsByServiceType(CDRBatchIngestedEvent event) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (CDR cdr : event.cdrs()) {
+            counts.merge(cdr.getServiceType().toLowerCase(), 1L, Long::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,65 @@
+-- Dictionary-encode cdrs: subscriber numbers and service types move to dimension tables and every row keeps
+-- integer keys instead of the strings (9 bytes instead of two VARCHAR numbers and a type name, and the same
+-- again in each secondary index). cdrs is range partitioned by CDRPartitionManager, and partitioned InnoDB
+-- tables cannot have FOREIGN KEY constraints, so the keys are plain columns filled by SubscriberDictionary.
+CREATE TABLE service_types (
+                      id TINYINT UNSIGNED AUTO_INCREMENT PRIMARY KEY,
+                      name VARCHAR(16) NOT NULL,
+                      UNIQUE KEY uk_service_types_name (name)
+) ENGINE=InnoDB;
+
+INSERT INTO service_types (name) VALUES ('CALL'), ('SMS'), ('DATA');
+INSERT INTO service_types (name)
+SELECT DISTINCT UPPER(serviceType) FROM cdrs WHERE UPPER(serviceType) NOT IN ('CALL', 'SMS', 'DATA');
+
+CREATE TABLE subscribers (
+                      id INT AUTO_INCREMENT PRIMARY KEY,
+                      number VARCHAR(255) NOT NULL,
+                      UNIQUE KEY uk_subscribers_number (number)
+) ENGINE=InnoDB;
+
+INSERT INTO subscribers (number)
+SELECT anum FROM cdrs
+UNION
+SELECT bnum FROM cdrs WHERE bnum IS NOT NULL;
+
+ALTER TABLE cdrs
+    ADD COLUMN anumId INT NULL,
+    ADD COLUMN bnumId INT NULL,
+    ADD COLUMN serviceTypeId TINYINT UNSIGNED NULL;
+
+UPDATE cdrs c
+    JOIN subscribers a ON a.number = c.anum
+    LEFT JOIN subscribers b ON b.number = c.bnum
+    JOIN service_types t ON t.name = c.serviceType
+SET c.anumId = a.id, c.bnumId = b.id, c.serviceTypeId = t.id;
+
+-- the string indexes go with their columns; the integer ones replace those still needed
+ALTER TABLE cdrs
+    DROP INDEX idx_cdrs_service_start,
+    DROP INDEX idx_cdrs_service_anum,
+    DROP INDEX idx_cdrs_service_bnum,
+    DROP INDEX idx_cdrs_service_usage,
+    DROP INDEX idx_cdrs_anum_start,
+    DROP INDEX idx_cdrs_bnum_start,
+    DROP INDEX idx_cdrs_service_start_time,
+    DROP COLUMN anum,
+    DROP COLUMN bnum,
+    DROP COLUMN serviceType,
+    MODIFY anumId INT NOT NULL,
+    MODIFY serviceTypeId TINYINT UNSIGNED NOT NULL,
+    ADD INDEX idx_cdrs_service_start (serviceTypeId, startDateTime),
+    ADD INDEX idx_cdrs_service_usage (serviceTypeId, `usage`),
+    ADD INDEX idx_cdrs_anum_start (anumId, startDateTime, id),
+    ADD INDEX idx_cdrs_bnum_start (bnumId, startDateTime, id),
+    ADD INDEX idx_cdrs_service_start_time (serviceTypeId, startTime);
+
+-- The old row shape for reads (the CDR entity, history and rebuild queries). MERGE keeps predicates on the
+-- names index lookups: anum = ? resolves the subscriber by uk_subscribers_number, then idx_cdrs_anum_start.
+CREATE ALGORITHM = MERGE VIEW cdr_records AS
+SELECT c.id, a.number AS anum, b.number AS bnum, t.name AS serviceType, c.`usage`, c.startDateTime, c.startTime,
+       c.anumId, c.bnumId, c.serviceTypeId
+FROM cdrs c
+         JOIN subscribers a ON a.id = c.anumId
+         LEFT JOIN subscribers b ON b.id = c.bnumId
+         JOIN service_types t ON t.id = c.serviceTypeId;
@@ -0,0 +1,11 @@
+-- CDRs whose startDateTime never parsed, so they have no startTime and cannot live in the day-partitioned
+-- cdrs. StartTimeBackfillJob moves them here; fix startDateTime and insert them back by hand.
+CREATE TABLE cdrs_quarantine (
+                      id BIGINT PRIMARY KEY,
+                      anumId INT NOT NULL,
+                      bnumId INT NULL,
+                      serviceTypeId TINYINT UNSIGNED NOT NULL,
+                      `usage` DOUBLE NOT NULL,
+                      startDateTime VARCHAR(255) NOT NULL,
+                      quarantinedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB;
@@ -0,0 +1,5 @@
+-- Progress of the distinct sketch backfill (see CDRDistinctService.backfill), like the histogram one in V7.
+-- Rows above throughId are sketched by ingest. A database whose sketches were already backfilled goes
+-- through the rows once more: adding a CDR to a sketch twice changes nothing.
+INSERT INTO cdr_backfills (name, doneThroughId, throughId)
+SELECT 'distinct_sketches', 0, COALESCE(MAX(id), 0) FROM cdrs;
@@ -0,0 +1,6 @@
+-- V10 dropped V2's (serviceType, anum) and (serviceType, bnum) indexes with their string columns and did not
+-- re-create them, so a service type filter on one side of a subscriber read every row of the type.
+-- Same shape on the integer keys.
+ALTER TABLE cdrs
+    ADD INDEX idx_cdrs_service_anum (serviceTypeId, anumId),
+    ADD INDEX idx_cdrs_service_bnum (serviceTypeId, bnumId);
@@ -0,0 +1,18 @@
+-- Lifetime usage per A number and service type of the rows moved to archive files (see CDRArchive), so
+-- SubscriberProfiles adds it to what is still in cdrs without reading the files. archived_partitions lists
+-- the files already counted in, so each is added once: a file archived before this table existed is
+-- added on the next startup.
+CREATE TABLE archived_subscriber_totals (
+                      anumId INT NOT NULL,
+                      serviceTypeId TINYINT UNSIGNED NOT NULL,
+                      cdrCount BIGINT NOT NULL,
+                      usageSum DOUBLE NOT NULL,
+                      lastStartDateTime VARCHAR(16) NULL,
+                      PRIMARY KEY (anumId, serviceTypeId)
+) ENGINE=InnoDB;
+
+CREATE TABLE archived_partitions (
+                      name VARCHAR(16) PRIMARY KEY,
+                      cdrCount BIGINT NOT NULL,
+                      countedAt DATETIME NOT NULL
+) ENGINE=InnoDB;
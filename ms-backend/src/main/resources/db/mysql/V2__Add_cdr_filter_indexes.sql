@@ -0,0 +1,9 @@
+-- Indexes backing /api/cdrs/filtered: serviceType equality first, then the sort or range column
+CREATE INDEX idx_cdrs_service_start ON cdrs (serviceType, startDateTime);
+CREATE INDEX idx_cdrs_service_anum ON cdrs (serviceType, anum);
+CREATE INDEX idx_cdrs_service_bnum ON cdrs (serviceType, bnum);
+CREATE INDEX idx_cdrs_service_usage ON cdrs (serviceType, `usage`);
+
+-- Unfiltered date-range and usage-sorted queries
+CREATE INDEX idx_cdrs_start ON cdrs (startDateTime);
+CREATE INDEX idx_cdrs_usage ON cdrs (`usage`);
@@ -0,0 +1,13 @@
+-- Per service type x hour rollup of cdrs, maintained by the Kafka ingest batch (see CDRRollupService)
+CREATE TABLE cdr_hourly_rollups (
+                      serviceType VARCHAR(16) NOT NULL,
+                      bucketStart DATETIME NOT NULL,
+                      cdrCount BIGINT NOT NULL,
+                      usageSum DOUBLE NOT NULL,
+                      usageMin DOUBLE NOT NULL,
+                      usageMax DOUBLE NOT NULL,
+                      PRIMARY KEY (serviceType, bucketStart)
+) ENGINE=InnoDB;
+
+-- Time-range reads across all service types
+CREATE INDEX idx_rollups_bucket ON cdr_hourly_rollups (bucketStart);
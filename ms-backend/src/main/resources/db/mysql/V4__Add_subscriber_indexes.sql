@@ -0,0 +1,3 @@
+-- Subscriber-centric indexes: each side of a subscriber's history is one index range already in time order
+CREATE INDEX idx_cdrs_anum_start ON cdrs (anum, startDateTime, id);
+CREATE INDEX idx_cdrs_bnum_start ON cdrs (bnum, startDateTime, id);
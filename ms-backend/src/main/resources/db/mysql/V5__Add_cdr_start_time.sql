@@ -0,0 +1,6 @@
+-- Typed copy of startDateTime. New rows get it from the application (CDR.fillStartTime()); existing rows are
+-- backfilled in small id chunks by StartTimeBackfillJob, after which CDRPartitionManager partitions cdrs by day.
+ALTER TABLE cdrs ADD COLUMN startTime DATETIME NULL, ALGORITHM=INSTANT;
+
+CREATE INDEX idx_cdrs_start_time ON cdrs (startTime);
+CREATE INDEX idx_cdrs_service_start_time ON cdrs (serviceType, startTime);
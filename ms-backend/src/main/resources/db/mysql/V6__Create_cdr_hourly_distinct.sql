@@ -0,0 +1,12 @@
+-- HyperLogLog sketches of distinct anum, bnum and (anum, bnum) pairs per service type x hour,
+-- maintained by the Kafka ingest batch (see CDRDistinctService). Sketches of any hours merge into one.
+CREATE TABLE cdr_hourly_distinct (
+                      serviceType VARCHAR(16) NOT NULL,
+                      bucketStart DATETIME NOT NULL,
+                      dimension VARCHAR(8) NOT NULL,
+                      registers VARBINARY(4096) NOT NULL,
+                      PRIMARY KEY (serviceType, bucketStart, dimension)
+) ENGINE=InnoDB;
+
+-- Time-range reads across all service types
+CREATE INDEX idx_distinct_bucket ON cdr_hourly_distinct (bucketStart);
@@ -0,0 +1,21 @@
+-- Usage histograms per service type x hour (see UsageHistogram), maintained by the Kafka ingest batch
+-- next to cdr_hourly_rollups (see CDRHistogramService)
+CREATE TABLE cdr_hourly_usage_histograms (
+                      serviceType VARCHAR(16) NOT NULL,
+                      bucketStart DATETIME NOT NULL,
+                      histogram BLOB NOT NULL,
+                      PRIMARY KEY (serviceType, bucketStart)
+) ENGINE=InnoDB;
+
+CREATE INDEX idx_histograms_bucket ON cdr_hourly_usage_histograms (bucketStart);
+
+-- Progress of one-off backfills of rows that existed before a derived table. throughId is fixed when the
+-- migration runs, before ingest starts, so every later row is left to ingest and none is counted twice.
+CREATE TABLE cdr_backfills (
+                      name VARCHAR(64) NOT NULL PRIMARY KEY,
+                      doneThroughId BIGINT NOT NULL,
+                      throughId BIGINT NOT NULL
+) ENGINE=InnoDB;
+
+INSERT INTO cdr_backfills (name, doneThroughId, throughId)
+SELECT 'usage_histograms', 0, COALESCE(MAX(id), 0) FROM cdrs;
@@ -0,0 +1,37 @@
+-- Monthly billing runs (see BillingJob). A run splits subscribers into anum ranges when it is planned;
+-- each range is billed by whichever worker claims it and checkpoints the last anum it wrote, so an
+-- interrupted run resumes inside the range instead of from the start.
+CREATE TABLE billing_runs (
+                      period CHAR(7) NOT NULL PRIMARY KEY,  -- yyyy-MM
+                      status VARCHAR(16) NOT NULL,
+                      partitions INT NOT NULL,
+                      createdAt DATETIME NOT NULL,
+                      finishedAt DATETIME NULL
+) ENGINE=InnoDB;
+
+CREATE TABLE billing_partitions (
+                      period CHAR(7) NOT NULL,
+                      partitionNo INT NOT NULL,
+                      lowAnum VARCHAR(255) NOT NULL,   -- inclusive
+                      highAnum VARCHAR(255) NULL,      -- exclusive, NULL for the last range
+                      lastAnum VARCHAR(255) NULL,      -- checkpoint: every anum up to here is billed
+                      statements INT NOT NULL DEFAULT 0,
+                      status VARCHAR(16) NOT NULL,
+                      claimedBy VARCHAR(64) NULL,
+                      claimedAt DATETIME NULL,
+                      PRIMARY KEY (period, partitionNo)
+) ENGINE=InnoDB;
+
+CREATE TABLE billing_statements (
+                      period CHAR(7) NOT NULL,
+                      anum VARCHAR(255) NOT NULL,
+                      calls BIGINT NOT NULL,
+                      callMinutes DOUBLE NOT NULL,
+                      sms BIGINT NOT NULL,
+                      dataMb DOUBLE NOT NULL,
+                      callCharge DECIMAL(14, 2) NOT NULL,
+                      smsCharge DECIMAL(14, 2) NOT NULL,
+                      dataCharge DECIMAL(14, 2) NOT NULL,
+                      total DECIMAL(14, 2) NOT NULL,
+                      PRIMARY KEY (period, anum)
+) ENGINE=InnoDB;
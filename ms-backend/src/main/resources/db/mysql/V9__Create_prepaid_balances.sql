@@ -0,0 +1,20 @@
+-- Write-behind copy of the in-memory prepaid balances (see PrepaidBalances): one row per subscriber for
+-- their latest month, plus the cdrs id the stored balances include. Startup replays the rows after it.
+CREATE TABLE prepaid_balances (
+                      anum VARCHAR(255) NOT NULL PRIMARY KEY,
+                      period CHAR(7) NOT NULL,         -- yyyy-MM
+                      credit DOUBLE NOT NULL,
+                      spent DOUBLE NOT NULL,
+                      alertedLevel TINYINT NOT NULL,   -- thresholds already raised this month
+                      updatedAt DATETIME NOT NULL
+) ENGINE=InnoDB;
+
+CREATE TABLE prepaid_balance_snapshots (
+                      id TINYINT NOT NULL PRIMARY KEY,
+                      throughId BIGINT NOT NULL,
+                      takenAt DATETIME NOT NULL
+) ENGINE=InnoDB;
+
+-- Balances are tracked from deployment on, not charged retroactively for the existing history
+INSERT INTO prepaid_balance_snapshots (id, throughId, takenAt)
+SELECT 1, COALESCE(MAX(id), 0), NOW() FROM cdrs;
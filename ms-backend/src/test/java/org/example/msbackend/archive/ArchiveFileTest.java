@@ -0,0 +1,95 @@
+package org.example.msbackend.archive;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.utils.StartDateTimes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveFileTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void readsBackEveryRowAcrossBlocks() throws IOException {
+		ArchiveFile file = write(2);
+
+		assertEquals(5, file.rows);
+		assertEquals(3, file.blocks.size());
+		assertEquals(5, file.verify());
+		List<CDR> rows = scan(file, Long.MIN_VALUE, Long.MAX_VALUE, null);
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L), rows.stream().map(CDR::getId).toList());
+		assertEquals("111", rows.get(0).getAnum());
+		assertEquals("222", rows.get(0).getBnum());
+		assertNull(rows.get(2).getBnum());
+		assertEquals(250.0, rows.get(2).getUsage());
+		assertEquals("2025-01-01 10:30", rows.get(2).getStartDateTime());
+	}
+
+	@Test
+	void rangeReadsSkipBlocksOutsideAndFilterRowsInside() throws IOException {
+		ArchiveFile file = write(2);
+
+		long from = StartDateTimes.epochMinute("2025-01-01 10:00");
+		long to = StartDateTimes.epochMinute("2025-01-01 12:00");
+		assertTrue(file.overlaps(from, to));
+		assertFalse(file.overlaps(to + 24 * 60, Long.MAX_VALUE));
+		assertEquals(List.of(2L, 3L, 4L), scan(file, from, to, null).stream().map(CDR::getId).toList());
+		assertEquals(List.of(2L, 4L), scan(file, from, to, "call").stream().map(CDR::getId).toList());
+	}
+
+	@Test
+	void rejectsAFileThatIsNotAnArchive() throws IOException {
+		Path path = dir.resolve("garbage" + ArchiveFile.SUFFIX);
+		Files.write(path, new byte[64]);
+
+		assertThrows(IOException.class, () -> ArchiveFile.open(path));
+	}
+
+	@Test
+	void verifyCatchesACorruptBlock() throws IOException {
+		ArchiveFile file = write(10);
+		byte[] content = Files.readAllBytes(file.path);
+		content[(int) file.blocks.get(0).offset() + 4] ^= 0x55;
+		Files.write(file.path, content);
+
+		assertThrows(IOException.class, () -> ArchiveFile.open(file.path).verify());
+	}
+
+	private ArchiveFile write(int blockRows) throws IOException {
+		Path path = dir.resolve("cdrs-p20250102" + ArchiveFile.SUFFIX);
+		try (ArchiveFile.Writer writer = new ArchiveFile.Writer(path, blockRows)) {
+			writer.add(cdr(1, "111", "222", "CALL", 5, "2025-01-01 09:00"));
+			writer.add(cdr(2, "111", "333", "CALL", 7, "2025-01-01 10:00"));
+			writer.add(cdr(3, "222", null, "DATA", 250, "2025-01-01 10:30"));
+			writer.add(cdr(4, "333", "111", "CALL", 2, "2025-01-01 11:59"));
+			writer.add(cdr(5, "111", "222", "SMS", 1, "2025-01-01 12:00"));
+			assertEquals(5, writer.rows());
+		}
+		return ArchiveFile.open(path);
+	}
+
+	private static List<CDR> scan(ArchiveFile file, long fromMinute, long toMinute, String serviceType) throws IOException {
+		List<CDR> rows = new ArrayList<>();
+		file.scan(fromMinute, toMinute, serviceType, rows::add);
+		return rows;
+	}
+
+	private static CDR cdr(long id, String anum, String bnum, String serviceType, double usage, String startDateTime) {
+		CDR cdr = new CDR(anum, bnum, serviceType, usage, startDateTime);
+		cdr.setId(id);
+		return cdr;
+	}
+}
@@ -0,0 +1,134 @@
+package org.example.msbackend.balance;
+
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.ingest.CDRBatchIngestedEvent;
+import org.example.msbackend.ingest.WarmupWatermark;
+import org.example.msbackend.rating.RatingEngine;
+import org.example.msbackend.utils.StartDateTimes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class PrepaidBalancesTest {
+
+	private final List<BalanceEvent> published = new ArrayList<>();
+	private PrepaidBalances balances;
+	private long nextId = 1;
+
+	@BeforeEach
+	void setUp() {
+		balances = new PrepaidBalances(10.0, new int[]{100, 80}, mock(PlatformTransactionManager.class));
+		RatingEngine ratingEngine = new RatingEngine(
+				new MockEnvironment().withProperty("cdr.rating.plans.flat", "call=1; sms=0.5; data=0.1"), "flat");
+		BalanceEventPublisher publisher = mock(BalanceEventPublisher.class);
+		doAnswer(invocation -> published.addAll(invocation.getArgument(0))).when(publisher).publish(anyList());
+		ReflectionTestUtils.setField(balances, "ratingEngine", ratingEngine);
+		ReflectionTestUtils.setField(balances, "eventPublisher", publisher);
+		((WarmupWatermark) ReflectionTestUtils.getField(balances, "watermark")).warmedThrough(0);
+	}
+
+	@Test
+	void stripeKeepsSubscribersThatShareAHashApart() {
+		PrepaidBalances.Stripe stripe = new PrepaidBalances.Stripe();
+		int first = stripe.slotOf(42L, "111", 0, 10);
+		int second = stripe.slotOf(42L, "222", 0, 10);
+
+		assertNotEquals(first, second);
+		assertEquals(first, stripe.slotOf(42L, "111", 0, 10));
+		assertEquals(first, stripe.find(42L, "111"));
+		assertEquals(second, stripe.find(42L, "222"));
+		assertEquals(-1, stripe.find(42L, "333"));
+		assertEquals(2, stripe.size);
+
+		// past the load factor the table grows and every colliding subscriber is still found by its own number
+		for (int i = 0; i < 100; i++) {
+			stripe.slotOf(42L, "sub" + i, 0, 10);
+		}
+		assertEquals(102, stripe.size);
+		for (int i = 0; i < 100; i++) {
+			int slot = stripe.find(42L, "sub" + i);
+			assertTrue(slot >= 0);
+			assertEquals("sub" + i, stripe.anums[slot]);
+		}
+		assertEquals("111", stripe.anums[stripe.find(42L, "111")]);
+	}
+
+	@Test
+	void raisesEachThresholdOncePerMonth() {
+		ingest(call("111", 5, "2025-03-10 09:00"));
+		assertTrue(published.isEmpty());
+
+		ingest(call("111", 3, "2025-03-11 09:00"), call("111", 1, "2025-03-12 09:00"));
+		assertEquals(1, published.size());
+		BalanceEvent warning = published.get(0);
+		assertEquals("111", warning.anum());
+		assertEquals("2025-03", warning.period());
+		assertEquals(80, warning.thresholdPercent());
+		assertEquals(8, warning.spent(), 1e-9);
+		assertEquals("2025-03-11 09:00", warning.startDateTime());
+
+		// one record can cross what is left at once; the level is not raised again after it
+		ingest(call("111", 4, "2025-03-13 09:00"), call("111", 1, "2025-03-14 09:00"));
+		assertEquals(2, published.size());
+		assertEquals(100, published.get(1).thresholdPercent());
+
+		PrepaidBalances.Balance balance = balances.balance("111");
+		assertEquals(14, balance.spent(), 1e-9);
+		assertEquals(-4, balance.remaining(), 1e-9);
+		assertEquals(100, balance.thresholdReached());
+		assertNull(balances.balance("222"));
+	}
+
+	@Test
+	void newMonthStartsFromTheMonthlyCreditAndLateRecordsAreIgnored() {
+		ingest(call("111", 9, "2025-03-31 23:00"));
+		ingest(new CDR("111", "999", "SMS", 1, "2025-04-01 00:10"));
+		ingest(call("111", 5, "2025-03-31 23:30"));
+
+		PrepaidBalances.Balance balance = balances.balance("111");
+		assertEquals("2025-04", balance.period());
+		assertEquals(0.5, balance.spent(), 1e-9);
+		assertEquals(10, balance.credit(), 1e-9);
+		assertEquals(0, balance.thresholdReached());
+		assertEquals(1, published.size()); // only March's 80%
+	}
+
+	@Test
+	void topUpRearmsThresholdsUsageIsBackUnder() {
+		String thisMonth = StartDateTimes.format(YearMonth.now().atDay(1).atTime(9, 0));
+		ingest(call("111", 9, thisMonth));
+		assertEquals(80, balances.balance("111").thresholdReached());
+
+		PrepaidBalances.Balance topped = balances.topUp("111", 10);
+		assertEquals(20, topped.credit(), 1e-9);
+		assertEquals(0, topped.thresholdReached());
+
+		ingest(call("111", 8, thisMonth));
+		assertEquals(2, published.size());
+		assertEquals(80, published.get(1).thresholdPercent());
+
+		assertThrows(IllegalArgumentException.class, () -> balances.topUp("111", 0));
+	}
+
+	private CDR call(String anum, double minutes, String startDateTime) {
+		return new CDR(anum, "999", "CALL", minutes, startDateTime);
+	}
+
+	private void ingest(CDR... cdrs) {
+		for (CDR cdr : cdrs) {
+			cdr.setId(nextId++);
+		}
+		balances.onIngested(new CDRBatchIngestedEvent(List.of(cdrs)));
+	}
+}
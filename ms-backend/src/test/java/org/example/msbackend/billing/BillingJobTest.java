@@ -0,0 +1,95 @@
+package org.example.msbackend.billing;
+
+import org.example.cdrcommon.rating.TariffPlan;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BillingJobTest {
+
+	private static final TariffPlan PLAN = TariffPlan.parse("test",
+			"peak=MON-FRI 08-20; call=0.50/0.30; sms=0.25/0.10; data=0.50/0.25");
+
+	private final AtomicLong clock = new AtomicLong();
+	private final List<List<BillingStatement>> flushes = new ArrayList<>();
+
+	@Test
+	void ratesEachSubscribersRecordsIntoOneStatement() {
+		BillingJob.Accumulator accumulator = accumulator(1000, Long.MAX_VALUE);
+		// 2025-01-06 is a Monday
+		accumulator.add("111", "CALL", 10, "2025-01-06 09:00");
+		accumulator.add("111", "SMS", 1, "2025-01-06 21:00");
+		accumulator.add("111", "DATA", 100, "2025-01-11 12:00");
+		accumulator.add("222", "CALL", 3, "2025-01-07 10:00");
+		accumulator.add("222", "VOICEMAIL", 7, "2025-01-07 10:00");
+		accumulator.finish();
+
+		assertEquals(1, flushes.size());
+		List<BillingStatement> statements = flushes.get(0);
+		assertEquals(2, statements.size());
+
+		BillingStatement first = statements.get(0);
+		assertEquals("2025-01", first.period());
+		assertEquals("111", first.anum());
+		assertEquals(1, first.calls());
+		assertEquals(10, first.callMinutes());
+		assertEquals(1, first.sms());
+		assertEquals(100, first.dataMb());
+		assertEquals(new BigDecimal("5.00"), first.callCharge());
+		assertEquals(new BigDecimal("0.10"), first.smsCharge());
+		assertEquals(new BigDecimal("25.00"), first.dataCharge());
+		assertEquals(new BigDecimal("30.10"), first.total());
+
+		BillingStatement second = statements.get(1);
+		assertEquals("222", second.anum());
+		assertEquals(new BigDecimal("1.50"), second.total());
+	}
+
+	@Test
+	void flushesEveryBatchOfSubscribersAndTheRestAtTheEnd() {
+		BillingJob.Accumulator accumulator = accumulator(2, Long.MAX_VALUE);
+		for (String anum : new String[]{"111", "222", "333", "444", "555"}) {
+			accumulator.add(anum, "SMS", 1, "2025-01-06 09:00");
+		}
+		accumulator.finish();
+
+		assertEquals(List.of(List.of("111", "222"), List.of("333", "444"), List.of("555")), anums());
+	}
+
+	@Test
+	void flushesOnTimeSoTheClaimIsRefreshedDuringALongSubscriber() {
+		BillingJob.Accumulator accumulator = accumulator(1000, 100);
+		accumulator.add("111", "CALL", 1, "2025-01-06 09:00");
+		clock.addAndGet(60);
+		accumulator.add("111", "CALL", 1, "2025-01-06 09:01");
+		assertTrue(flushes.isEmpty());
+
+		clock.addAndGet(60);
+		accumulator.add("111", "CALL", 1, "2025-01-06 09:02");
+		// still inside 111: nothing closed yet, so only the claim is renewed
+		assertEquals(List.of(List.of()), anums());
+
+		clock.addAndGet(10);
+		accumulator.add("222", "CALL", 1, "2025-01-06 09:03");
+		clock.addAndGet(100);
+		accumulator.add("222", "CALL", 1, "2025-01-06 09:04");
+		assertEquals(List.of(List.of(), List.of("111")), anums());
+
+		accumulator.finish();
+		assertEquals(List.of(List.of(), List.of("111"), List.of("222")), anums());
+	}
+
+	private BillingJob.Accumulator accumulator(int flushEvery, long refreshNanos) {
+		return new BillingJob.Accumulator("2025-01", PLAN, flushEvery, refreshNanos, clock::get, flushes::add);
+	}
+
+	private List<List<String>> anums() {
+		return flushes.stream().map(batch -> batch.stream().map(BillingStatement::anum).toList()).toList();
+	}
+}
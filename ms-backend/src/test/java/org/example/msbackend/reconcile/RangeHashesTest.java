@@ -0,0 +1,58 @@
+package org.example.msbackend.reconcile;
+
+import org.example.msbackend.database.entity.CDR;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RangeHashesTest {
+
+	@Test
+	void rowTextMatchesTheSqlRowText() {
+		assertEquals("111|222|CALL|12346|2025-01-01 10:30",
+				RangeHashes.rowText(new CDR("111", "222", "call", 12.3456, "2025-01-01 10:30")));
+		// DATA has no B side: COALESCE(bnum, '')
+		assertEquals("111||DATA|500|2025-01-01 10:30",
+				RangeHashes.rowText(new CDR("111", null, "DATA", 0.5, "2025-01-01 10:30")));
+	}
+
+	@Test
+	void usageRoundsHalvesToEvenLikeMysqlRoundOfADouble() {
+		assertEquals("1||SMS|0|2025-01-01 10:30", RangeHashes.rowText(new CDR("1", null, "SMS", 0.0005, "2025-01-01 10:30")));
+		assertEquals("1||SMS|2|2025-01-01 10:30", RangeHashes.rowText(new CDR("1", null, "SMS", 0.0015, "2025-01-01 10:30")));
+		assertEquals("1||SMS|2|2025-01-01 10:30", RangeHashes.rowText(new CDR("1", null, "SMS", 0.0025, "2025-01-01 10:30")));
+	}
+
+	@Test
+	void rowHashIsTheTop60BitsOfTheMd5() {
+		// CONV(LEFT(MD5(text), 15), 16, 10) in MySQL, int(md5[:15], 16) elsewhere
+		assertEquals(206431112343977817L, RangeHashes.rowHash("111|222|CALL|12346|2025-01-01 10:30"));
+		assertEquals(935932609807511428L, RangeHashes.rowHash("111||DATA|500|2025-01-01 10:30"));
+	}
+
+	@Test
+	void groupsAddCountsAndExactSums() {
+		RangeHashes.RangeHash a = new RangeHashes.RangeHash("2025-01-01", 1, BigDecimal.valueOf(Long.MAX_VALUE));
+		RangeHashes.RangeHash b = new RangeHashes.RangeHash("2025-01-01", 2, BigDecimal.valueOf(Long.MAX_VALUE));
+
+		RangeHashes.RangeHash sum = a.plus(b);
+		assertEquals(3, sum.count());
+		assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2)), sum.sum());
+	}
+
+	@Test
+	void levelsNarrowDownToTheMinute() {
+		assertEquals(RangeHashes.Level.HOUR, RangeHashes.Level.DAY.finer());
+		assertEquals(RangeHashes.Level.MINUTE, RangeHashes.Level.HOUR.finer());
+		assertNull(RangeHashes.Level.MINUTE.finer());
+
+		assertEquals(LocalDateTime.of(2025, 1, 1, 0, 0), RangeHashes.Level.DAY.start("2025-01-01"));
+		assertEquals(LocalDateTime.of(2025, 1, 2, 0, 0), RangeHashes.Level.DAY.end("2025-01-01"));
+		assertEquals(LocalDateTime.of(2025, 1, 1, 11, 0), RangeHashes.Level.HOUR.end("2025-01-01 10"));
+		assertEquals(LocalDateTime.of(2025, 1, 1, 10, 31), RangeHashes.Level.MINUTE.end("2025-01-01 10:30"));
+	}
+}
@@ -0,0 +1,75 @@
+package org.example.msbackend.stats;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+	@Test
+	void estimatesSmallCardinalitiesAlmostExactly() {
+		HyperLogLog sketch = new HyperLogLog();
+		assertEquals(0, sketch.estimate());
+		for (int i = 0; i < 100; i++) {
+			sketch.add("2010" + i);
+		}
+		assertEquals(100, sketch.estimate(), 2);
+	}
+
+	@Test
+	void estimatesLargeCardinalitiesWithinThreeStandardErrors() {
+		HyperLogLog sketch = new HyperLogLog();
+		int distinct = 200_000;
+		for (int i = 0; i < distinct; i++) {
+			sketch.add("2010" + (5_000_000 + i));
+		}
+		assertEquals(distinct, sketch.estimate(), distinct * 0.05);
+	}
+
+	@Test
+	void ignoresRepeatedValues() {
+		HyperLogLog once = new HyperLogLog();
+		HyperLogLog repeated = new HyperLogLog();
+		for (int i = 0; i < 1000; i++) {
+			once.add("number-" + i);
+			for (int copy = 0; copy < 5; copy++) {
+				repeated.add("number-" + i);
+			}
+		}
+		assertArrayEquals(once.toBytes(), repeated.toBytes());
+	}
+
+	@Test
+	void mergedSketchEqualsTheSketchOfTheUnion() {
+		HyperLogLog first = new HyperLogLog();
+		HyperLogLog second = new HyperLogLog();
+		HyperLogLog union = new HyperLogLog();
+		for (int i = 0; i < 30_000; i++) {
+			String value = "number-" + i;
+			(i % 3 == 0 ? first : second).add(value);
+			// overlapping range: counted once in the union
+			if (i % 5 == 0) {
+				first.add(value);
+			}
+			union.add(value);
+		}
+		first.merge(second);
+		assertArrayEquals(union.toBytes(), first.toBytes());
+		assertTrue(Math.abs(first.estimate() - 30_000) < 30_000 * 0.05);
+	}
+
+	@Test
+	void roundTripsThroughBytes() {
+		HyperLogLog sketch = new HyperLogLog();
+		for (int i = 0; i < 5000; i++) {
+			sketch.add("number-" + i);
+		}
+		HyperLogLog copy = HyperLogLog.fromBytes(sketch.toBytes());
+		assertEquals(sketch.estimate(), copy.estimate());
+		assertArrayEquals(sketch.toBytes(), copy.toBytes());
+		assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[16]));
+	}
+}
@@ -0,0 +1,82 @@
+package org.example.msbackend.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+
+	@Test
+	void countsExactlyWhileUnderCapacity() {
+		SpaceSaving summary = new SpaceSaving(10);
+		summary.add("111", 5);
+		summary.add("222", 2.5);
+		summary.add("111", 1);
+		summary.add(null, 9);
+		summary.add("333", 0);
+
+		assertEquals(2, summary.size());
+		assertEquals(6, summary.count(summary.indexOf("111")));
+		assertEquals(0, summary.error(summary.indexOf("111")));
+		assertEquals(2.5, summary.count(summary.indexOf("222")));
+		assertEquals(-1, summary.indexOf("333"));
+		assertEquals(0, summary.min());
+	}
+
+	@Test
+	void newKeyTakesOverTheSmallestCounterAndInheritsItAsError() {
+		SpaceSaving summary = new SpaceSaving(2);
+		summary.add("111", 10);
+		summary.add("222", 3);
+		summary.add("333", 1);
+
+		assertEquals(-1, summary.indexOf("222"));
+		int index = summary.indexOf("333");
+		assertEquals(4, summary.count(index));
+		assertEquals(3, summary.error(index));
+		assertEquals(4, summary.min());
+	}
+
+	@Test
+	void keepsHeavyHittersWithinTheirErrorBounds() {
+		SpaceSaving summary = new SpaceSaving(50);
+		Map<String, Double> truth = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100_000; i++) {
+			// ten heavy subscribers take about half the weight, the rest spreads over 10 000
+			String key = random.nextBoolean() ? "heavy-" + random.nextInt(10) : "light-" + random.nextInt(10_000);
+			double weight = 1 + random.nextInt(5);
+			summary.add(key, weight);
+			truth.merge(key, weight, Double::sum);
+		}
+
+		for (int heavy = 0; heavy < 10; heavy++) {
+			int index = summary.indexOf("heavy-" + heavy);
+			assertTrue(index >= 0, "heavy-" + heavy + " is tracked");
+			double actual = truth.get("heavy-" + heavy);
+			assertTrue(summary.count(index) >= actual);
+			assertTrue(summary.count(index) - summary.error(index) <= actual);
+		}
+		for (Map.Entry<String, Double> entry : truth.entrySet()) {
+			if (summary.indexOf(entry.getKey()) < 0) {
+				assertTrue(entry.getValue() <= summary.min());
+			}
+		}
+	}
+
+	@Test
+	void clearEmptiesTheSummary() {
+		SpaceSaving summary = new SpaceSaving(3);
+		summary.add("111", 1);
+		summary.clear();
+		assertEquals(0, summary.size());
+		assertEquals(-1, summary.indexOf("111"));
+		assertThrows(IllegalArgumentException.class, () -> new SpaceSaving(0));
+	}
+}
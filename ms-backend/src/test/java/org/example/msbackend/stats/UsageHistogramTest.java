@@ -0,0 +1,89 @@
+package org.example.msbackend.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsageHistogramTest {
+
+	@Test
+	void emptyHistogramReportsZeros() {
+		UsageHistogram histogram = new UsageHistogram();
+		assertEquals(0, histogram.getTotalCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.valueAtPercentile(50));
+	}
+
+	@Test
+	void percentilesAreWithinOneSixtyFourthOfTheTrueValue() {
+		UsageHistogram histogram = new UsageHistogram();
+		for (int i = 1; i <= 10_000; i++) {
+			histogram.record(i / 10.0);
+		}
+		assertEquals(10_000, histogram.getTotalCount());
+		assertEquals(0.1, histogram.getMin());
+		assertEquals(1000, histogram.getMax());
+		assertWithinBucket(500, histogram.valueAtPercentile(50));
+		assertWithinBucket(900, histogram.valueAtPercentile(90));
+		assertWithinBucket(990, histogram.valueAtPercentile(99));
+		assertEquals(1000, histogram.valueAtPercentile(100));
+	}
+
+	@Test
+	void smallValuesHaveTheirOwnBuckets() {
+		UsageHistogram histogram = new UsageHistogram();
+		histogram.record(0.001);
+		histogram.record(0.002);
+		histogram.record(0.127);
+		assertEquals(0.001, histogram.valueAtPercentile(10));
+		assertEquals(0.002, histogram.valueAtPercentile(50));
+		assertEquals(0.127, histogram.valueAtPercentile(100));
+	}
+
+	@Test
+	void mergeAddsCountsAndKeepsExactExtremes() {
+		UsageHistogram first = new UsageHistogram();
+		UsageHistogram second = new UsageHistogram();
+		first.record(5);
+		first.record(50);
+		second.record(0.5);
+		second.record(5000);
+		first.merge(second);
+
+		assertEquals(4, first.getTotalCount());
+		assertEquals(0.5, first.getMin());
+		assertEquals(5000, first.getMax());
+		List<Long> counts = new ArrayList<>();
+		first.forEachBucket((value, count) -> {
+			assertTrue(value >= 0.5 && value <= 5000);
+			counts.add(count);
+		});
+		assertEquals(List.of(1L, 1L, 1L, 1L), counts);
+	}
+
+	@Test
+	void roundTripsThroughBytes() {
+		UsageHistogram histogram = new UsageHistogram();
+		for (int i = 0; i < 1000; i++) {
+			histogram.record(i * 1.7);
+		}
+		UsageHistogram copy = UsageHistogram.fromBytes(histogram.toBytes());
+		assertEquals(histogram.getTotalCount(), copy.getTotalCount());
+		assertEquals(histogram.getMin(), copy.getMin());
+		assertEquals(histogram.getMax(), copy.getMax());
+		for (double percentile : new double[]{1, 25, 50, 75, 99}) {
+			assertEquals(histogram.valueAtPercentile(percentile), copy.valueAtPercentile(percentile));
+		}
+		assertEquals(0, UsageHistogram.fromBytes(new UsageHistogram().toBytes()).getTotalCount());
+	}
+
+	private static void assertWithinBucket(double expected, double actual) {
+		assertTrue(actual >= expected && actual <= expected * (1 + 1.0 / 64),
+				"expected " + expected + " within 1/64, got " + actual);
+	}
+}
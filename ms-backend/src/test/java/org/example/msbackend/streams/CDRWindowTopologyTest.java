@@ -0,0 +1,120 @@
+package org.example.msbackend.streams;
+
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.example.msbackend.database.entity.CDR;
+import org.example.msbackend.utils.StartDateTimes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CDRWindowTopologyTest {
+
+	@TempDir
+	Path stateDir;
+
+	private TopologyTestDriver driver;
+	private TestInputTopic<String, CDR> input;
+
+	@BeforeEach
+	void setUp() {
+		StreamsBuilder builder = new StreamsBuilder();
+		CDRWindowTopology.build(builder);
+
+		Properties props = new Properties();
+		props.put(StreamsConfig.APPLICATION_ID_CONFIG, "cdr-streams-test");
+		props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+		props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+		driver = new TopologyTestDriver(builder.build(), props);
+
+		// the loader sends unkeyed JSON without type headers
+		JsonSerializer<CDR> serializer = new JsonSerializer<CDR>().noTypeInfo();
+		input = driver.createInputTopic(CDRWindowTopology.INPUT_TOPIC, new StringSerializer(), serializer);
+	}
+
+	@AfterEach
+	void tearDown() {
+		driver.close();
+	}
+
+	@Test
+	void aggregatesServiceTypesInOneMinuteTumblingWindows() {
+		send("111", "CALL", 5, "2025-01-01 10:00");
+		send("222", "CALL", 20, "2025-01-01 10:00");
+		send("333", "call", 10, "2025-01-01 10:00");
+		send("111", "CALL", 7, "2025-01-01 10:01");
+		send("111", "SMS", 1, "2025-01-01 10:00");
+
+		List<KeyValue<Long, UsageAggregate>> calls = windows(CDRWindowTopology.SERVICE_MINUTES_STORE, "CALL");
+		assertEquals(2, calls.size());
+		assertEquals(minute("2025-01-01 10:00"), calls.get(0).key);
+		assertEquals(new UsageAggregate(3, 35, 20), calls.get(0).value);
+		assertEquals(new UsageAggregate(1, 7, 7), calls.get(1).value);
+
+		assertEquals(List.of(KeyValue.pair(minute("2025-01-01 10:00"), new UsageAggregate(1, 1, 1))),
+				windows(CDRWindowTopology.SERVICE_MINUTES_STORE, "SMS"));
+	}
+
+	@Test
+	void countsEachRecordInTwelveHoppingHourWindows() {
+		send("111", "DATA", 300, "2025-01-01 10:07");
+
+		List<KeyValue<Long, UsageAggregate>> hours = windows(CDRWindowTopology.SERVICE_HOURS_HOPPING_STORE, "DATA");
+		assertEquals(12, hours.size());
+		assertEquals(minute("2025-01-01 09:10"), hours.get(0).key);
+		assertEquals(minute("2025-01-01 10:05"), hours.get(11).key);
+		hours.forEach(window -> assertEquals(new UsageAggregate(1, 300, 300), window.value));
+	}
+
+	@Test
+	void aggregatesSubscribersInHourWindowsAndAcceptsRecordsUpToADayLate() {
+		send("111", "CALL", 10, "2025-01-01 10:05");
+		send("111", "SMS", 1, "2025-01-01 10:50");
+		send("111", "CALL", 30, "2025-01-01 11:10");
+		send("222", "CALL", 99, "2025-01-02 09:00");
+		// within the one day grace of the newest record: still counted
+		send("111", "CALL", 4, "2025-01-01 10:30");
+		send("222", "CALL", 99, "2025-01-03 12:00");
+		// more than a day behind the newest record: dropped
+		send("111", "CALL", 50, "2025-01-01 10:40");
+
+		List<KeyValue<Long, UsageAggregate>> hours = windows(CDRWindowTopology.SUBSCRIBER_HOURS_STORE, "111");
+		assertEquals(2, hours.size());
+		assertEquals(new UsageAggregate(3, 15, 10), hours.get(0).value);
+		assertEquals(new UsageAggregate(1, 30, 30), hours.get(1).value);
+	}
+
+	private void send(String anum, String serviceType, double usage, String startDateTime) {
+		input.pipeInput(null, new CDR(anum, "999", serviceType, usage, startDateTime));
+	}
+
+	private List<KeyValue<Long, UsageAggregate>> windows(String store, String key) {
+		WindowStore<String, UsageAggregate> windowStore = driver.getWindowStore(store);
+		List<KeyValue<Long, UsageAggregate>> result = new ArrayList<>();
+		try (WindowStoreIterator<UsageAggregate> iterator = windowStore.fetch(key, Instant.EPOCH, Instant.ofEpochMilli(Long.MAX_VALUE))) {
+			iterator.forEachRemaining(entry -> result.add(KeyValue.pair(entry.key, entry.value)));
+		}
+		return result;
+	}
+
+	private static long minute(String startDateTime) {
+		return StartDateTimes.epochMinute(LocalDateTime.parse(startDateTime, StartDateTimes.formatter)) * 60_000;
+	}
+}
@@ -5,11 +5,28 @@ let pollingInterval;
 // ─────────────────────────────────────────────────────────────────────────────
 // 🆕 NEW GLOBAL FLAGS TO TRACK DATA STATE
 //    - haveReceivedData: becomes true as soon as we successfully fetch ≥1 CDR.
-//    - stopPollingFlag: once true, we will stop further polling.
+//    - stopPollingFlag: once true, we will stop further polling (an idle poll no longer sets it).
 //─────────────────────────────────────────────────────────────────────────────
 let haveReceivedData = false;
 let stopPollingFlag   = false;
 
+// ─────────────────────────────────────────────────────────────────────────────
+// Push channel state: while the socket is open the backend sends each ingested
+// batch, so polling is paused and rows/charts are updated from the deltas.
+//─────────────────────────────────────────────────────────────────────────────
+let pushSocket    = null;
+let pushConnected = false;
+let liveCounts    = { call: 0, sms: 0, data: 0 };
+
+// ─────────────────────────────────────────────────────────────────────────────
+// Delta polling state: the last /api/cdrs/changes cursor, the ids already on
+// screen (a batch can show up in both the full list and the first delta), and
+// the ETag of the last aggregates response.
+//─────────────────────────────────────────────────────────────────────────────
+let changesCursor  = null;
+let knownIds       = new Set();
+let aggregatesEtag = null;
+
 // ─────────────────────────────────────────────────────────────────────────────
 // Helper: Decode a JWT payload so we can extract "preferred_username" after signup.
 //─────────────────────────────────────────────────────────────────────────────
@@ -114,13 +131,15 @@ function startPolling() {
 }
 
 // ─────────────────────────────────────────────────────────────────────────────
-// 🆕 UPDATED fetchAndUpdate():
+// fetchAndUpdate():
 //    • While `haveReceivedData===false`, do NOT overwrite “building” message.
-//    • As soon as `data.length > 0`, set `haveReceivedData=true` and render normally.
-//    • When `data.length===0 && haveReceivedData===true`, stop polling forever.
+//    • As soon as the full list has rows, set `haveReceivedData=true` and render it.
+//    • After that, only ask /api/cdrs/changes for what was ingested since our
+//      cursor. An empty answer just means "nothing new yet", so keep polling.
 //─────────────────────────────────────────────────────────────────────────────
 async function fetchAndUpdate() {
     if (stopPollingFlag) return;  // Already decided to stop—do nothing.
+    if (pushConnected) return;    // The socket delivers new CDRs as they arrive.
 
     const statusEl = document.getElementById('status-message');
     const dotEl    = document.getElementById('live-dot');
@@ -133,6 +152,9 @@ async function fetchAndUpdate() {
 
         // Still attempt to fetch in the background to detect first data arrival:
         try {
+            // Take the cursor before the full list, so nothing ingested in between is missed
+            const cursor = (await fetchChanges(null)).cursor;
+
             const response = await fetch(`${window.BACKEND_URL}/api/cdrs`, {
                 headers: { Authorization: `Bearer ${window.token}` }
             });
@@ -144,10 +166,13 @@ async function fetchAndUpdate() {
             // If we finally got data > 0, switch to normal (haveReceivedData=true)
             if (Array.isArray(data) && data.length > 0) {
                 haveReceivedData = true;
+                changesCursor    = cursor;
+                knownIds         = new Set(data.map(cdr => cdr.id));
                 // Immediately render the first batch of data:
                 displayCDRs(data);
-                generateCharts(data);
+                await fetchAggregatesAndRender();
                 updateLastUpdated();
+                connectPush();
                 // Clear “building” message after a moment, but keep the dot
                 setTimeout(() => { statusEl.innerText = ''; }, 2000);
             }
@@ -161,33 +186,29 @@ async function fetchAndUpdate() {
     }
 
     // ─────────── CASE: We already have received data at least once ───────────
-    // Now we switch to “Receiving from database…” before each new poll.
-    dotEl.style.display = 'inline-block';
-    statusEl.innerText  = 'Receiving from database…';
-
     try {
-        const response = await fetch(`${window.BACKEND_URL}/api/cdrs`, {
-            headers: { Authorization: `Bearer ${window.token}` }
-        });
-        if (!response.ok) throw new Error(`HTTP ${response.status}`);
-
-        const data = await response.json();
-        fullData = data;
-
-        // ─────────── CASE: After having data, now get an empty array => STOP ───────────
-        if (Array.isArray(data) && data.length === 0) {
-            statusEl.innerText = '✅ All CDRs received. Stopping updates.';
-            stopPollingFlag = true;
-            // Hide the dot after a short delay so user sees the final message
-            setTimeout(() => {
-                dotEl.style.display = 'none';
-            }, 2000);
-            return;
-        }
+        const fresh = [];
+        let changes;
+        do {
+            changes = await fetchChanges(changesCursor);
+            changes.cdrs.forEach(cdr => {
+                if (!knownIds.has(cdr.id)) {
+                    knownIds.add(cdr.id);
+                    fresh.push(cdr);
+                }
+            });
+            changesCursor = changes.cursor;
+        } while (changes.more);
+
+        // Idle system: nothing to redraw
+        if (fresh.length === 0) return;
+
+        dotEl.style.display = 'inline-block';
+        statusEl.innerText  = 'Receiving from database…';
 
-        // ─────────── CASE: Normal: data.length > 0 ───────────
-        displayCDRs(data);
-        generateCharts(data);
+        fullData = fullData.concat(fresh);
+        prependCDRRows(fresh);
+        await fetchAggregatesAndRender();
         updateLastUpdated();
 
         // Clear the “Receiving from database…” message after 2s,
@@ -208,6 +229,16 @@ async function fetchAndUpdate() {
     }
 }
 
+// One page of /api/cdrs/changes: { cdrs, cursor, more }. A null cursor only asks for the current cursor.
+async function fetchChanges(since) {
+    const query = since === null ? '' : `?since=${since}`;
+    const response = await fetch(`${window.BACKEND_URL}/api/cdrs/changes${query}`, {
+        headers: { Authorization: `Bearer ${window.token}` }
+    });
+    if (!response.ok) throw new Error(`HTTP ${response.status}`);
+    return response.json();
+}
+
 // ─────────────────────────────────────────────────────────────────────────────
 // Show timestamp of last update (unchanged)
 //─────────────────────────────────────────────────────────────────────────────
@@ -315,6 +346,131 @@ function generateCharts(data) {
         const type = cdr.serviceType.toLowerCase();
         if (counts[type] !== undefined) counts[type]++;
     });
+    renderCharts(counts);
+}
+
+// ─────────────────────────────────────────────────────────────────────────────
+// Charts for the live view come from the backend's hourly rollup
+// (/api/cdrs/aggregated) instead of re-counting every row in the browser.
+//─────────────────────────────────────────────────────────────────────────────
+async function fetchAggregatesAndRender() {
+    const headers = { Authorization: `Bearer ${window.token}` };
+    if (aggregatesEtag) headers['If-None-Match'] = aggregatesEtag;
+
+    const response = await fetch(`${window.BACKEND_URL}/api/cdrs/aggregated`, { headers });
+    if (response.status === 304) {
+        renderCharts(liveCounts);
+        return;
+    }
+    if (!response.ok) throw new Error(`HTTP ${response.status}`);
+
+    aggregatesEtag = response.headers.get('ETag');
+    const aggregated = await response.json();
+    liveCounts = {
+        call: aggregated.call || 0,
+        sms:  aggregated.sms  || 0,
+        data: aggregated.data || 0
+    };
+    renderCharts(liveCounts);
+}
+
+// ─────────────────────────────────────────────────────────────────────────────
+// connectPush(): opens the /api/ws/cdrs socket. Each message carries the new
+// CDRs and the per-service count delta of one ingested batch; they are applied
+// on top of what is already on screen. The first message is a "hello" with the
+// newest id at connect time: everything above it will be pushed, everything up to
+// it is read from /api/cdrs/changes, so nothing committed since our last poll is
+// lost. If the socket drops we go back to polling /api/cdrs/changes
+// (already-seen ids are skipped) and try to reconnect later.
+//─────────────────────────────────────────────────────────────────────────────
+function connectPush() {
+    if (pushSocket || !('WebSocket' in window)) return;
+
+    const url = new URL(`${window.BACKEND_URL}/api/ws/cdrs`, window.location.href);
+    url.protocol = url.protocol === 'https:' ? 'wss:' : 'ws:';
+    pushSocket = new WebSocket(url.toString());
+
+    pushSocket.onopen = () => {
+        pushConnected = true;
+        clearInterval(pollingInterval);
+    };
+
+    pushSocket.onmessage = (event) => {
+        const message = JSON.parse(event.data);
+        if (message.type === 'hello') {
+            catchUp(message.cursor);
+        } else if (message.type === 'batch') {
+            applyBatch(message.cdrs);
+        }
+    };
+
+    pushSocket.onclose = () => {
+        const wasConnected = pushConnected;
+        pushSocket    = null;
+        pushConnected = false;
+        if (wasConnected && !stopPollingFlag) {
+            startPolling();
+        }
+        setTimeout(connectPush, 10000);
+    };
+}
+
+// Pages /api/cdrs/changes from our cursor up to the socket's hello cursor
+async function catchUp(through) {
+    try {
+        // the socket only opens after the first full load has set the cursor
+        while (changesCursor !== null && changesCursor < through) {
+            const changes = await fetchChanges(changesCursor);
+            applyBatch(changes.cdrs);
+            changesCursor = changes.cursor;
+            if (!changes.more) break;
+        }
+    } catch (err) {
+        console.error('❌ Error catching up after the push socket opened:', err);
+    }
+}
+
+// Counts are taken from the rows that are new here, not the batch's own counts,
+// so a batch already seen through polling isn't counted twice
+function applyBatch(cdrs) {
+    if (!cdrs || cdrs.length === 0) return;
+
+    cdrs = cdrs.filter(cdr => !knownIds.has(cdr.id));
+    cdrs.forEach(cdr => knownIds.add(cdr.id));
+    fullData = fullData.concat(cdrs);
+    prependCDRRows(cdrs);
+
+    cdrs.forEach(cdr => {
+        const type = cdr.serviceType.toLowerCase();
+        if (liveCounts[type] !== undefined) liveCounts[type]++;
+    });
+    renderCharts(liveCounts);
+    updateLastUpdated();
+}
+
+// Adds only the new rows on top of the default table (newest first); sorted or
+// filtered views keep their order and pick the rows up on the next applyFilter()
+function prependCDRRows(cdrs) {
+    const tbody = document.getElementById('cdrs-table-body');
+    if (document.getElementById('filter-by').value !== 'none') return;
+
+    cdrs.forEach(cdr => {
+        const tr = document.createElement('tr');
+        tr.classList.add('new-row');
+        tr.style.backgroundColor = getRandomPastelColor();
+        tr.innerHTML = `
+            <td>${cdr.id}</td>
+            <td>${cdr.anum}</td>
+            <td>${cdr.bnum}</td>
+            <td>${cdr.serviceType}</td>
+            <td>${cdr.usage}</td>
+            <td>${cdr.startDateTime}</td>`;
+        tbody.insertBefore(tr, tbody.firstChild);
+        setTimeout(() => { tr.classList.remove('new-row'); }, 500);
+    });
+}
+
+function renderCharts(counts) {
     const total = counts.call + counts.sms + counts.data;
 
     const doughnutData = [counts.call, counts.sms, counts.data];
@@ -0,0 +1,30 @@
+package org.example.msloader.database.controller;
+
+import org.example.msloader.reconcile.RangeHashes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// Read by ms-backend's ReconciliationJob
+@RestController
+@RequestMapping("/api/reconcile")
+public class ReconcileController {
+
+    @Autowired
+    private RangeHashes rangeHashes;
+
+    // ✅ Checksums per day, hour or minute of the CDRs starting in [from, to)
+    @GetMapping("/hashes")
+    public List<RangeHashes.RangeHash> getHashes(@RequestParam RangeHashes.Level level,
+                                                 @RequestParam String from,
+                                                 @RequestParam String to) {
+        return rangeHashes.hashes(level, from, to);
+    }
+
+    // ✅ The CDRs of a mismatching range, as row contents with their counts
+    @GetMapping("/rows")
+    public List<RangeHashes.RowCount> getRows(@RequestParam String from, @RequestParam String to) {
+        return rangeHashes.rows(from, to);
+    }
+}
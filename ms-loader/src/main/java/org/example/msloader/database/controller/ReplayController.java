@@ -0,0 +1,50 @@
+package org.example.msloader.database.controller;
+
+import org.example.msloader.replay.CDRReplayer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/replay")
+public class ReplayController {
+
+    @Autowired
+    private CDRReplayer replayer;
+
+    // ✅ Replays CDR history to Kafka, or resumes the named replay from its checkpoints; returns at once.
+    // Publishing to the live ingest topic needs live=true.
+    @PostMapping("/{name}")
+    public ResponseEntity<Map<String, Object>> start(@PathVariable String name,
+                                                     @RequestParam(defaultValue = "cdr-replay") String topic,
+                                                     @RequestParam(defaultValue = "false") boolean live,
+                                                     @RequestParam(required = false) String from,
+                                                     @RequestParam(required = false) String to,
+                                                     @RequestParam(required = false) Double maxRate,
+                                                     @RequestParam(required = false) Integer cursors) {
+        try {
+            return ResponseEntity.accepted().body(replayer.start(name, topic, live, from, to, maxRate, cursors));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // ✅ Stops after the cursors' current batches; start it again to resume
+    @PostMapping("/{name}/stop")
+    public ResponseEntity<Map<String, Object>> stop(@PathVariable String name) {
+        Map<String, Object> status = replayer.stop(name);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+
+    // ✅ Progress per cursor and throughput
+    @GetMapping("/{name}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String name) {
+        Map<String, Object> status = replayer.status(name);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+}
@@ -8,10 +8,14 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.example.msloader.display.Color;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
 
+// Read through the cdr_records view (V2), which joins the encoded cdrs table back to the subscriber and
+// service type names; new rows are written by CDRService.saveAllCDRs
 @XmlRootElement(name = "cdr")
 @Entity
-@Table(name = "cdrs")
+@Immutable
+@Table(name = "cdr_records")
 @Getter
 @Setter
 @NoArgsConstructor
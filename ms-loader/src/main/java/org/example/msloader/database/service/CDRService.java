@@ -3,9 +3,15 @@ package org.example.msloader.database.service;
 import org.example.msloader.database.entity.CDR;
 import org.example.msloader.database.repository.CDRRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
 import java.util.List;
 
 @Service
@@ -14,9 +20,21 @@ public class CDRService {
     @Autowired
     private CDRRepository cdrRepository;
 
-    @Transactional
+    @Autowired
+    private SubscriberDictionary subscriberDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CDRService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     public CDR saveCDR(CDR cdr) {
-        return cdrRepository.save(cdr);
+        saveAllCDRs(List.of(cdr));
+        return cdr;
     }
 
     public  List<CDR> getAllCDRs() {
@@ -35,18 +53,36 @@ public class CDRService {
                 cdrRepository.findByAnum(num);
     }
 
-    @Transactional
+    // Rows go straight into the encoded cdrs table (the CDR entity reads the cdr_records view). The dimension
+    // keys are resolved first, in the dictionary's own transaction, then the rows are inserted in one more.
     public void saveAllCDRs(List<CDR> cdrList) {
         final int BATCH_SIZE = 100;
-        int size = cdrList.size();
-        for (int i = 0; i < size; i += BATCH_SIZE) {
-            int end = Math.min(size, i + BATCH_SIZE);
-            List<CDR> batch = cdrList.subList(i, end);
-            cdrRepository.saveAll(batch);
-            cdrRepository.flush();
-        }
+        SubscriberDictionary.Encoded keys = subscriberDictionary.encode(cdrList);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO cdrs (anumid, bnumid, servicetypeid, usage, startdatetime) VALUES (?, ?, ?, ?, ?)",
+                    new String[]{"id"})) {
+                for (int from = 0; from < cdrList.size(); from += BATCH_SIZE) {
+                    int to = Math.min(cdrList.size(), from + BATCH_SIZE);
+                    for (int i = from; i < to; i++) {
+                        CDR cdr = cdrList.get(i);
+                        insert.setInt(1, keys.anumIds()[i]);
+                        insert.setObject(2, keys.bnumIds()[i], Types.INTEGER);
+                        insert.setInt(3, keys.serviceTypeIds()[i]);
+                        insert.setDouble(4, cdr.getUsage());
+                        insert.setString(5, cdr.getStartDateTime());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                    try (ResultSet generated = insert.getGeneratedKeys()) {
+                        for (int i = from; i < to && generated.next(); i++) {
+                            cdrList.get(i).setId(generated.getLong(1));
+                        }
+                    }
+                }
+            }
+            return null;
+        }));
     }
 
-
-
 }
@@ -1,6 +1,7 @@
 package org.example.msloader.database.service;
 
 import org.example.msloader.database.config.ApplicationContextProvider;
+import org.example.msloader.rating.RatingEngine;
 
 public class ServiceAccessUtil {
 
@@ -11,5 +12,8 @@ public class ServiceAccessUtil {
     public static UserService getUserService() {
         return ApplicationContextProvider.getApplicationContext().getBean(UserService.class);
     }
-}
 
+    public static RatingEngine getRatingEngine() {
+        return ApplicationContextProvider.getApplicationContext().getBean(RatingEngine.class);
+    }
+}
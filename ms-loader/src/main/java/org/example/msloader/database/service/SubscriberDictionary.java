@@ -0,0 +1,115 @@
+package org.example.msloader.database.service;
+
+import org.example.msloader.database.entity.CDR;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ingest-time encoder for the subscribers and service_types dimensions (V2): turns the numbers and service
+// type of each CDR into their surrogate keys, from a concurrent in-memory cache backed by the tables.
+// New entries are inserted and read back in their own transaction, so the cache only ever holds committed
+// ids, even if the caller's batch rolls back. Call it before the caller's own transaction starts (see
+// CDRService.saveAllCDRs), so a save never holds two pool connections. Mirrors ms-backend's SubscriberDictionary.
+@Service
+public class SubscriberDictionary {
+
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final ConcurrentHashMap<String, Integer> subscriberIds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> serviceTypeIds = new ConcurrentHashMap<>();
+    private final int maxCachedSubscribers;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+
+    public SubscriberDictionary(@Value("${cdr.dimensions.max-cached-subscribers:1000000}") int maxCachedSubscribers,
+                                JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.maxCachedSubscribers = maxCachedSubscribers;
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Keys of each CDR, in order: anumId, bnumId (null for a missing B number) and serviceTypeId
+    public Encoded encode(List<CDR> cdrs) {
+        Set<String> numbers = new HashSet<>();
+        Set<String> types = new HashSet<>();
+        for (CDR cdr : cdrs) {
+            numbers.add(cdr.getAnum());
+            if (cdr.getBnum() != null) {
+                numbers.add(cdr.getBnum());
+            }
+            types.add(cdr.getServiceType().toUpperCase());
+        }
+        Map<String, Integer> numberIds = resolve(numbers, subscriberIds, "subscribers", "number");
+        Map<String, Integer> typeIds = resolve(types, serviceTypeIds, "service_types", "name");
+
+        int[] anumIds = new int[cdrs.size()];
+        Integer[] bnumIds = new Integer[cdrs.size()];
+        int[] serviceTypes = new int[cdrs.size()];
+        for (int i = 0; i < cdrs.size(); i++) {
+            CDR cdr = cdrs.get(i);
+            anumIds[i] = numberIds.get(cdr.getAnum());
+            bnumIds[i] = cdr.getBnum() == null ? null : numberIds.get(cdr.getBnum());
+            serviceTypes[i] = typeIds.get(cdr.getServiceType().toUpperCase());
+        }
+        trimCache();
+        return new Encoded(anumIds, bnumIds, serviceTypes);
+    }
+
+    // Every name's id, inserting the ones the table doesn't have yet and caching them. The batch keeps its
+    // own copy, so a concurrent trimCache() can't take an id away before the batch has used it.
+    private Map<String, Integer> resolve(Set<String> names, ConcurrentHashMap<String, Integer> cache, String table, String column) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            Integer id = cache.get(name);
+            if (id == null) {
+                missing.add(name);
+            } else {
+                ids.put(name, id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return ids;
+        }
+        Collections.sort(missing);
+        Map<String, Integer> inserted = new HashMap<>();
+        newTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("INSERT INTO " + table + " (" + column + ") VALUES (?) ON CONFLICT (" + column + ") DO NOTHING",
+                    missing, LOOKUP_CHUNK, (statement, name) -> statement.setString(1, name));
+            for (int from = 0; from < missing.size(); from += LOOKUP_CHUNK) {
+                List<String> chunk = missing.subList(from, Math.min(from + LOOKUP_CHUNK, missing.size()));
+                jdbcTemplate.query("SELECT id, " + column + " FROM " + table + " WHERE " + column + " IN ("
+                                + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")",
+                        (RowCallbackHandler) rs -> inserted.put(rs.getString(2), rs.getInt(1)), chunk.toArray());
+            }
+        });
+        // only once committed: ids of a rolled-back insert would point at rows that don't exist
+        cache.putAll(inserted);
+        ids.putAll(inserted);
+        return ids;
+    }
+
+    // Keeps the cache bounded by dropping an arbitrary tenth of it; dropped numbers are read back on next use
+    private void trimCache() {
+        if (subscriberIds.size() <= maxCachedSubscribers) {
+            return;
+        }
+        int drop = subscriberIds.size() / 10;
+        Iterator<String> numbers = subscriberIds.keySet().iterator();
+        while (drop-- > 0 && numbers.hasNext()) {
+            numbers.next();
+            numbers.remove();
+        }
+    }
+
+    public record Encoded(int[] anumIds, Integer[] bnumIds, int[] serviceTypeIds) {
+    }
+}
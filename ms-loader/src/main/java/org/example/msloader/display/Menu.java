@@ -1,5 +1,7 @@
 package org.example.msloader.display;
 
+import org.example.cdrcommon.ServiceTypes;
+import org.example.cdrcommon.rating.TariffPlan;
 import org.example.msloader.MsLoaderApplication;
 import org.example.msloader.database.config.ApplicationContextProvider;
 import org.example.msloader.database.entity.CDR;
@@ -9,6 +11,7 @@ import org.example.msloader.database.service.ServiceAccessUtil;
 import org.example.msloader.database.service.UserService;
 import org.example.msloader.formatters.BaseFormatter;
 import org.example.msloader.formatters.CSVFormatter;
+import org.example.msloader.rating.RatingEngine;
 import org.example.msloader.utils.*;
 
 import java.nio.file.Paths;
@@ -389,52 +392,33 @@ public class Menu {
 
 
     private static void calculateAndPrintRevenue(List<CDR> cdrList, String date, Scanner scanner) {
-        double smsRevenue = 0;
-        double dataRevenue = 0;
-        double callRevenue = 0;
-
+        RatingEngine ratingEngine = ServiceAccessUtil.getRatingEngine();
+        TariffPlan plan = ratingEngine.plan(null);
+        List<CDR> dayList = new ArrayList<>();
         for (CDR cdr : cdrList) {
             if (cdr.getStartDateTime().startsWith(date)) {
-                switch (cdr.getServiceType().toLowerCase()) {
-                    case "sms":
-                        smsRevenue += cdr.getUsage() * 0.25;
-                        break;
-                    case "data":
-                        dataRevenue += cdr.getUsage() * 0.50;
-                        break;
-                    case "call":
-                        callRevenue += cdr.getUsage() * 0.50;
-                        break;
-                }
+                dayList.add(cdr);
             }
         }
+        double[] revenue = ratingEngine.rate(plan, dayList);
+
+        System.out.println("Revenue Stats for " + date + " (" + plan.getName() + " plan):");
+        printServiceRevenue("SMS:", Color.yellow, revenue[ServiceTypes.SMS]);
+        printServiceRevenue("CALL:", Color.purple, revenue[ServiceTypes.CALL]);
+        printServiceRevenue("DATA:", Color.cyan, revenue[ServiceTypes.DATA]);
 
-        double smsRevenuePerMinute = smsRevenue / (24 * 60 * 60);
-        double dataRevenuePerMinute = dataRevenue / (24 * 60 * 60);
-        double callRevenuePerMinute = callRevenue/ (24 * 60 * 60);
-
-        double smsRevenuePerHour = smsRevenue * 60;
-        double dataRevenuePerHour = dataRevenue * 60;
-        double callRevenuePerHour = callRevenue * 60;
-
-        System.out.println("Revenue Stats for " + date + ":");
-        System.out.println(Color.colorText("SMS:", Color.yellow));
-        System.out.printf("    Average revenue per minute: $%.2f\n", smsRevenuePerMinute);
-        System.out.printf("    Average revenue per hour: $%.2f\n", smsRevenuePerHour);
-        System.out.printf("    Total revenue on this day: $%.2f\n", smsRevenue);
-        System.out.println(Color.colorText("CALL:", Color.purple));
-        System.out.printf("    Average revenue per minute: $%.2f\n", callRevenuePerMinute);
-        System.out.printf("    Average revenue per hour: $%.2f\n", callRevenuePerHour);
-        System.out.printf("    Total revenue on this day: $%.2f\n", callRevenue);
-        System.out.println(Color.colorText("DATA:", Color.cyan));
-        System.out.printf("    Average revenue per minute: $%.2f\n", dataRevenuePerMinute);
-        System.out.printf("    Average revenue per hour: $%.2f\n", dataRevenuePerHour);
-        System.out.printf("    Total revenue on this day: $%.2f\n", dataRevenue);
-
-        double totalRevenue = smsRevenue + dataRevenue + callRevenue;
+        double totalRevenue = revenue[ServiceTypes.SMS] + revenue[ServiceTypes.CALL] + revenue[ServiceTypes.DATA];
         System.out.printf("Total Revenue: $%.2f\n", totalRevenue);
     }
 
+    // Averages over the whole day: 24 hours, 1440 minutes
+    private static void printServiceRevenue(String label, String color, double dayRevenue) {
+        System.out.println(Color.colorText(label, color));
+        System.out.printf("    Average revenue per minute: $%.2f\n", dayRevenue / (24 * 60));
+        System.out.printf("    Average revenue per hour: $%.2f\n", dayRevenue / 24);
+        System.out.printf("    Total revenue on this day: $%.2f\n", dayRevenue);
+    }
+
 
     private static String getCurrentDate() {
         return LocalDate.now().toString();
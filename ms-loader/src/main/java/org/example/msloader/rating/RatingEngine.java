@@ -0,0 +1,62 @@
+package org.example.msloader.rating;
+
+import org.example.cdrcommon.EpochMinutes;
+import org.example.cdrcommon.ServiceTypes;
+import org.example.cdrcommon.rating.TariffPlan;
+import org.example.msloader.database.entity.CDR;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// The tariff plans configured under cdr.rating.plans.<name>, compiled once at startup, and the batch
+// rating loop over them (the backend's RatingEngine, for the menu's revenue calculator)
+@Component
+public class RatingEngine {
+
+    private final Map<String, TariffPlan> plans = new TreeMap<>();
+    private final TariffPlan defaultPlan;
+
+    public RatingEngine(Environment environment, @Value("${cdr.rating.default-plan:standard}") String defaultPlan) {
+        Binder.get(environment)
+                .bind("cdr.rating.plans", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of())
+                .forEach((name, spec) -> plans.put(name, TariffPlan.parse(name, spec)));
+        if (!plans.containsKey(defaultPlan)) {
+            throw new IllegalStateException("❌ Default tariff plan " + defaultPlan + " is not configured under cdr.rating.plans");
+        }
+        this.defaultPlan = plans.get(defaultPlan);
+    }
+
+    public Collection<TariffPlan> plans() {
+        return plans.values();
+    }
+
+    // null means the default plan
+    public TariffPlan plan(String name) {
+        if (name == null) {
+            return defaultPlan;
+        }
+        TariffPlan plan = plans.get(name);
+        if (plan == null) {
+            throw new IllegalArgumentException("❌ Unknown tariff plan: " + name + " (expected one of " + plans.keySet() + ")");
+        }
+        return plan;
+    }
+
+    // Revenue per service type (indexed like ServiceTypes.names) of a batch
+    public double[] rate(TariffPlan plan, List<CDR> cdrs) {
+        double[] revenue = new double[ServiceTypes.names.length];
+        for (int i = 0, n = cdrs.size(); i < n; i++) {
+            CDR cdr = cdrs.get(i);
+            int service = ServiceTypes.indexOf(cdr.getServiceType());
+            if (service != ServiceTypes.UNKNOWN) {
+                revenue[service] += plan.charge(service, EpochMinutes.parse(cdr.getStartDateTime()), cdr.getUsage());
+            }
+        }
+        return revenue;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.msloader.reconcile;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// Postgres side of ms-backend's reconciliation: the same order-independent checksums its RangeHashes computes
+// in MySQL (a row hashes to the first 60 bits of the MD5 of its content; a group to the count and exact sum
+// of its row hashes). The row text must match ms-backend's character for character.
+@Component
+public class RangeHashes {
+
+    private static final String ROW_TEXT =
+            "concat_ws('|', anum, coalesce(bnum, ''), upper(serviceType), round(usage * 1000)::bigint, startDateTime)";
+    private static final String ROW_HASH = "('x' || left(md5(" + ROW_TEXT + "), 15))::bit(60)::bigint";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // One checksum per level bucket with rows in [from, to); bounds are "yyyy-MM-dd HH:mm", like startDateTime
+    public List<RangeHash> hashes(Level level, String from, String to) {
+        return jdbcTemplate.query("SELECT left(startDateTime, " + level.prefix + ") AS bucket, count(*), sum(" + ROW_HASH + ") "
+                        + "FROM cdr_records WHERE startDateTime >= ? AND startDateTime < ? GROUP BY bucket ORDER BY bucket",
+                (rs, row) -> new RangeHash(rs.getString(1), rs.getLong(2), rs.getBigDecimal(3)), from, to);
+    }
+
+    // The distinct row contents in [from, to) with how often each occurs
+    public List<RowCount> rows(String from, String to) {
+        return jdbcTemplate.query("SELECT " + ROW_TEXT + " AS content, count(*) FROM cdr_records "
+                        + "WHERE startDateTime >= ? AND startDateTime < ? GROUP BY content",
+                (rs, row) -> new RowCount(rs.getString(1), rs.getLong(2)), from, to);
+    }
+
+    // Buckets are prefixes of startDateTime
+    public enum Level {
+        DAY(10),
+        HOUR(13),
+        MINUTE(16);
+
+        final int prefix;
+
+        Level(int prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    public record RangeHash(String bucket, long count, BigDecimal sum) {
+    }
+
+    public record RowCount(String row, long count) {
+    }
+}
@@ -0,0 +1,247 @@
+package org.example.msloader.replay;
+
+import jakarta.annotation.PreDestroy;
+import org.example.msloader.database.entity.CDR;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Re-publishes CDR history from Postgres to Kafka, e.g. to rebuild ms-backend's MySQL from scratch or to
+// feed a new consumer on the replay topic. The id range is split between parallel cursors, each reading
+// in id order (optionally only rows starting in a time range) and sharing one rate cap, so live traffic
+// on the same topic and the consumers behind it keep up. A cursor moves its checkpoint only after Kafka
+// has acknowledged the batch, so a replay started again under the same name resumes without gaps (rows
+// of the last unacknowledged batch may be sent twice).
+@Component
+public class CDRReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CDRReplayer.class);
+    static final String RUNNING = "RUNNING";
+    static final String STOPPED = "STOPPED";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+
+    private final Map<String, Replay> active = new ConcurrentHashMap<>();
+    private final KafkaTemplate<String, CDR> kafkaTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${cdr.replay.topics:cdr-replay}")
+    private List<String> topics;
+
+    // ms-backend's ingest topic: it stores, charges and alerts on whatever arrives, so a replay to it
+    // duplicates all of that and has to be asked for with live=true (e.g. to refill an empty backend)
+    @Value("${cdr.replay.live-topic:cdr-topic}")
+    private String liveTopic;
+
+    @Value("${cdr.replay.max-rate:5000}")
+    private double defaultRate;
+
+    @Value("${cdr.replay.cursors:4}")
+    private int defaultCursors;
+
+    @Value("${cdr.replay.batch-size:1000}")
+    private int batchSize;
+
+    public CDRReplayer(KafkaTemplate<String, CDR> kafkaTemplate, JdbcTemplate jdbcTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        active.values().forEach(replay -> replay.workers.shutdownNow());
+    }
+
+    // Starts a replay, or resumes the named one from its checkpoints (keeping its topic and range).
+    // from/to are startDateTime bounds ("yyyy-MM-dd HH:mm", to exclusive); null replays everything.
+    public synchronized Map<String, Object> start(String name, String topic, boolean live, String from, String to,
+                                                  Double maxRate, Integer cursors) {
+        if (active.containsKey(name)) {
+            throw new IllegalStateException("❌ Replay " + name + " is already running");
+        }
+        double rate = maxRate == null ? defaultRate : maxRate;
+        if (rate <= 0) {
+            throw new IllegalArgumentException("❌ maxRate must be positive");
+        }
+        if (jdbcTemplate.queryForObject("SELECT count(*) FROM replay_runs WHERE name = ?", Long.class, name) == 0) {
+            if (topic.equals(liveTopic)) {
+                if (!live) {
+                    throw new IllegalArgumentException("❌ " + liveTopic + " is ms-backend's live ingest topic: every replayed CDR "
+                            + "would be stored, charged and alerted on again. Pass live=true if that is intended");
+                }
+            } else if (!topics.contains(topic)) {
+                throw new IllegalArgumentException("❌ Replays may only publish to " + topics + " (or " + liveTopic + " with live=true)");
+            }
+            plan(name, topic, from, to, cursors == null ? defaultCursors : cursors);
+        }
+        Map<String, Object> run = jdbcTemplate.queryForMap("SELECT topic, fromtime, totime FROM replay_runs WHERE name = ?", name);
+        jdbcTemplate.update("UPDATE replay_runs SET status = ?, finishedat = NULL WHERE name = ?", RUNNING, name);
+
+        List<Map<String, Object>> open = jdbcTemplate.queryForList(
+                "SELECT cursorno, nextid, toid FROM replay_cursors WHERE name = ? AND nextid <= toid ORDER BY cursorno", name);
+        Replay replay = new Replay(name, (String) run.get("topic"), (String) run.get("fromtime"), (String) run.get("totime"),
+                new RateLimiter(rate), Math.max(1, open.size()));
+        active.put(name, replay);
+        for (Map<String, Object> cursor : open) {
+            replay.pending.add(replay.workers.submit(() -> {
+                replay(replay, ((Number) cursor.get("cursorno")).intValue(),
+                        ((Number) cursor.get("nextid")).longValue(), ((Number) cursor.get("toid")).longValue());
+                return null;
+            }));
+        }
+        Thread waiter = new Thread(() -> finish(replay), "replay-" + name);
+        waiter.setDaemon(true);
+        waiter.start();
+        return status(name);
+    }
+
+    public Map<String, Object> stop(String name) {
+        Replay replay = active.get(name);
+        if (replay != null) {
+            replay.stopped = true;
+        }
+        return status(name);
+    }
+
+    public Map<String, Object> status(String name) {
+        List<Map<String, Object>> runs = jdbcTemplate.queryForList(
+                "SELECT name, topic, fromtime, totime, status, createdat, finishedat FROM replay_runs WHERE name = ?", name);
+        if (runs.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> status = new LinkedHashMap<>(runs.get(0));
+        status.put("cursors", jdbcTemplate.queryForList(
+                "SELECT cursorno, fromid, toid, nextid, published FROM replay_cursors WHERE name = ? ORDER BY cursorno", name));
+        status.put("published", jdbcTemplate.queryForObject(
+                "SELECT coalesce(sum(published), 0) FROM replay_cursors WHERE name = ?", Long.class, name));
+        Replay replay = active.get(name);
+        if (replay != null) {
+            double seconds = Math.max(1, System.nanoTime() - replay.startedAt) / 1e9;
+            status.put("publishedThisRun", replay.published.get());
+            status.put("cdrsPerSecond", replay.published.get() / seconds);
+        }
+        return status;
+    }
+
+    // Splits [MIN(id), MAX(id)] of the rows in range into equal id ranges, one per cursor
+    private void plan(String name, String topic, String from, String to, int cursors) {
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT min(id) AS firstid, max(id) AS lastid FROM cdr_records WHERE " + timeFilter(from, to), timeArgs(from, to));
+        jdbcTemplate.update("INSERT INTO replay_runs (name, topic, fromtime, totime, status) VALUES (?, ?, ?, ?, ?)",
+                name, topic, from, to, RUNNING);
+        if (bounds.get("firstid") == null) {
+            return;
+        }
+        long first = ((Number) bounds.get("firstid")).longValue();
+        long last = ((Number) bounds.get("lastid")).longValue();
+        long span = Math.max(1, (last - first + cursors) / Math.max(1, cursors));
+        int cursor = 0;
+        for (long start = first; start <= last; start += span) {
+            jdbcTemplate.update("INSERT INTO replay_cursors (name, cursorno, fromid, toid, nextid) VALUES (?, ?, ?, ?, ?)",
+                    name, cursor++, start, Math.min(last, start + span - 1), start);
+        }
+    }
+
+    private void replay(Replay replay, int cursor, long nextId, long toId) throws Exception {
+        Object[] timeArgs = timeArgs(replay.from, replay.to);
+        Object[] args = new Object[timeArgs.length + 3];
+        System.arraycopy(timeArgs, 0, args, 2, timeArgs.length);
+        String sql = "SELECT id, anum, bnum, servicetype, usage, startdatetime FROM cdr_records "
+                + "WHERE id >= ? AND id <= ? AND " + timeFilter(replay.from, replay.to) + " ORDER BY id LIMIT ?";
+        args[1] = toId;
+        args[args.length - 1] = batchSize;
+
+        while (nextId <= toId && !replay.stopped) {
+            args[0] = nextId;
+            List<CDR> batch = jdbcTemplate.query(sql, (rs, row) -> {
+                CDR cdr = new CDR(rs.getString(2), rs.getString(3), rs.getString(4), rs.getDouble(5), rs.getString(6));
+                cdr.setId(rs.getLong(1));
+                return cdr;
+            }, args);
+            // an empty read means the rest of the range has no rows in the time range
+            long next = batch.isEmpty() ? toId + 1 : batch.get(batch.size() - 1).getId() + 1;
+            List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+            for (CDR cdr : batch) {
+                replay.limiter.acquire(1);
+                sends.add(kafkaTemplate.send(replay.topic, cdr));
+            }
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get();
+            jdbcTemplate.update("UPDATE replay_cursors SET nextid = ?, published = published + ? WHERE name = ? AND cursorno = ?",
+                    next, batch.size(), replay.name, cursor);
+            replay.published.addAndGet(batch.size());
+            nextId = next;
+        }
+    }
+
+    private void finish(Replay replay) {
+        String outcome = DONE;
+        for (Future<?> cursor : replay.pending) {
+            try {
+                cursor.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                outcome = STOPPED;
+            } catch (ExecutionException e) {
+                logger.warn("Replay {} cursor failed", replay.name, e.getCause());
+                outcome = FAILED;
+            }
+        }
+        if (outcome.equals(DONE) && replay.stopped) {
+            outcome = STOPPED;
+        }
+        replay.workers.shutdown();
+        jdbcTemplate.update("UPDATE replay_runs SET status = ?, finishedat = now() WHERE name = ?", outcome, replay.name);
+        double seconds = Math.max(1, System.nanoTime() - replay.startedAt) / 1e9;
+        logger.info("Replay {} {}: {} CDRs to {} at {} CDRs/s", replay.name, outcome.toLowerCase(),
+                replay.published.get(), replay.topic, Math.round(replay.published.get() / seconds));
+        active.remove(replay.name);
+    }
+
+    private static String timeFilter(String from, String to) {
+        return (from == null ? "TRUE" : "startdatetime >= ?") + " AND " + (to == null ? "TRUE" : "startdatetime < ?");
+    }
+
+    private static Object[] timeArgs(String from, String to) {
+        List<Object> args = new ArrayList<>(2);
+        if (from != null) {
+            args.add(from);
+        }
+        if (to != null) {
+            args.add(to);
+        }
+        return args.toArray();
+    }
+
+    private static final class Replay {
+        final String name;
+        final String topic;
+        final String from;
+        final String to;
+        final RateLimiter limiter;
+        final ExecutorService workers;
+        final List<Future<?>> pending = new ArrayList<>();
+        final AtomicLong published = new AtomicLong();
+        final long startedAt = System.nanoTime();
+        volatile boolean stopped;
+
+        Replay(String name, String topic, String from, String to, RateLimiter limiter, int cursors) {
+            this.name = name;
+            this.topic = topic;
+            this.from = from;
+            this.to = to;
+            this.limiter = limiter;
+            this.workers = Executors.newFixedThreadPool(cursors, runnable -> {
+                Thread thread = new Thread(runnable, "replay-cursor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
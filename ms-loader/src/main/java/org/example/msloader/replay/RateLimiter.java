@@ -0,0 +1,42 @@
+package org.example.msloader.replay;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Shared rate cap of a replay's cursors: every acquire books the next free slot on an evenly spaced
+// schedule and sleeps until it comes. At most a second of unused capacity is kept, so a cursor stalled on
+// Postgres can't make up for it with a burst afterwards.
+final class RateLimiter {
+
+    private static final long MAX_SAVED_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerPermit;
+    private final LongSupplier clock;
+    private long nextFree;
+
+    RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    RateLimiter(double permitsPerSecond, LongSupplier clock) {
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.clock = clock;
+        this.nextFree = clock.getAsLong();
+    }
+
+    void acquire(int permits) throws InterruptedException {
+        long wait = reserve(permits);
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    // Books the permits and returns how long to wait for them, in nanoseconds
+    synchronized long reserve(int permits) {
+        long now = clock.getAsLong();
+        nextFree = Math.max(nextFree, now - MAX_SAVED_NANOS);
+        long wait = nextFree - now;
+        nextFree += (long) (permits * nanosPerPermit);
+        return wait;
+    }
+}
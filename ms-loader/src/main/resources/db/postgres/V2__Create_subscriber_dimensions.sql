@@ -0,0 +1,47 @@
+-- Dictionary-encode cdrs: subscriber numbers and service types move to dimension tables and each row keeps
+-- integer keys instead of the strings (see SubscriberDictionary). cdr_records gives reads the old row shape.
+CREATE TABLE service_types (
+    id SMALLSERIAL PRIMARY KEY,
+    name VARCHAR(16) NOT NULL UNIQUE
+);
+
+INSERT INTO service_types (name) VALUES ('CALL'), ('SMS'), ('DATA');
+INSERT INTO service_types (name)
+SELECT DISTINCT UPPER(servicetype) FROM cdrs WHERE UPPER(servicetype) NOT IN ('CALL', 'SMS', 'DATA');
+
+CREATE TABLE subscribers (
+    id SERIAL PRIMARY KEY,
+    number VARCHAR(255) NOT NULL UNIQUE
+);
+
+INSERT INTO subscribers (number)
+SELECT anum FROM cdrs
+UNION
+SELECT bnum FROM cdrs WHERE bnum IS NOT NULL;
+
+ALTER TABLE cdrs
+    ADD COLUMN anumid INTEGER REFERENCES subscribers (id),
+    ADD COLUMN bnumid INTEGER REFERENCES subscribers (id),
+    ADD COLUMN servicetypeid SMALLINT REFERENCES service_types (id);
+
+UPDATE cdrs c SET
+    anumid = (SELECT id FROM subscribers WHERE number = c.anum),
+    bnumid = (SELECT id FROM subscribers WHERE number = c.bnum),
+    servicetypeid = (SELECT id FROM service_types WHERE name = UPPER(c.servicetype));
+
+ALTER TABLE cdrs
+    DROP COLUMN anum,
+    DROP COLUMN bnum,
+    DROP COLUMN servicetype,
+    ALTER COLUMN anumid SET NOT NULL,
+    ALTER COLUMN servicetypeid SET NOT NULL;
+
+CREATE INDEX idx_cdrs_anumid ON cdrs (anumid);
+CREATE INDEX idx_cdrs_bnumid ON cdrs (bnumid);
+
+CREATE VIEW cdr_records AS
+SELECT c.id, a.number AS anum, b.number AS bnum, t.name AS servicetype, c.usage, c.startdatetime
+FROM cdrs c
+         JOIN subscribers a ON a.id = c.anumid
+         LEFT JOIN subscribers b ON b.id = c.bnumid
+         JOIN service_types t ON t.id = c.servicetypeid;
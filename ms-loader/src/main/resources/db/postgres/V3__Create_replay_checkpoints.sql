@@ -0,0 +1,21 @@
+-- Progress of history replays to Kafka (see CDRReplayer). A replay splits its id range between parallel
+-- cursors; each cursor's row records the next id to publish, so a stopped or crashed replay resumes there.
+CREATE TABLE replay_runs (
+    name VARCHAR(64) PRIMARY KEY,
+    topic VARCHAR(255) NOT NULL,
+    fromtime VARCHAR(16),
+    totime VARCHAR(16),
+    status VARCHAR(16) NOT NULL,
+    createdat TIMESTAMP NOT NULL DEFAULT now(),
+    finishedat TIMESTAMP
+);
+
+CREATE TABLE replay_cursors (
+    name VARCHAR(64) NOT NULL REFERENCES replay_runs (name),
+    cursorno INTEGER NOT NULL,
+    fromid BIGINT NOT NULL,
+    toid BIGINT NOT NULL,
+    nextid BIGINT NOT NULL,
+    published BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (name, cursorno)
+);
@@ -0,0 +1,3 @@
+-- Range reads by start time: the reconciliation checksums and row listings (RangeHashes) and time-bounded
+-- replays (CDRReplayer) filter on startdatetime, which sorts chronologically as "yyyy-MM-dd HH:mm"
+CREATE INDEX idx_cdrs_startdatetime ON cdrs (startdatetime);
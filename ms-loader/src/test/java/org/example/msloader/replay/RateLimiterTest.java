@@ -0,0 +1,60 @@
+package org.example.msloader.replay;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	void spacesPermitsEvenlyAtTheRate() {
+		RateLimiter limiter = new RateLimiter(1000, clock::get);
+
+		assertEquals(0, limiter.reserve(10));
+		assertEquals(10 * MS, limiter.reserve(10));
+		assertEquals(20 * MS, limiter.reserve(1));
+
+		clock.addAndGet(15 * MS);
+		assertEquals(6 * MS, limiter.reserve(1));
+	}
+
+	@Test
+	void keepsAtMostASecondOfUnusedCapacity() {
+		RateLimiter limiter = new RateLimiter(1000, clock::get);
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+		// a second's worth goes through at once, then the schedule is back to the rate
+		assertTrue(limiter.reserve(600) <= 0);
+		assertTrue(limiter.reserve(400) <= 0);
+		assertEquals(0, limiter.reserve(1));
+		assertEquals(MS, limiter.reserve(1));
+	}
+
+	@Test
+	void cursorsShareOneSchedule() throws InterruptedException {
+		RateLimiter limiter = new RateLimiter(1000, clock::get);
+		Thread[] cursors = new Thread[4];
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = new Thread(() -> {
+				for (int batch = 0; batch < 100; batch++) {
+					limiter.reserve(10);
+				}
+			});
+			cursors[i].start();
+		}
+		for (Thread cursor : cursors) {
+			cursor.join();
+		}
+
+		// 4000 permits booked at 1/ms: the next one is due 4 s out
+		assertEquals(4000 * MS, limiter.reserve(1));
+	}
+}